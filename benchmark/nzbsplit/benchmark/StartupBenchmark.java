@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times cold runs of nzbsplit, each of which splits a generated 1MB nzb into
+ * four parts in a new process, so the times include starting the JVM and
+ * loading classes as well as the split itself. Each configuration is run once
+ * to warm the file system cache and then timed over a number of runs: the
+ * plain jar, the jar with the class data sharing archive, the jar with the
+ * archive and only the client compiler, and the native executable. The
+ * archive and native executable are skipped if they have not been built.
+ * <pre>
+ * StartupBenchmark JAR ARCHIVE NATIVE_EXECUTABLE WORK_DIR [RUNS]
+ * </pre>
+ * @author Sam Malone
+ */
+public class StartupBenchmark {
+    
+    private final static long NZB_SIZE = 1024 * 1024;
+    private final static int DEFAULT_RUNS = 10;
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length < 4) {
+            System.err.println("Usage: StartupBenchmark JAR ARCHIVE NATIVE_EXECUTABLE WORK_DIR [RUNS]");
+            System.exit(1);
+        }
+        File jar = new File(args[0]);
+        File archive = new File(args[1]);
+        File executable = new File(args[2]);
+        File workDir = new File(args[3]);
+        int runs = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_RUNS;
+        File outputDir = new File(workDir, "parts");
+        if(!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+        File nzb = new File(workDir, "startup.nzb");
+        writeNZB(nzb);
+        System.out.println(String.format("Splitting %s (%d KB) into 4 parts, %d cold runs each", nzb.getName(), nzb.length() / 1024, runs));
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<String> split = Arrays.asList("-n", "4", "-o", outputDir.getPath(), nzb.getPath());
+        time("jar", runs, workDir, command(split, java, "-jar", jar.getPath()));
+        if(archive.isFile()) {
+            String sharing = "-XX:SharedArchiveFile=" + archive.getPath();
+            time("jar + CDS", runs, workDir, command(split, java, sharing, "-jar", jar.getPath()));
+            time("jar + CDS + C1", runs, workDir, command(split, java, sharing, "-XX:TieredStopAtLevel=1", "-jar", jar.getPath()));
+        } else {
+            System.out.println("No class data sharing archive at " + archive);
+        }
+        if(executable.isFile()) {
+            time("native", runs, workDir, command(split, executable.getPath()));
+        } else {
+            System.out.println("No native executable at " + executable);
+        }
+    }
+    
+    private static List<String> command(List<String> split, String... launcher) {
+        List<String> command = new ArrayList<>(Arrays.asList(launcher));
+        command.addAll(split);
+        return command;
+    }
+    
+    /**
+     * Time the given command and print the minimum, median and maximum time
+     * @param name name of the configuration
+     * @param runs number of timed runs
+     * @param workDir directory that the output of the command is written to
+     * @param command command to time
+     * @throws IOException if the command cannot be started or fails
+     * @throws InterruptedException if interrupted whilst waiting for the command
+     */
+    private static void time(String name, int runs, File workDir, List<String> command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(workDir, "output.log"));
+        run(builder);
+        long[] times = new long[runs];
+        for(int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run(builder);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.println(String.format("%-16s min %4d ms  median %4d ms  max %4d ms", name,
+                times[0] / 1000000, times[runs / 2] / 1000000, times[runs - 1] / 1000000));
+    }
+    
+    private static void run(ProcessBuilder builder) throws IOException, InterruptedException {
+        int status = builder.start().waitFor();
+        if(status != 0) {
+            throw new IOException(builder.command() + " exited with status " + status);
+        }
+    }
+    
+    /**
+     * Write an nzb of about 1MB that looks like a typical post: a par2 file,
+     * rar volumes with many segments each and a few recovery volumes
+     * @param nzb file to write
+     * @throws IOException if unable to write the file
+     */
+    private static void writeNZB(File nzb) throws IOException {
+        Random random = new Random(1);
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(nzb), StandardCharsets.UTF_8))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<!DOCTYPE nzb PUBLIC \"-//newzBin//DTD NZB 1.1//EN\" \"http://www.newzbin.com/DTD/nzb/nzb-1.1.dtd\">\n");
+            writer.write("<nzb xmlns=\"http://www.newzbin.com/DTD/2003/nzb\">\n");
+            long size = 0;
+            for(int file = 1; size < NZB_SIZE; file++) {
+                String name = file == 1 ? "startup.par2" : file % 20 == 0 ? "startup.vol" + file + "+" + file + ".par2" : "startup.part" + file + ".rar";
+                int segments = name.endsWith(".rar") ? 1 + random.nextInt(40) : 1 + random.nextInt(5);
+                StringBuilder builder = new StringBuilder();
+                builder.append("  <file poster=\"poster &lt;poster@example.com&gt;\" date=\"").append(1400000000 + file * 10)
+                        .append("\" subject=\"Startup [").append(file).append("/500] - &quot;").append(name)
+                        .append("&quot; yEnc (1/").append(segments).append(")\">\n")
+                        .append("    <groups>\n      <group>alt.binaries.test</group>\n    </groups>\n    <segments>\n");
+                for(int segment = 1; segment <= segments; segment++) {
+                    builder.append("      <segment bytes=\"").append(300000 + random.nextInt(500000)).append("\" number=\"")
+                            .append(segment).append("\">").append(Long.toHexString(random.nextLong()))
+                            .append('-').append(file).append('-').append(segment).append("@news.example.com</segment>\n");
+                }
+                builder.append("    </segments>\n  </file>\n");
+                writer.write(builder.toString());
+                size += builder.length();
+            }
+            writer.write("</nzb>\n");
+        }
+    }
+    
+}
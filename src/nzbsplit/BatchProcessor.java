@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import nzbsplit.exception.NZBParseException;
+import nzbsplit.api.SplitResult;
+import nzbsplit.exception.SplitException;
+import nzbsplit.nzb.NZB;
+
+/**
+ * Splits many NZB files concurrently on a bounded pool of threads. All threads
+ * share a {@link SplitRunner}, in which each thread reuses its own parser.
+ * A failure to split one NZB file does not stop the remaining NZB files from
+ * being split.
+ * @author Sam Malone
+ */
+public class BatchProcessor {
+    
+    private final static String NZB_GLOB = "*.{nzb,nzb.gz,nzbx}";
+    
+    private final SplitRunner runner;
+    private final int threads;
+    private final Queue<String> failures;
+    private final AtomicInteger succeeded;
+    private final AtomicInteger partCount;
+    private final AtomicLong bytesRead;
+    private boolean pipeline = false;
+    private List<PipelineStage> stages = Collections.emptyList();
+    
+    /**
+     * Creates a new instance of BatchProcessor
+     * @param runner SplitRunner used to split each NZB file
+     * @param threads maximum number of NZB files to split at the same time
+     */
+    public BatchProcessor(SplitRunner runner, int threads) {
+        this.runner = runner;
+        this.threads = threads;
+        this.failures = new ConcurrentLinkedQueue<>();
+        this.succeeded = new AtomicInteger();
+        this.partCount = new AtomicInteger();
+        this.bytesRead = new AtomicLong();
+    }
+    
+    /**
+     * Set whether to split the NZB files using a pipeline of separate parse, split
+     * and write stages instead of a single pool of threads. The utilization of
+     * each stage is included in the summary. Default is false.
+     * @param pipeline true to use a pipeline, false otherwise
+     */
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+    
+    /**
+     * Expand the given inputs into a list of NZB file paths. An input can be
+     * the path to an NZB file, the path to a directory containing NZB files
+     * (.nzb, .nzb.gz or .nzbx),
+     * or a glob pattern for the file name e.g. /path/to/*.nzb
+     * @param inputs list of inputs
+     * @return list of NZB file paths
+     * @throws IOException if unable to list the contents of a directory
+     */
+    public static List<Path> expand(List<String> inputs) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        for(String input : inputs) {
+            if(isGlob(input)) {
+                Path glob = Paths.get(input);
+                Path dir = glob.getParent() == null ? Paths.get(".") : glob.getParent();
+                paths.addAll(list(dir, glob.getFileName().toString()));
+            } else if(Files.isDirectory(Paths.get(input))) {
+                paths.addAll(list(Paths.get(input), NZB_GLOB));
+            } else {
+                paths.add(Paths.get(input));
+            }
+        }
+        return paths;
+    }
+    
+    /**
+     * Check that no two of the given NZB files have the same name without
+     * their extension e.g. a/x.nzb and b/x.nzb.gz, as the parts of both would
+     * be written to the same files of the output directory
+     * @param nzbPaths paths of the NZB files to split
+     * @throws SplitException if two NZB files have the same name
+     */
+    public static void checkNames(List<Path> nzbPaths) throws SplitException {
+        final Map<String, Path> names = new HashMap<>();
+        for(Path nzbPath : nzbPaths) {
+            Path previous = names.put(FilePartSink.getBaseName(nzbPath.getFileName().toString()), nzbPath);
+            if(previous != null) {
+                throw new SplitException(String.format("%s and %s would write parts with the same names. Rename one of them", previous, nzbPath));
+            }
+        }
+    }
+    
+    /**
+     * Check if the given input is a glob pattern
+     * @param input input
+     * @return true if the input contains a glob character, false otherwise
+     */
+    public static boolean isGlob(String input) {
+        return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0 || input.indexOf('{') >= 0;
+    }
+    
+    /**
+     * List the regular files in the given directory that match the given glob
+     * @param dir directory
+     * @param glob glob pattern e.g. *.nzb
+     * @return sorted list of files
+     * @throws IOException if unable to list the directory
+     */
+    private static List<Path> list(Path dir, String glob) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for(Path path : stream) {
+                if(Files.isRegularFile(path)) {
+                    paths.add(path);
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+    
+    /**
+     * Split each of the given NZB files and print a summary once all the NZB
+     * files have been processed
+     * @param nzbPaths paths of the NZB files to split
+     * @return true if every NZB file was split, false if any failed
+     */
+    public boolean processAll(List<Path> nzbPaths) {
+        final long start = System.nanoTime();
+        try {
+            if(pipeline) {
+                processPipelined(nzbPaths);
+            } else {
+                processPooled(nzbPaths);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        printSummary(nzbPaths.size(), System.nanoTime() - start);
+        return failures.isEmpty();
+    }
+    
+    /**
+     * Split the given NZB files on a pool of threads where each thread parses,
+     * splits and writes an NZB file before moving on to the next
+     * @param nzbPaths paths of the NZB files to split
+     * @throws InterruptedException if interrupted whilst waiting for the pool
+     */
+    private void processPooled(List<Path> nzbPaths) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, nzbPaths.size())));
+        try {
+            for(final Path nzbPath : nzbPaths) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(nzbPath);
+                    }
+                });
+            }
+            executor.shutdown();
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting for the remaining NZB files
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Split the given NZB file in the calling thread, recording the outcome.
+     * This can be called concurrently from many threads.
+     * @param nzbPath path of the NZB file to split
+     * @return true if the NZB file was split, false otherwise
+     */
+    public boolean process(Path nzbPath) {
+        try {
+            long size = Files.size(nzbPath);
+            recordSuccess(size, runner.run(nzbPath));
+            return true;
+        } catch (IOException | NZBParseException | SplitException | RuntimeException ex) {
+            recordFailure(nzbPath, ex);
+            return false;
+        }
+    }
+    
+    /**
+     * Split the given NZB files using a pipeline of parse, split and write
+     * stages. Each stage has its own threads and a bounded queue so the parse
+     * of one NZB file overlaps the split and write of others, whilst the number
+     * of parsed NZBs held in memory stays bounded.
+     * @param nzbPaths paths of the NZB files to split
+     * @throws InterruptedException if interrupted whilst waiting for the stages
+     */
+    private void processPipelined(List<Path> nzbPaths) throws InterruptedException {
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        final PipelineStage parseStage = new PipelineStage("parse", threads, threads * 2);
+        final PipelineStage splitStage = new PipelineStage("split", cpus, cpus * 2);
+        final PipelineStage writeStage = new PipelineStage("write", threads, threads * 2);
+        stages = Arrays.asList(parseStage, splitStage, writeStage);
+        try {
+            for(final Path nzbPath : nzbPaths) {
+                parseStage.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long size = Files.size(nzbPath);
+                            NZB nzb = runner.parse(nzbPath);
+                            splitStage.submit(createSplitTask(nzbPath, size, nzb, writeStage));
+                        } catch (IOException | NZBParseException | RuntimeException ex) {
+                            recordFailure(nzbPath, ex);
+                        }
+                    }
+                });
+            }
+            parseStage.shutdownAndAwait();
+            splitStage.shutdownAndAwait();
+            writeStage.shutdownAndAwait();
+        } finally {
+            parseStage.shutdownNow();
+            splitStage.shutdownNow();
+            writeStage.shutdownNow();
+        }
+    }
+    
+    /**
+     * Create the task that splits a parsed NZB and submits its parts to the write stage
+     * @param nzbPath path of the NZB file
+     * @param size size of the NZB file in bytes
+     * @param nzb parsed NZB
+     * @param writeStage write stage
+     * @return split task
+     */
+    private Runnable createSplitTask(final Path nzbPath, final long size, final NZB nzb, final PipelineStage writeStage) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final SplitResult result = runner.split(nzbPath, nzb);
+                    writeStage.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                recordSuccess(size, runner.write(nzbPath, result));
+                            } catch (IOException | RuntimeException ex) {
+                                recordFailure(nzbPath, ex);
+                            }
+                        }
+                    });
+                } catch (IOException | SplitException | RuntimeException ex) {
+                    recordFailure(nzbPath, ex);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Record an NZB file that was split
+     * @param size size of the NZB file in bytes
+     * @param parts number of parts written
+     */
+    private void recordSuccess(long size, int parts) {
+        partCount.addAndGet(parts);
+        bytesRead.addAndGet(size);
+        succeeded.incrementAndGet();
+    }
+    
+    /**
+     * Record and print an NZB file that failed to split
+     * @param nzbPath path of the NZB file
+     * @param ex cause of the failure
+     */
+    private void recordFailure(Path nzbPath, Exception ex) {
+        String failure = String.format("%s: %s", nzbPath, ex.getMessage());
+        failures.add(failure);
+        System.err.println("ERROR: " + failure);
+    }
+    
+    /**
+     * Print the throughput and failures of the batch. The summary is printed
+     * to stderr when the split plans or a tar archive are written to stdout so
+     * that stdout only contains the plans or the archive.
+     * @param total number of NZB files in the batch
+     * @param elapsedNanos time taken to process the batch in nanoseconds
+     */
+    private void printSummary(int total, long elapsedNanos) {
+        final double seconds = Math.max(elapsedNanos / 1e9, 1e-9);
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Split %d of %d NZB files into %d parts in %.2fs (%.1f NZB/s, %s/s)",
+            succeeded.get(), total, partCount.get(), seconds, succeeded.get() / seconds,
+            FileSize.format((long) (bytesRead.get() / seconds))));
+        for(PipelineStage stage : stages) {
+            sb.append(String.format("%n  %s", stage));
+        }
+        if(runner.getParseCache() != null) {
+            sb.append(String.format("%n  %s", runner.getParseCache()));
+        }
+        if(!failures.isEmpty()) {
+            sb.append(String.format("%n%d NZB files failed:", failures.size()));
+            for(String failure : failures) {
+                sb.append(String.format("%n  %s", failure));
+            }
+        }
+        runner.info(sb.toString());
+    }
+    
+}
@@ -29,8 +29,15 @@ package nzbsplit;
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import nzbsplit.exception.MissingArgumentException;
 import nzbsplit.exception.ParseException;
+import nzbsplit.filter.FileClassifier;
+import nzbsplit.filter.FileFilter;
+import nzbsplit.plan.PlanWriter;
+import nzbsplit.progress.ProgressReporter;
+import nzbsplit.splitter.SplitStrategy;
 
 /**
  *
@@ -38,11 +45,41 @@ import nzbsplit.exception.ParseException;
  */
 public class CommandLine {
     
+    private final static String STREAM = "-";
+    
+    private final List<SplitStrategy> strategies = new ArrayList<>();
     private int splitNumber = 0;
     private long splitSize = 0;
     private boolean isHelpSet = false;
     private boolean isVerboseSet = false;
-    private String nzbFile;
+    private boolean isPlanOnlySet = false;
+    private boolean isPipelineSet = false;
+    private boolean isGzipSet = false;
+    private boolean isDedupSet = false;
+    private boolean isMergeSet = false;
+    private boolean isIncrementalSet = false;
+    private boolean isPar2SpreadSet = false;
+    private String planFormat = PlanWriter.FORMAT_TSV;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String outputDir = ".";
+    private String watchDir = null;
+    private String name = "split";
+    private String convertFormat = null;
+    private String historyFile = null;
+    private String manifestFile = null;
+    private String checkMode = null;
+    private final FileFilter filter = new FileFilter();
+    private final FileClassifier classifier = new FileClassifier();
+    private FilePriority priority = FilePriority.DEFAULT;
+    private int shardIndex = -1;
+    private int shardCount = 0;
+    private long cacheSize = 0;
+    private long memoryBudget = 0;
+    private String progressFormat = null;
+    private String cacheDir = null;
+    private long cacheDirSize = 1024L * 1024 * 1024;
+    private int servePort = -1;
+    private final List<String> nzbFiles = new ArrayList<>();
     
     private CommandLine() {
         
@@ -55,18 +92,137 @@ public class CommandLine {
      * @throws FileNotFoundException if unable to find the NZB file
      */
     public static void validate(CommandLine cmd) throws ParseException, FileNotFoundException {
-        if(cmd.nzbFile == null) {
+        if(cmd.isServeSet()) {
+            if(cmd.servePort > 65535) {
+                throw new ParseException("The port must be between 0 and 65535");
+            }
+        } else if(cmd.isWatchSet()) {
+            if(cmd.watchDir.startsWith(CygwinUtil.CYGWIN_PATH)) {
+                cmd.watchDir = CygwinUtil.toWindowsPath(cmd.watchDir);
+            }
+            if(!Files.isDirectory(Paths.get(cmd.watchDir))) {
+                throw new FileNotFoundException("Unable to find the inbox directory at " + cmd.watchDir);
+            }
+        } else if(cmd.isShardSet()) {
+            if(cmd.manifestFile == null) {
+                throw new MissingArgumentException("--shard requires --manifest <FILE>");
+            }
+            if(cmd.shardCount < 1 || cmd.shardIndex < 0 || cmd.shardIndex >= cmd.shardCount) {
+                throw new ParseException("The shard must be <INDEX>/<COUNT> where <INDEX> is between 0 and <COUNT> - 1");
+            }
+        } else if(cmd.nzbFiles.isEmpty()) {
             throw new MissingArgumentException("No NZB file was detected");
         }
-        if(cmd.nzbFile.startsWith(CygwinUtil.CYGWIN_PATH)) {
-            cmd.nzbFile = CygwinUtil.toWindowsPath(cmd.nzbFile);
+        for(int i = 0; i < cmd.nzbFiles.size(); i++) {
+            if(cmd.nzbFiles.get(i).startsWith(CygwinUtil.CYGWIN_PATH)) {
+                cmd.nzbFiles.set(i, CygwinUtil.toWindowsPath(cmd.nzbFiles.get(i)));
+            }
+        }
+        if(!cmd.isServeSet() && !cmd.isWatchSet() && !cmd.isShardSet() && !cmd.isBatch() && !cmd.isStdinInput() && !Files.exists(Paths.get(cmd.getNZBFile()))) {
+            throw new FileNotFoundException("Unable to find the NZB file at " + cmd.getNZBFile());
+        }
+        if(cmd.outputDir.startsWith(CygwinUtil.CYGWIN_PATH)) {
+            cmd.outputDir = CygwinUtil.toWindowsPath(cmd.outputDir);
+        }
+        if(!cmd.isStdoutOutput() && !Files.isDirectory(Paths.get(cmd.outputDir))) {
+            throw new FileNotFoundException("Unable to find the output directory at " + cmd.outputDir);
+        }
+        if(cmd.cacheDir != null) {
+            if(cmd.cacheDir.startsWith(CygwinUtil.CYGWIN_PATH)) {
+                cmd.cacheDir = CygwinUtil.toWindowsPath(cmd.cacheDir);
+            }
+            if(!Files.isDirectory(Paths.get(cmd.cacheDir))) {
+                throw new FileNotFoundException("Unable to find the cache directory at " + cmd.cacheDir);
+            }
+            if(!cmd.isCacheSet()) {
+                throw new MissingArgumentException("--cache-dir requires --cache <SIZE>");
+            }
+        }
+        if(cmd.historyFile != null) {
+            if(cmd.historyFile.startsWith(CygwinUtil.CYGWIN_PATH)) {
+                cmd.historyFile = CygwinUtil.toWindowsPath(cmd.historyFile);
+            }
+            if(!Files.isRegularFile(Paths.get(cmd.historyFile))) {
+                throw new FileNotFoundException("Unable to find the history file at " + cmd.historyFile);
+            }
+        }
+        if(cmd.isMergeSet && (cmd.isServeSet() || cmd.isWatchSet() || cmd.isConvertSet() || cmd.isStdinInput())) {
+            throw new ParseException("--merge cannot be used with --serve, --watch, --convert or an NZB file of -");
+        }
+        if(cmd.isIncrementalSet && (cmd.isServeSet() || cmd.isPlanOnlySet || cmd.isPipelineSet || cmd.isMergeSet || cmd.isConvertSet() || cmd.isStdinInput() || cmd.isStdoutOutput())) {
+            throw new ParseException("--incremental cannot be used with --serve, --plan-only, --pipeline, --merge, --convert or an NZB file or output directory of -");
         }
-        if(!Files.exists(Paths.get(cmd.nzbFile))) {
-            throw new FileNotFoundException("Unable to find the NZB file at " + cmd.nzbFile);
+        if(cmd.isPlanOnlySet && cmd.isStdoutOutput()) {
+            throw new ParseException("--plan-only cannot be used with an output directory of -, as the plan is written to stdout");
         }
-        if(!cmd.isSplitNumberSet() && !cmd.isSplitSizeSet()) {
+        if(cmd.manifestFile != null) {
+            if(cmd.manifestFile.startsWith(CygwinUtil.CYGWIN_PATH)) {
+                cmd.manifestFile = CygwinUtil.toWindowsPath(cmd.manifestFile);
+            }
+            if(cmd.isShardSet() && !Files.isRegularFile(Paths.get(cmd.manifestFile))) {
+                throw new FileNotFoundException("Unable to find the shard manifest at " + cmd.manifestFile);
+            }
+            if(cmd.isServeSet() || cmd.isWatchSet() || cmd.isPlanOnlySet || cmd.isPipelineSet || cmd.isMergeSet || cmd.isIncrementalSet || cmd.isDedupSet || cmd.historyFile != null || cmd.isConvertSet() || cmd.isStdinInput() || cmd.isStdoutOutput()) {
+                throw new ParseException("--manifest cannot be used with --serve, --watch, --plan-only, --pipeline, --merge, --incremental, --dedup, --history, --convert or an NZB file or output directory of -");
+            }
+            if(!cmd.isShardSet() && (cmd.isBatch() || cmd.strategies.size() > 1)) {
+                throw new ParseException("A shard manifest can only be published for a single NZB file and split option");
+            }
+        } else if(cmd.isShardSet()) {
+            throw new MissingArgumentException("--shard requires --manifest <FILE>");
+        }
+        if(cmd.isPar2SpreadSet) {
+            boolean isNumberSet = false;
+            for(int i = 0; i < cmd.strategies.size(); i++) {
+                isNumberSet |= cmd.strategies.get(i).getType() == SplitStrategy.NUMBER;
+                cmd.strategies.set(i, cmd.strategies.get(i).withPar2Spread());
+            }
+            if(!isNumberSet || cmd.isShardSet()) {
+                throw new ParseException("--spread-par2 requires -n <NUM_SPLIT> and cannot be used with --shard");
+            }
+        }
+        if(!cmd.classifier.isEmpty() && (cmd.isServeSet() || cmd.isPipelineSet || cmd.isIncrementalSet || cmd.isConvertSet() || cmd.manifestFile != null)) {
+            throw new ParseException("--provider cannot be used with --serve, --pipeline, --incremental, --convert or --manifest");
+        }
+        if(cmd.checkMode != null) {
+            if(!CompletenessCheck.isSupportedCheckMode(cmd.checkMode)) {
+                throw new ParseException("Unsupported check mode " + cmd.checkMode);
+            }
+            if(cmd.isServeSet() || cmd.isConvertSet() || cmd.isShardSet()) {
+                throw new ParseException("--check cannot be used with --serve, --convert or --shard");
+            }
+        }
+        if(cmd.isMemoryBudgetSet() && (cmd.isServeSet() || cmd.isConvertSet() || cmd.manifestFile != null)) {
+            throw new ParseException("--memory-budget cannot be used with --serve, --convert or --manifest");
+        }
+        if(cmd.isProgressSet()) {
+            if(!ProgressReporter.isSupportedFormat(cmd.progressFormat)) {
+                throw new ParseException("Unsupported progress format " + cmd.progressFormat);
+            }
+            if(cmd.isServeSet() || cmd.isConvertSet() || cmd.manifestFile != null) {
+                throw new ParseException("--progress cannot be used with --serve, --convert or --manifest");
+            }
+        }
+        if(!cmd.filter.isEmpty() && (cmd.isConvertSet() || cmd.isShardSet())) {
+            throw new ParseException("--include and --exclude cannot be used with --convert or --shard");
+        }
+        if(cmd.isConvertSet()) {
+            if(!SplitRunner.isSupportedConvertFormat(cmd.convertFormat)) {
+                throw new ParseException("Unsupported convert format " + cmd.convertFormat);
+            }
+            if(cmd.isServeSet() || cmd.isWatchSet() || cmd.isPlanOnlySet || cmd.isStdoutOutput()) {
+                throw new ParseException("--convert cannot be used with --serve, --watch, --plan-only or an output directory of -");
+            }
+        }
+        if(!cmd.isServeSet() && !cmd.isConvertSet() && !cmd.isShardSet() && !cmd.isSplitNumberSet() && !cmd.isSplitSizeSet()) {
             throw new MissingArgumentException("No split option was defined. Use the --help flag for more information");
         }
+        if(!PlanWriter.isSupportedFormat(cmd.planFormat)) {
+            throw new ParseException("Unsupported plan format " + cmd.planFormat);
+        }
+        if(cmd.threads < 1) {
+            throw new ParseException("The number of threads must be at least 1");
+        }
     }
     
     /**
@@ -111,22 +267,154 @@ public class CommandLine {
         switch(args[curIndex]) {
             case "-n":
             case "--number":
-                cmd.splitNumber = Integer.valueOf(args[curIndex+1]);
+                for(SplitStrategy strategy : SplitStrategy.parseNumbers(args[curIndex+1])) {
+                    cmd.splitNumber = (int) strategy.getValue();
+                    SplitStrategy.addDistinct(cmd.strategies, strategy);
+                }
+                return true;
+            case "-k":
+            case "--hash":
+                for(SplitStrategy strategy : SplitStrategy.parseHashes(args[curIndex+1])) {
+                    cmd.splitNumber = (int) strategy.getValue();
+                    SplitStrategy.addDistinct(cmd.strategies, strategy);
+                }
                 return true;
             case "-s":
             case "--max-split-size":
-                cmd.splitSize = FileSize.parseBytes(args[curIndex+1]);
+                for(SplitStrategy strategy : SplitStrategy.parseSizes(args[curIndex+1])) {
+                    cmd.splitSize = strategy.getValue();
+                    SplitStrategy.addDistinct(cmd.strategies, strategy);
+                }
+                return true;
+            case "-p":
+            case "--plan-only":
+                cmd.isPlanOnlySet = true;
+                break;
+            case "-z":
+            case "--gzip":
+                cmd.isGzipSet = true;
+                break;
+            case "-i":
+            case "--incremental":
+                cmd.isIncrementalSet = true;
+                break;
+            case "-m":
+            case "--merge":
+                cmd.isMergeSet = true;
+                break;
+            case "--spread-par2":
+                cmd.isPar2SpreadSet = true;
+                break;
+            case "--dedup":
+                cmd.isDedupSet = true;
+                break;
+            case "--pipeline":
+                cmd.isPipelineSet = true;
+                break;
+            case "--plan-format":
+                cmd.planFormat = args[curIndex+1].toLowerCase();
+                return true;
+            case "-j":
+            case "--threads":
+                cmd.threads = parseInteger(args[curIndex+1], "threads");
+                return true;
+            case "-o":
+            case "--output-dir":
+                cmd.outputDir = args[curIndex+1];
+                return true;
+            case "--history":
+                cmd.historyFile = args[curIndex+1];
+                return true;
+            case "--priority":
+                cmd.priority = FilePriority.parse(args[curIndex+1]);
+                return true;
+            case "--provider":
+                cmd.classifier.addClass(args[curIndex+1]);
+                return true;
+            case "--check":
+                cmd.checkMode = args[curIndex+1].toLowerCase();
+                return true;
+            case "--include":
+                cmd.filter.include(args[curIndex+1]);
+                return true;
+            case "--exclude":
+                cmd.filter.exclude(args[curIndex+1]);
+                return true;
+            case "--manifest":
+                cmd.manifestFile = args[curIndex+1];
+                return true;
+            case "--shard":
+                parseShard(cmd, args[curIndex+1]);
+                return true;
+            case "--cache":
+                cmd.cacheSize = FileSize.parseBytes(args[curIndex+1]);
+                return true;
+            case "--progress":
+                cmd.progressFormat = args[curIndex+1].toLowerCase();
+                return true;
+            case "--memory-budget":
+                cmd.memoryBudget = FileSize.parseBytes(args[curIndex+1]);
+                return true;
+            case "--cache-dir":
+                cmd.cacheDir = args[curIndex+1];
+                return true;
+            case "--cache-dir-size":
+                cmd.cacheDirSize = FileSize.parseBytes(args[curIndex+1]);
+                return true;
+            case "--convert":
+                cmd.convertFormat = args[curIndex+1].toLowerCase();
+                return true;
+            case "--name":
+                cmd.name = args[curIndex+1];
+                return true;
+            case "-w":
+            case "--watch":
+                cmd.watchDir = args[curIndex+1];
+                return true;
+            case "--serve":
+                cmd.servePort = parseInteger(args[curIndex+1], "port");
                 return true;
             case "-v":
             case "--verbose":
                 cmd.isVerboseSet = true;
                 break;
             default:
-                cmd.nzbFile = args[curIndex];
+                cmd.nzbFiles.add(args[curIndex]);
         }
         return false;
     }
     
+    /**
+     * Parse an integer option value
+     * @param value String representation of the integer
+     * @param name name of the option value used in the error message
+     * @return integer value
+     * @throws ParseException if the value is not an integer
+     */
+    private static int parseInteger(String value, String name) throws ParseException {
+        try {
+            return Integer.parseInt(value);
+        } catch(NumberFormatException ex) {
+            throw new ParseException(String.format("Unable to determine the number of %s from %s", name, value));
+        }
+    }
+    
+    /**
+     * Parse a shard option value
+     * @param cmd CommandLine to store the shard index and count
+     * @param value shard in the form INDEX/COUNT e.g. 0/4
+     * @throws ParseException if the value is not in the form INDEX/COUNT
+     */
+    private static void parseShard(CommandLine cmd, String value) throws ParseException {
+        int slash = value.indexOf('/');
+        try {
+            cmd.shardIndex = Integer.parseInt(value.substring(0, slash));
+            cmd.shardCount = Integer.parseInt(value.substring(slash + 1));
+        } catch(NumberFormatException | IndexOutOfBoundsException ex) {
+            throw new ParseException(String.format("Unable to determine the shard from %s. Use <INDEX>/<COUNT> e.g. 0/4", value));
+        }
+    }
+    
     /**
      * Check if the help flag is set
      * @return true if the help flag is set, false otherwise
@@ -143,6 +431,38 @@ public class CommandLine {
         return isVerboseSet;
     }
     
+    /**
+     * Check if the plan only flag is set
+     * @return true if the plan only flag is set, false otherwise
+     */
+    public boolean isPlanOnlySet() {
+        return isPlanOnlySet;
+    }
+    
+    /**
+     * Check if the gzip flag is set
+     * @return true if the gzip flag is set, false otherwise
+     */
+    public boolean isGzipSet() {
+        return isGzipSet;
+    }
+    
+    /**
+     * Check if the pipeline flag is set
+     * @return true if the pipeline flag is set, false otherwise
+     */
+    public boolean isPipelineSet() {
+        return isPipelineSet;
+    }
+    
+    /**
+     * Get the format the split plan should be output in
+     * @return plan format e.g. "tsv" or "json"
+     */
+    public String getPlanFormat() {
+        return planFormat;
+    }
+    
     /**
      * Check if the number of files to split has been set
      * @return true if the number of files to split has been set, false otherwise
@@ -160,7 +480,8 @@ public class CommandLine {
     }
     
     /**
-     * Get the number of files to split the NZB into
+     * Get the number of files to split the NZB into. If a list of numbers was
+     * given, the last number is returned
      * @return number of files to split the NZB into
      */
     public int getSplitNumber() {
@@ -168,7 +489,8 @@ public class CommandLine {
     }
     
     /**
-     * Get the maximum split size in bytes
+     * Get the maximum split size in bytes. If a list of sizes was given, the
+     * last size is returned
      * @return maximum split size in bytes
      */
     public long getMaxSplitSize() {
@@ -176,11 +498,300 @@ public class CommandLine {
     }
 
     /**
-     * Get the path to the NZB file
+     * Get the split strategies in the order given on the command line. Each
+     * value of a comma separated list given to -n or -s is a separate strategy
+     * @return list of split strategies
+     */
+    public List<SplitStrategy> getSplitStrategies() {
+        return strategies;
+    }
+    
+    /**
+     * Check if more than one split strategy was given
+     * @return true if more than one split strategy was given, false otherwise
+     */
+    public boolean isMultiPlan() {
+        return strategies.size() > 1;
+    }
+
+    /**
+     * Get the path to the NZB file. If many NZB files were given, the first
+     * is returned
      * @return path to the NZB file
      */
     public String getNZBFile() {
-        return nzbFile;
+        return nzbFiles.isEmpty() ? null : nzbFiles.get(0);
+    }
+    
+    /**
+     * Get the NZB files, directories or glob patterns given
+     * @return list of NZB files, directories or glob patterns
+     */
+    public List<String> getNZBFiles() {
+        return nzbFiles;
+    }
+    
+    /**
+     * Check if many NZB files should be split i.e. more than one NZB file, a
+     * directory or a glob pattern was given
+     * @return true if many NZB files should be split, false otherwise
+     */
+    public boolean isBatch() {
+        if(isStdinInput()) {
+            return false;
+        }
+        return nzbFiles.isEmpty() || nzbFiles.size() > 1 || BatchProcessor.isGlob(nzbFiles.get(0)) || Files.isDirectory(Paths.get(nzbFiles.get(0)));
+    }
+    
+    /**
+     * Check if an inbox directory to watch for NZB files has been set
+     * @return true if an inbox directory has been set, false otherwise
+     */
+    public boolean isWatchSet() {
+        return watchDir != null;
+    }
+    
+    /**
+     * Get the inbox directory to watch for NZB files
+     * @return inbox directory or null if not set
+     */
+    public String getWatchDir() {
+        return watchDir;
+    }
+    
+    /**
+     * Check if the port for the HTTP split server has been set
+     * @return true if the port has been set, false otherwise
+     */
+    public boolean isServeSet() {
+        return servePort >= 0;
+    }
+    
+    /**
+     * Get the port the HTTP split server should listen on
+     * @return port or -1 if not set
+     */
+    public int getServePort() {
+        return servePort;
+    }
+    
+    /**
+     * Check if the NZB should be read from stdin i.e. the NZB file given is "-"
+     * @return true if the NZB should be read from stdin, false otherwise
+     */
+    public boolean isStdinInput() {
+        return nzbFiles.size() == 1 && STREAM.equals(nzbFiles.get(0));
+    }
+    
+    /**
+     * Check if the NZB parts should be written to stdout as a tar archive i.e.
+     * the output directory given is "-"
+     * @return true if the NZB parts should be written to stdout, false otherwise
+     */
+    public boolean isStdoutOutput() {
+        return STREAM.equals(outputDir);
+    }
+    
+    /**
+     * Check if the NZB files should be converted to another format instead of split
+     * @return true if the NZB files should be converted, false otherwise
+     */
+    public boolean isConvertSet() {
+        return convertFormat != null;
+    }
+    
+    /**
+     * Get the format the NZB files should be converted to
+     * @return {@link SplitRunner#CONVERT_NZB}, {@link SplitRunner#CONVERT_NZBX} or null if not set
+     */
+    public String getConvertFormat() {
+        return convertFormat;
+    }
+    
+    /**
+     * Check if the NZB files should be split incrementally
+     * @return true if the NZB files should be split incrementally, false otherwise
+     */
+    public boolean isIncrementalSet() {
+        return isIncrementalSet;
+    }
+    
+    /**
+     * Check if the NZB files should be merged into a single NZB before splitting
+     * @return true if the NZB files should be merged, false otherwise
+     */
+    public boolean isMergeSet() {
+        return isMergeSet;
+    }
+    
+    /**
+     * Check if duplicate segments should be removed whilst parsing
+     * @return true if duplicate segments should be removed, false otherwise
+     */
+    public boolean isDedupSet() {
+        return isDedupSet;
+    }
+    
+    /**
+     * Get the file containing the message ids of the articles already downloaded
+     * @return history file or null if not set
+     */
+    public String getHistoryFile() {
+        return historyFile;
+    }
+    
+    /**
+     * Get the priority the files of each part are ordered by
+     * @return FilePriority or null to keep the order of the splitter
+     */
+    public FilePriority getPriority() {
+        return priority;
+    }
+    
+    /**
+     * Get how the completeness of each NZB is checked before it is split
+     * @return check mode or null if completeness is not checked
+     */
+    public String getCheckMode() {
+        return checkMode;
+    }
+    
+    /**
+     * Get the classifier that partitions files by provider
+     * @return FileClassifier, which is empty if no providers were given
+     */
+    public FileClassifier getClassifier() {
+        return classifier;
+    }
+    
+    /**
+     * Get the filter compiled from the include and exclude rules
+     * @return FileFilter, which is empty if no rules were given
+     */
+    public FileFilter getFilter() {
+        return filter;
+    }
+    
+    /**
+     * Get the shard manifest that is published, or read if a shard is set
+     * @return shard manifest file or null if not set
+     */
+    public String getManifestFile() {
+        return manifestFile;
+    }
+    
+    /**
+     * Check if only the parts of a single shard should be written from the
+     * shard manifest
+     * @return true if a shard is set, false otherwise
+     */
+    public boolean isShardSet() {
+        return shardCount != 0 || shardIndex != -1;
+    }
+    
+    /**
+     * Get the index of the shard whose parts should be written
+     * @return shard index or -1 if not set
+     */
+    public int getShardIndex() {
+        return shardIndex;
+    }
+    
+    /**
+     * Get the number of shards the parts are distributed across
+     * @return number of shards or 0 if not set
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+    
+    /**
+     * Check if parsed NZBs should be cached
+     * @return true if the parse cache is enabled, false otherwise
+     */
+    public boolean isCacheSet() {
+        return cacheSize > 0;
+    }
+    
+    /**
+     * Check if a memory budget was given
+     * @return true if a memory budget was given, false otherwise
+     */
+    public boolean isMemoryBudgetSet() {
+        return memoryBudget > 0;
+    }
+    
+    /**
+     * Get the memory available to split NZB files
+     * @return memory budget in bytes or 0 if not set
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+    
+    /**
+     * Check if the progress should be reported
+     * @return true if a progress format was given, false otherwise
+     */
+    public boolean isProgressSet() {
+        return progressFormat != null;
+    }
+    
+    /**
+     * Get the format the progress should be reported in
+     * @return progress format e.g. "console" or "json", or null if not set
+     */
+    public String getProgressFormat() {
+        return progressFormat;
+    }
+    
+    /**
+     * Get the number of bytes of parsed NZBs to cache in memory
+     * @return memory budget of the parse cache in bytes
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+    
+    /**
+     * Get the directory the parse cache stores parsed NZBs in
+     * @return cache directory or null if not set
+     */
+    public String getCacheDir() {
+        return cacheDir;
+    }
+    
+    /**
+     * Get the number of bytes of parsed NZBs to store in the cache directory
+     * @return disk budget of the parse cache in bytes. Default is 1GB
+     */
+    public long getCacheDirSize() {
+        return cacheDirSize;
+    }
+    
+    /**
+     * Get the name the NZB parts are named after when reading from stdin or
+     * merging NZB files
+     * @return name e.g. "input"
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Get the maximum number of NZB files to split at the same time
+     * @return number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Get the directory the NZB parts are written to
+     * @return output directory. Default is the current working directory
+     */
+    public String getOutputDir() {
+        return outputDir;
     }
     
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.util.List;
+import nzbsplit.check.Completeness;
+import nzbsplit.exception.SplitException;
+import nzbsplit.nzb.NZB;
+
+/**
+ * Checks the completeness of each NZB before it is split and prints the
+ * completeness and the incomplete sets and files to stderr. If an NZB is
+ * incomplete it is either split anyway ({@link #CHECK_REPORT}), not split
+ * ({@link #CHECK_REFUSE}) or split without its incomplete sets
+ * ({@link #CHECK_DROP}).
+ * @author Sam Malone
+ */
+public class CompletenessCheck {
+    
+    private final static int MAX_INCOMPLETE_FILES_PRINTED = 20;
+    
+    public final static String CHECK_REPORT = "report";
+    public final static String CHECK_REFUSE = "refuse";
+    public final static String CHECK_DROP = "drop";
+    
+    private final String checkMode;
+    
+    /**
+     * Creates a new instance of CompletenessCheck
+     * @param checkMode {@link #CHECK_REPORT}, {@link #CHECK_REFUSE} or
+     * {@link #CHECK_DROP}
+     */
+    public CompletenessCheck(String checkMode) {
+        this.checkMode = checkMode;
+    }
+    
+    /**
+     * Check if the given completeness check mode is supported
+     * @param checkMode check mode
+     * @return true if supported, false otherwise
+     */
+    public static boolean isSupportedCheckMode(String checkMode) {
+        return CHECK_REPORT.equals(checkMode) || CHECK_REFUSE.equals(checkMode) || CHECK_DROP.equals(checkMode);
+    }
+    
+    /**
+     * Check the completeness of the given NZB as per the check mode, printing
+     * the completeness and the incomplete sets and files
+     * @param fileName file name of the NZB
+     * @param nzb parsed NZB
+     * @return the given NZB, or the NZB without its incomplete sets if they
+     * are dropped
+     * @throws SplitException if the NZB is incomplete and incomplete NZBs are
+     * refused, or if no set is complete when incomplete sets are dropped
+     */
+    public NZB check(String fileName, NZB nzb) throws SplitException {
+        Completeness completeness = Completeness.analyze(nzb);
+        long expected = completeness.getExpectedSegments();
+        System.err.println(String.format("%s: %d of %d files and %d of %d segments (%.2f%%) present", fileName,
+            completeness.getPresentFiles(), completeness.getExpectedFiles(), completeness.getPresentSegments(), expected,
+            expected == 0 ? 100.0 : 100.0 * completeness.getPresentSegments() / expected));
+        if(completeness.isComplete()) {
+            return nzb;
+        }
+        for(String set : completeness.getIncompleteSetDescriptions()) {
+            System.err.println(String.format("%s: %s", fileName, set));
+        }
+        List<String> files = completeness.getIncompleteFileDescriptions();
+        for(int i = 0; i < files.size() && i < MAX_INCOMPLETE_FILES_PRINTED; i++) {
+            System.err.println(String.format("%s: %s", fileName, files.get(i)));
+        }
+        if(files.size() > MAX_INCOMPLETE_FILES_PRINTED) {
+            System.err.println(String.format("%s: ... and %d more incomplete files", fileName, files.size() - MAX_INCOMPLETE_FILES_PRINTED));
+        }
+        if(CHECK_REFUSE.equals(checkMode)) {
+            throw new SplitException(String.format("%s is incomplete", fileName));
+        }
+        if(CHECK_DROP.equals(checkMode)) {
+            NZB complete = completeness.getCompleteNZB();
+            System.err.println(String.format("%s: dropped %d files of incomplete sets", fileName, nzb.getFiles().size() - complete.getFiles().size()));
+            if(complete.getFiles().isEmpty()) {
+                throw new SplitException(String.format("No complete sets in %s", fileName));
+            }
+            return complete;
+        }
+        return nzb;
+    }
+    
+}
@@ -36,6 +36,7 @@ public class FileNamer {
     
     private final String fileNameBase;
     private String suffixDivider = "_";
+    private String planName = null;
     private final String extension;
     private int zeroPadding = 0;
     
@@ -56,9 +57,22 @@ public class FileNamer {
      * @return file name that should be used to store the given part
      */
     public File getPartFileName(File destDir, int partNo) {
+        if(planName != null) {
+            return new File(destDir, String.format("%s%s%s%s%s%s", fileNameBase, suffixDivider, planName, suffixDivider, zeroPad(partNo), extension));
+        }
         return new File(destDir, String.format("%s%s%s%s", fileNameBase, suffixDivider, zeroPad(partNo), extension));
     }
     
+    /**
+     * Set the name of the split plan that the parts belong to. The plan name is
+     * inserted before the part number e.g. input_n4_0.nzb so that the parts of
+     * different plans do not overwrite each other. Default is no plan name.
+     * @param planName name of the plan or null for no plan name
+     */
+    public void setPlanName(String planName) {
+        this.planName = planName;
+    }
+    
     /**
      * Set the length of the each name part to be padded with zeroes if necessary
      * @param length length of each name part to be padded e.g. formatting 23:
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.File;
+import java.io.IOException;
+import nzbsplit.api.PartSink;
+import nzbsplit.nzb.NZB;
+import nzbsplit.parser.NZBXParser;
+import nzbsplit.progress.Progress;
+
+/**
+ * A PartSink that writes each NZB part to a file in a destination directory.
+ * The parts are named by a {@link FileNamer} and are given a .nzb.gz extension
+ * if the {@link NZBWriter} compresses the parts.
+ * @author Sam Malone
+ */
+public class FilePartSink implements PartSink {
+    
+    private final static String NZB_EXTENSION = ".nzb";
+    private final static String GZIP_EXTENSION = ".gz";
+    
+    private final NZBWriter nzbWriter;
+    private final File destDir;
+    private final String baseName;
+    private Progress progress = null;
+    
+    /**
+     * Creates a new instance of FilePartSink
+     * @param nzbWriter NZBWriter used to write each part
+     * @param destDir destination directory
+     * @param fileName file name of the NZB the parts are named after e.g. input.nzb
+     */
+    public FilePartSink(NZBWriter nzbWriter, File destDir, String fileName) {
+        this.nzbWriter = nzbWriter;
+        this.destDir = destDir;
+        this.baseName = getBaseName(fileName);
+    }
+    
+    /**
+     * Set the progress each part and the bytes written to it are recorded on.
+     * The write phase of the progress starts when the first part is opened.
+     * @param progress Progress or null to not record the progress
+     */
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+    
+    /**
+     * Get the file name without the .nzb, .nzb.gz or .nzbx extension
+     * @param fileName file name e.g. input.nzb.gz
+     * @return file name without the extension e.g. input
+     */
+    public static String getBaseName(String fileName) {
+        String baseName = fileName;
+        if(baseName.endsWith(GZIP_EXTENSION)) {
+            baseName = baseName.substring(0, baseName.length() - GZIP_EXTENSION.length());
+        }
+        if(baseName.endsWith(NZB_EXTENSION)) {
+            baseName = baseName.substring(0, baseName.length() - NZB_EXTENSION.length());
+        } else if(baseName.endsWith(NZBXParser.EXTENSION)) {
+            baseName = baseName.substring(0, baseName.length() - NZBXParser.EXTENSION.length());
+        }
+        return baseName;
+    }
+
+    /**
+     * Get the file that the given part is written to
+     * @param planName name of the split plan or null if there is a single plan
+     * @param partNo part number
+     * @return part file
+     */
+    public File getPartFile(String planName, int partNo) {
+        String extension = nzbWriter.isCompressSet() ? NZB_EXTENSION + GZIP_EXTENSION : NZB_EXTENSION;
+        FileNamer namer = new FileNamer(baseName + extension, extension);
+        namer.setPlanName(planName);
+        return namer.getPartFileName(destDir, partNo);
+    }
+
+    @Override
+    public void accept(String planName, int partNo, NZB part) throws IOException {
+        if(progress == null) {
+            nzbWriter.write(part, getPartFile(planName, partNo));
+            return;
+        }
+        progress.startWriting();
+        nzbWriter.write(part, getPartFile(planName, partNo), progress);
+        progress.addPart();
+    }
+    
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import nzbsplit.exception.ParseException;
+import nzbsplit.filter.FileFilter;
+import nzbsplit.nzb.FileElement;
+
+/**
+ * A FilePriority ranks the files of an NZB part by the order they should be
+ * downloaded in, so a downloader can verify and unpack a release as early as
+ * possible: the par2 index, then the first RAR volume, the remaining volumes,
+ * other files and finally the par2 recovery volumes. The order of the classes
+ * can be changed. A FilePriority is read only so it can be shared by many
+ * threads.
+ * @author Sam Malone
+ */
+public class FilePriority {
+    
+    /**
+     * par2 index file e.g. input.par2
+     */
+    public final static String INDEX = "index";
+    /**
+     * first volume of an archive e.g. input.part01.rar, input.rar or input.001
+     */
+    public final static String FIRST = "first";
+    /**
+     * remaining volumes of an archive e.g. input.part02.rar, input.r00 or input.002
+     */
+    public final static String VOLUMES = "volumes";
+    /**
+     * par2 recovery volume e.g. input.vol00+01.par2
+     */
+    public final static String RECOVERY = "recovery";
+    /**
+     * any other file e.g. input.nfo
+     */
+    public final static String OTHER = "other";
+    /**
+     * order that keeps the files in the order the splitter placed them
+     */
+    public final static String NONE = "none";
+    
+    private final static String[] CLASSES = { INDEX, FIRST, VOLUMES, OTHER, RECOVERY };
+    
+    private final static Pattern RECOVERY_PATTERN = Pattern.compile("\\.vol\\d+[+-]\\d+\\.par2$");
+    private final static Pattern FIRST_PART_PATTERN = Pattern.compile("\\.part0*1\\.rar$");
+    private final static Pattern PART_PATTERN = Pattern.compile("\\.part\\d+\\.rar$");
+    private final static Pattern OLD_VOLUME_PATTERN = Pattern.compile("\\.[r-z]\\d{2}$");
+    private final static Pattern FIRST_SPLIT_PATTERN = Pattern.compile("\\.0*1$");
+    private final static Pattern SPLIT_PATTERN = Pattern.compile("\\.\\d{3}$");
+    
+    /**
+     * The default order: index, first, volumes, other then recovery
+     */
+    public final static FilePriority DEFAULT = new FilePriority(new int[] { 0, 1, 2, 3, 4 });
+    
+    private final int[] ranks;
+    
+    /**
+     * Creates a new FilePriority
+     * @param ranks rank of each class in the order of {@link #CLASSES}
+     */
+    private FilePriority(int[] ranks) {
+        this.ranks = ranks;
+    }
+    
+    /**
+     * Parse a comma separated order of file classes e.g.
+     * "index,first,volumes,other,recovery". Classes that are left out are
+     * ranked after the classes given, in the default order.
+     * @param order comma separated list of {@link #INDEX}, {@link #FIRST},
+     * {@link #VOLUMES}, {@link #OTHER} and {@link #RECOVERY}, or {@link #NONE}
+     * @return FilePriority or null if the order is {@link #NONE}
+     * @throws ParseException if a class is unknown or given more than once
+     */
+    public static FilePriority parse(String order) throws ParseException {
+        if(order.equalsIgnoreCase(NONE)) {
+            return null;
+        }
+        final List<String> given = new ArrayList<>();
+        for(String name : order.toLowerCase(Locale.ENGLISH).split(",")) {
+            if(indexOf(name) == -1) {
+                throw new ParseException("Unknown file priority " + name);
+            }
+            if(given.contains(name)) {
+                throw new ParseException("The file priority " + name + " was given more than once");
+            }
+            given.add(name);
+        }
+        int[] ranks = new int[CLASSES.length];
+        int rank = given.size();
+        for(int i = 0; i < CLASSES.length; i++) {
+            ranks[i] = given.contains(CLASSES[i]) ? given.indexOf(CLASSES[i]) : rank++;
+        }
+        return new FilePriority(ranks);
+    }
+    
+    /**
+     * Get the index of the given class in {@link #CLASSES}
+     * @param name class name
+     * @return index or -1 if not found
+     */
+    private static int indexOf(String name) {
+        for(int i = 0; i < CLASSES.length; i++) {
+            if(CLASSES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Get the rank of the given file. Files with a lower rank should be
+     * downloaded first.
+     * @param file FileElement
+     * @return rank of the file
+     */
+    public int getRank(FileElement file) {
+        return ranks[indexOf(getFileClass(FileFilter.getFileName(file.getSubject())))];
+    }
+    
+    /**
+     * Get the class of the file with the given name
+     * @param fileName file name or null
+     * @return {@link #INDEX}, {@link #FIRST}, {@link #VOLUMES},
+     * {@link #RECOVERY} or {@link #OTHER}
+     */
+    public static String getFileClass(String fileName) {
+        if(fileName == null) {
+            return OTHER;
+        }
+        String name = fileName.toLowerCase(Locale.ENGLISH);
+        if(name.endsWith(".par2")) {
+            return RECOVERY_PATTERN.matcher(name).find() ? RECOVERY : INDEX;
+        }
+        if(name.endsWith(".rar")) {
+            return !PART_PATTERN.matcher(name).find() || FIRST_PART_PATTERN.matcher(name).find() ? FIRST : VOLUMES;
+        }
+        if(OLD_VOLUME_PATTERN.matcher(name).find()) {
+            return VOLUMES;
+        }
+        if(SPLIT_PATTERN.matcher(name).find()) {
+            return FIRST_SPLIT_PATTERN.matcher(name).find() ? FIRST : VOLUMES;
+        }
+        return OTHER;
+    }
+    
+}
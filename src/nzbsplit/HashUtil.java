@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+/**
+ * Hash functions shared by the classes that hash message ids and files
+ * @author Sam Malone
+ */
+public class HashUtil {
+    
+    /**
+     * Initial value of a 64 bit FNV-1a hash
+     */
+    public final static long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    
+    private final static long FNV_PRIME = 0x100000001b3L;
+    
+    /**
+     * Continue the 64 bit FNV-1a hash with the characters of the given string
+     * @param h hash so far, {@link #FNV_OFFSET_BASIS} to start a hash
+     * @param s string
+     * @return hash
+     */
+    public static long fnv1a(long h, String s) {
+        for(int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+    
+    /**
+     * Continue the 64 bit FNV-1a hash with the given string followed by a
+     * separator, so the fields of a record hash differently from the same
+     * characters split into other fields
+     * @param h hash so far, {@link #FNV_OFFSET_BASIS} to start a hash
+     * @param s string or null
+     * @return hash
+     */
+    public static long fnv1aField(long h, String s) {
+        if(s != null) {
+            h = fnv1a(h, s);
+        }
+        h ^= 0xFFFF;
+        h *= FNV_PRIME;
+        return h;
+    }
+    
+    /**
+     * Mix the bits of the given value using the MurmurHash3 fmix64 finalizer,
+     * so every bit of the result depends on every bit of the value
+     * @param h value
+     * @return mixed value
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+}
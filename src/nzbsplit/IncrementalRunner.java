@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import nzbsplit.api.NZBSplit;
+import nzbsplit.exception.SplitException;
+import nzbsplit.nzb.NZB;
+import nzbsplit.plan.IncrementalPlan;
+import nzbsplit.progress.Progress;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * An IncrementalRunner splits an NZB using the plan stored by the previous
+ * split of the same NZB file, if any, then writes only the parts that have
+ * changed and deletes the parts that are no longer needed. The plan is
+ * stored alongside the parts as the base name of the NZB file followed by
+ * .nzbsplit.
+ * @author Sam Malone
+ */
+public class IncrementalRunner {
+    
+    private final static String INCREMENTAL_PLAN_EXTENSION = ".nzbsplit";
+    private final static String UNNAMED_PLAN_PREFIX = "-";
+    
+    private final NZBSplit nzbSplit;
+    private final NZBWriter nzbWriter;
+    private final File destDir;
+    private final SplitReporter reporter;
+    
+    /**
+     * Creates a new instance of IncrementalRunner
+     * @param nzbSplit NZBSplit holding the split strategies and file priority
+     * @param nzbWriter NZBWriter used to write the NZB parts
+     * @param destDir directory the NZB parts and plans are written to
+     * @param reporter SplitReporter the summary of each split is printed by
+     */
+    public IncrementalRunner(NZBSplit nzbSplit, NZBWriter nzbWriter, File destDir, SplitReporter reporter) {
+        this.nzbSplit = nzbSplit;
+        this.nzbWriter = nzbWriter;
+        this.destDir = destDir;
+        this.reporter = reporter;
+    }
+    
+    /**
+     * Split the given NZB using the plan stored by the previous split, if any,
+     * then write only the parts that have changed and delete the parts that
+     * are no longer needed. If there is no stored plan for a strategy, or the
+     * number of parts has changed, the NZB is split from scratch. Plans are
+     * stored under the strategy name, prefixed with - if the part files are
+     * not named after the strategy, and the plan of any other strategy that
+     * wrote the same part files is replaced.
+     * @param fileName file name of the NZB file
+     * @param nzb parsed and filtered NZB
+     * @param progress progress the written parts are recorded on or null
+     * @return number of NZB parts
+     * @throws IOException if unable to write the parts or the plan
+     * @throws SplitException if a strategy failed to split the NZB
+     */
+    public int split(String fileName, NZB nzb, Progress progress) throws IOException, SplitException {
+        final List<SplitStrategy> strategies = nzbSplit.getStrategies();
+        final Path planPath = new File(destDir, FilePartSink.getBaseName(fileName) + INCREMENTAL_PLAN_EXTENSION).toPath();
+        final IncrementalPlan plan = IncrementalPlan.load(planPath);
+        final FilePartSink sink = new FilePartSink(nzbWriter, destDir, fileName);
+        sink.setProgress(progress);
+        if(progress != null) {
+            progress.startSplitting();
+        }
+        int partCount = 0;
+        int written = 0;
+        for(SplitStrategy strategy : strategies) {
+            String planName = strategies.size() > 1 ? strategy.getName() : null;
+            String storedName = planName == null ? UNNAMED_PLAN_PREFIX + strategy.getName() : planName;
+            int previousPartCount = plan.getPartCount(storedName);
+            if(planName == null) {
+                for(String name : plan.getPlanNames()) {
+                    if(name.startsWith(UNNAMED_PLAN_PREFIX) && !name.equals(storedName)) {
+                        previousPartCount = Math.max(previousPartCount, plan.getPartCount(name));
+                        plan.remove(name);
+                    }
+                }
+            }
+            List<NZB> parts = plan.update(storedName, strategy, nzb);
+            if(parts == null) {
+                parts = strategy.createSplitter(nzb).split();
+            }
+            nzbSplit.order(parts);
+            for(int i = 0; i < parts.size(); i++) {
+                if(plan.isChanged(storedName, i, parts.get(i)) || !sink.getPartFile(planName, i).exists()) {
+                    sink.accept(planName, i, parts.get(i));
+                    written++;
+                }
+            }
+            for(int i = parts.size(); i < previousPartCount; i++) {
+                Files.deleteIfExists(sink.getPartFile(planName, i).toPath());
+            }
+            plan.put(storedName, parts);
+            partCount += parts.size();
+        }
+        plan.save(planPath);
+        reporter.reportFiltered(fileName, nzb);
+        reporter.info(String.format("%s: wrote %d of %d parts", fileName, written, partCount));
+        return partCount;
+    }
+    
+}
@@ -26,18 +26,25 @@
 
 package nzbsplit;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import nzbsplit.cache.ParseCache;
+import nzbsplit.exception.NZBParseException;
 import nzbsplit.exception.ParseException;
 import nzbsplit.exception.SplitException;
-import nzbsplit.nzb.FileElement;
-import nzbsplit.nzb.NZB;
-import nzbsplit.parser.NZBParser;
-import nzbsplit.splitter.NZBSplitter;
-import nzbsplit.splitter.NumberSplitter;
-import nzbsplit.splitter.SizeSplitter;
+import nzbsplit.history.MessageIdHistory;
+import nzbsplit.plan.PlanWriter;
+import nzbsplit.progress.ProgressReporter;
+import nzbsplit.server.SplitServer;
 
 /**
  *
@@ -45,8 +52,6 @@ import nzbsplit.splitter.SizeSplitter;
  */
 public class Main {
 
-    private final static String NZB_EXTENSION = ".nzb";
-    
     /**
      * @param args the command line arguments
      */
@@ -59,36 +64,226 @@ public class Main {
                 return;
             }
             CommandLine.validate(cmd);
-            NZBParser parser = new NZBParser();
-            NZB nzb = parser.parse(Paths.get(cmd.getNZBFile()));
-            NZBSplitter splitter = cmd.isSplitSizeSet() ? new SizeSplitter(nzb, cmd.getMaxSplitSize())
-                                                        : new NumberSplitter(nzb, cmd.getSplitNumber());
-            List<NZB> splitNZBs = splitter.split();
-            for(NZB curNZB : splitNZBs) {
-                for(FileElement file : curNZB.getFiles()) {
-                    file.sortSegments();
-                }
+            if(cmd.isServeSet()) {
+                serve(cmd);
+                return;
             }
-            FileNamer namer = new FileNamer(new File(cmd.getNZBFile()).getName(), NZB_EXTENSION);
-            File destDir = new File(".");
             NZBWriter nzbWriter = new NZBWriter(cmd.isVerboseSet());
-            for(int i = 0; i < splitNZBs.size(); i++) {
-                nzbWriter.write(splitNZBs.get(i), namer.getPartFileName(destDir, i));
+            nzbWriter.setCompress(cmd.isGzipSet());
+            SplitRunner runner = new SplitRunner(cmd.getSplitStrategies(), nzbWriter);
+            if(cmd.isStdoutOutput()) {
+                runner.setTarOutput(new BufferedOutputStream(System.out, 64 * 1024));
+            } else {
+                runner.setDestDir(new File(cmd.getOutputDir()));
+            }
+            runner.setDeduplicate(cmd.isDedupSet());
+            runner.setIncremental(cmd.isIncrementalSet());
+            runner.setFilter(cmd.getFilter());
+            runner.setClassifier(cmd.getClassifier());
+            runner.setCheckMode(cmd.getCheckMode());
+            runner.setPriority(cmd.getPriority());
+            long memoryBudget = cmd.isMemoryBudgetSet() ? cmd.getMemoryBudget() : Runtime.getRuntime().maxMemory();
+            runner.setMemoryBudget(cmd.isBatch() || cmd.isWatchSet() ? memoryBudget / cmd.getThreads() : memoryBudget);
+            runner.setLog(cmd.isVerboseSet());
+            if(cmd.isProgressSet()) {
+                runner.setProgressReporter(new ProgressReporter(cmd.getProgressFormat(), System.err));
+            }
+            if(cmd.getHistoryFile() != null) {
+                runner.setHistory(MessageIdHistory.load(Paths.get(cmd.getHistoryFile())));
+            }
+            if(cmd.isCacheSet()) {
+                ParseCache cache = new ParseCache(cmd.getCacheSize());
+                if(cmd.getCacheDir() != null) {
+                    cache.setDiskTier(Paths.get(cmd.getCacheDir()), cmd.getCacheDirSize());
+                }
+                runner.setParseCache(cache);
+            }
+            if(cmd.isConvertSet()) {
+                if(!convert(cmd, runner)) {
+                    System.exit(1);
+                }
+                return;
+            }
+            if(cmd.isShardSet()) {
+                runner.runShard(Paths.get(cmd.getManifestFile()), cmd.getShardIndex(), cmd.getShardCount());
+                return;
+            }
+            if(cmd.getManifestFile() != null) {
+                runner.publishManifest(Paths.get(cmd.getNZBFile()), Paths.get(cmd.getManifestFile()));
+                return;
+            }
+            if(cmd.isPlanOnlySet()) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
+                runner.setPlanOnly(new PlanWriter(cmd.getPlanFormat()), out);
+            }
+            if(cmd.isWatchSet()) {
+                runner.setPlanFileName(true);
+                watch(cmd, new BatchProcessor(runner, cmd.getThreads()));
+                return;
+            }
+            if(cmd.isMergeSet()) {
+                ExecutorService executor = Executors.newFixedThreadPool(cmd.getThreads());
+                try {
+                    runner.setExecutor(executor);
+                    runner.runMerged(BatchProcessor.expand(cmd.getNZBFiles()), cmd.getName(), executor);
+                    runner.finish();
+                } finally {
+                    executor.shutdown();
+                }
+                return;
+            }
+            if(cmd.isBatch()) {
+                runner.setPlanFileName(true);
+                List<Path> nzbPaths = BatchProcessor.expand(cmd.getNZBFiles());
+                if(!cmd.isPlanOnlySet()) {
+                    BatchProcessor.checkNames(nzbPaths);
+                }
+                BatchProcessor processor = new BatchProcessor(runner, cmd.getThreads());
+                processor.setPipeline(cmd.isPipelineSet());
+                boolean isSplit = processor.processAll(nzbPaths);
+                runner.finish();
+                if(!isSplit) {
+                    System.exit(1);
+                }
+                return;
+            }
+            int threads = Math.min(cmd.getSplitStrategies().size(), cmd.getThreads());
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                runner.setExecutor(executor);
+                if(cmd.isStdinInput()) {
+                    runner.run(System.in, cmd.getName());
+                } else {
+                    runner.run(Paths.get(cmd.getNZBFile()));
+                }
+                runner.finish();
+            } finally {
+                executor.shutdown();
             }
         } catch (IOException | SplitException | ParseException ex) {
             System.err.println("ERROR: " + ex.getMessage());
         }
     }
     
+    /**
+     * Convert each NZB file given on the command line to the convert format
+     * given on the command line. If a file cannot be converted, its error is
+     * printed and the remaining files are converted.
+     * @param cmd CommandLine options
+     * @param runner SplitRunner used to convert each NZB file
+     * @return true if every NZB file was converted, false otherwise
+     * @throws IOException if unable to list the NZB files or convert stdin
+     * @throws NZBParseException if unable to parse the NZB read from stdin
+     */
+    private static boolean convert(CommandLine cmd, SplitRunner runner) throws IOException, NZBParseException {
+        if(cmd.isStdinInput()) {
+            runner.convert(System.in, cmd.getName(), cmd.getConvertFormat());
+            return true;
+        }
+        boolean isConverted = true;
+        for(Path nzbPath : BatchProcessor.expand(cmd.getNZBFiles())) {
+            try {
+                runner.convert(nzbPath, cmd.getConvertFormat());
+            } catch(IOException | NZBParseException ex) {
+                System.err.println(String.format("ERROR: %s: %s", nzbPath, ex.getMessage()));
+                isConverted = false;
+            }
+        }
+        return isConverted;
+    }
+    
+    /**
+     * Start the HTTP split server on the port given on the command line. The
+     * server runs until the program is terminated.
+     * @param cmd CommandLine options
+     * @throws IOException if unable to start the server
+     */
+    private static void serve(CommandLine cmd) throws IOException {
+        final SplitServer server = new SplitServer(cmd.getServePort(), cmd.getThreads(), SplitServer.DEFAULT_QUEUE_SIZE);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop(1);
+            }
+        });
+        server.start();
+        System.out.println(String.format("Listening on http://localhost:%d/", server.getPort()));
+    }
+    
+    /**
+     * Watch the inbox directory given on the command line until the program is
+     * terminated. On termination, NZB files that are being split are completed
+     * before exiting.
+     * @param cmd CommandLine options
+     * @param processor BatchProcessor used to split each NZB file
+     * @throws IOException if unable to watch the inbox directory
+     */
+    private static void watch(CommandLine cmd, BatchProcessor processor) throws IOException {
+        final WatchDaemon daemon = new WatchDaemon(Paths.get(cmd.getWatchDir()), processor, cmd.getThreads());
+        final Thread watchThread = Thread.currentThread();
+        daemon.setLog(cmd.isVerboseSet());
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                daemon.stop();
+                try {
+                    watchThread.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        daemon.run();
+    }
+    
     /**
      * Print the help message
      */
     public static void printHelp() {
-        System.out.println("Usage:    nzbsplit [-s <MAX_SIZE>|-n <NUM_SPLIT>] [-hv] <NZB_FILE>");
+        System.out.println("Usage:    nzbsplit [-s <MAX_SIZE>|-n <NUM_SPLIT>|-k <NUM_SPLIT>] [-himpvz] [-j <THREADS>] [--dedup] [--check <MODE>] [--spread-par2] [--history <FILE>] [--pipeline] [-o <DIR>] [--name <NAME>] [--include <RULE>] [--exclude <RULE>] [--priority <ORDER>] [--provider <NAME>:<RULES>] [--convert <FORMAT>] [--cache <SIZE> [--cache-dir <DIR>]] [--memory-budget <SIZE>] [--progress <FORMAT>] [--plan-format <FORMAT>] [--manifest <FILE> [--shard <INDEX>/<COUNT>]] [--serve <PORT>|-w <INBOX>|<NZB_FILE>...]");
         System.out.println();
         System.out.println("  -h, --help                       Displays this message then exits");
         System.out.println("  -n, --number <NUM_SPLIT>         Split <NZB_FILE> into at most <NUM_SPLIT> NZB parts");
         System.out.println("  -s, --max-size-split <MAX_SIZE>  Split <NZB_FILE> into at most <MAX_SIZE> NZB parts");
+        System.out.println("  -k, --hash <NUM_SPLIT>           Split <NZB_FILE> into <NUM_SPLIT> NZB parts that stay stable when files are added");
+        System.out.println("                                   -n, -s and -k accept comma separated lists e.g. -n 4,8,16");
+        System.out.println("  -j, --threads <THREADS>          Split at most <THREADS> NZB files at the same time");
+        System.out.println("  -o, --output-dir <DIR>           Write the NZB parts to <DIR> instead of the current directory");
+        System.out.println("                                   If <DIR> is -, the parts are written to stdout as a tar archive");
+        System.out.println("      --name <NAME>                Name the parts after <NAME> when <NZB_FILE> is - (stdin) or merging");
+        System.out.println("      --cache <SIZE>               Cache up to <SIZE> of parsed NZB files in memory e.g. 256MB");
+        System.out.println("      --cache-dir <DIR>            Also cache parsed NZB files in <DIR>");
+        System.out.println("      --cache-dir-size <SIZE>      Cache up to <SIZE> of parsed NZB files in <DIR>. Default is 1GB");
+        System.out.println("      --memory-budget <SIZE>       Split each NZB file in memory, with compact segments or streamed from");
+        System.out.println("                                   the file, whichever fits in <SIZE>. Default is the maximum heap size");
+        System.out.println("      --progress <FORMAT>          Print the progress of parsing and writing each NZB file to stderr");
+        System.out.println("                                   every second. Either console or json (one object per line)");
+        System.out.println("      --include <RULE>             Only split the files that match <RULE>. Can be given more than once");
+        System.out.println("      --exclude <RULE>             Drop the files that match <RULE> before splitting. Can be given more than once");
+        System.out.println("                                   <RULE> is a file name glob e.g. *.nfo, re:<REGEX>, size:<MIN>-<MAX>,");
+        System.out.println("                                   poster:<GLOB> or group:<GLOB>");
+        System.out.println("      --priority <ORDER>           Order the files of each part by <ORDER> or none to keep the split order");
+        System.out.println("                                   Default is index,first,volumes,other,recovery");
+        System.out.println("      --provider <NAME>:<RULES>    Split the files that match every comma separated rule on their own and name");
+        System.out.println("                                   their parts after <NAME>. <RULE> is age><AGE>, age<<AGE>, group:<GLOB> or *");
+        System.out.println("                                   e.g. --provider block:age>1000d. Can be given more than once");
+        System.out.println("      --convert <FORMAT>           Convert <NZB_FILE> to <FORMAT> instead of splitting it. Either nzb or nzbx");
+        System.out.println("  -i, --incremental                Only write the NZB parts that changed since <NZB_FILE> was last split");
+        System.out.println("  -m, --merge                      Merge every <NZB_FILE> into one NZB before splitting it");
+        System.out.println("      --check <MODE>               Print the completeness of <NZB_FILE> from the [x/y] and (a/b) subject counters");
+        System.out.println("                                   If incomplete: report (split anyway), refuse (do not split) or drop");
+        System.out.println("                                   (split without the incomplete sets)");
+        System.out.println("      --spread-par2                Spread the par2 recovery volumes across the -n parts in proportion to their data");
+        System.out.println("      --dedup                      Remove duplicate segments and report missing segments of each file");
+        System.out.println("      --history <FILE>             Skip the segments whose message ids are listed in <FILE>");
+        System.out.println("      --pipeline                   Split many NZB files using separate parse, split and write threads");
+        System.out.println("  -p, --plan-only                  Prints the split plan instead of writing the NZB parts");
+        System.out.println("      --plan-format <FORMAT>       Format of the split plan. Either tsv (default) or json");
+        System.out.println("      --manifest <FILE>            Publish the split plan of <NZB_FILE> as a shard manifest instead of writing the NZB parts");
+        System.out.println("      --shard <INDEX>/<COUNT>      Write the NZB parts of shard <INDEX> of <COUNT> from the --manifest <FILE>");
+        System.out.println("      --serve <PORT>               Run an HTTP split server on localhost:<PORT>");
+        System.out.println("  -z, --gzip                       Write gzip compressed NZB parts (.nzb.gz)");
+        System.out.println("  -w, --watch <INBOX>              Split each NZB file written to <INBOX> until terminated");
         System.out.println("  -v, --verbose                    Prints information about the split NZB files");
     }
     
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.Metadata;
+import nzbsplit.nzb.NZB;
+
+/**
+ * Merges many NZBs into a single NZB so they can be split as one e.g. the
+ * NZBs of a single job or the parts of an earlier split that need to be
+ * rebalanced. The metadata of the NZBs is combined without repeating a piece
+ * of metadata that has the same type and value. A file is a duplicate if a
+ * previous file has the same subject and first message id, in which case it
+ * is removed.
+ * @author Sam Malone
+ */
+public class NZBMerger {
+    
+    private int duplicateFiles = 0;
+    
+    /**
+     * Merge the given NZBs into a single NZB. The files of the NZBs should have
+     * their segments sorted so that the first message id of duplicate files
+     * is the same.
+     * @param nzbs NZBs to merge
+     * @return merged NZB
+     */
+    public NZB merge(List<NZB> nzbs) {
+        Set<String> metadataKeys = new HashSet<>();
+        List<Metadata> metadata = new ArrayList<>();
+        for(NZB nzb : nzbs) {
+            for(Metadata meta : nzb.getMetadata()) {
+                if(metadataKeys.add(meta.getType() + '\n' + meta.getValue())) {
+                    metadata.add(meta);
+                }
+            }
+        }
+        NZB merged = new NZB(metadata);
+        Set<String> fileKeys = new HashSet<>();
+        for(NZB nzb : nzbs) {
+            for(FileElement file : nzb.getFiles()) {
+                if(fileKeys.add(getFileKey(file))) {
+                    merged.addFile(file);
+                } else {
+                    duplicateFiles++;
+                }
+            }
+            merged.addSkippedSegments(nzb.getSkippedSegments(), nzb.getSkippedBytes());
+        }
+        return merged;
+    }
+    
+    /**
+     * Get the number of duplicate files removed by the merges so far
+     * @return number of duplicate files removed
+     */
+    public int getDuplicateFiles() {
+        return duplicateFiles;
+    }
+    
+    /**
+     * Get the key that identifies duplicate files: the subject and the first
+     * message id, or the subject and the file size if the segments were not
+     * retained
+     * @param file FileElement
+     * @return key of the file
+     */
+    private static String getFileKey(FileElement file) {
+        if(file.getSegments().isEmpty()) {
+            return file.getSubject() + '\n' + file.getFileSize();
+        }
+        return file.getSubject() + '\n' + file.getSegments().get(0).getMessageId();
+    }
+    
+}
@@ -26,17 +26,22 @@
 
 package nzbsplit;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.List;
+import nzbsplit.io.ParallelGZIPOutputStream;
 import nzbsplit.nzb.FileElement;
 import nzbsplit.nzb.Metadata;
 import nzbsplit.nzb.NZB;
 import nzbsplit.nzb.SegmentElement;
+import nzbsplit.progress.Progress;
+import nzbsplit.progress.ProgressOutputStream;
 
 /**
  *
@@ -49,12 +54,44 @@ public class NZBWriter {
     private final static String START_ROOT = "<nzb xmlns=\"http://www.newzbin.com/DTD/2003/nzb\">\n";
     private final static String END_ROOT = "</nzb>"; 
     
+    private final static int BUFFER_SIZE = 64 * 1024;
+    
     private boolean log = false;
+    private boolean compress = false;
     
     public NZBWriter(boolean log) {
         this.log = log;
     }
     
+    /**
+     * Set whether NZB files written to a File should be gzip compressed. The
+     * data is compressed in parallel blocks. Default is false.
+     * @param compress true to gzip compress, false otherwise
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+    
+    /**
+     * Check if NZB files written to a File are gzip compressed
+     * @return true if gzip compressed, false otherwise
+     */
+    public boolean isCompressSet() {
+        return compress;
+    }
+    
+    /**
+     * Print the name, number of files and total size of the given NZB part if
+     * logging is enabled
+     * @param nzb NZB part being written
+     * @param dest NZB destination path
+     */
+    public void log(NZB nzb, File dest) {
+        if(log) {
+            System.out.println(String.format("Writing \"%s\" containing %d files totalling %s", dest.getName(), nzb.getFiles().size(), FileSize.format(nzb.getTotalFileSize())));
+        }
+    }
+    
     /**
      * Write the given NZB object the the destination File given
      * @param nzb NZB to write
@@ -62,20 +99,47 @@ public class NZBWriter {
      * @throws IOException if unable to write to the file
      */
     public void write(NZB nzb, File dest) throws IOException {
-        if(log) {
-            System.out.println(String.format("Writing \"%s\" containing %d files totalling %s", dest.getName(), nzb.getFiles().size(), FileSize.format(nzb.getTotalFileSize())));
+        write(nzb, dest, null);
+    }
+    
+    /**
+     * Write the given NZB object the the destination File given, recording
+     * the bytes written to the file on the given progress once per buffer
+     * @param nzb NZB to write
+     * @param dest NZB destination path
+     * @param progress progress the bytes written are recorded on or null
+     * @throws IOException if unable to write to the file
+     */
+    public void write(NZB nzb, File dest, Progress progress) throws IOException {
+        log(nzb, dest);
+        OutputStream fileOut = new FileOutputStream(dest);
+        if(progress != null) {
+            fileOut = new ProgressOutputStream(fileOut, progress);
         }
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dest), "UTF-8"))) {
-            writer.write(XML_DECLARATION);
-            writer.write(XML_DOCTYPE);
-            writer.write(START_ROOT);
-            if(!nzb.getMetadata().isEmpty()) {
-                writeMetadata(writer, nzb.getMetadata());
-            }
-            writeFiles(writer, nzb.getFiles());
-            writer.write(END_ROOT);
-            writer.flush();
+        OutputStream file = new BufferedOutputStream(fileOut, BUFFER_SIZE);
+        try (OutputStream out = compress ? new ParallelGZIPOutputStream(file) : file) {
+            write(nzb, out);
+        }
+    }
+    
+    /**
+     * Write the given NZB object to the given stream. The stream is flushed
+     * but not closed.
+     * @param nzb NZB to write
+     * @param out NZB destination stream
+     * @throws IOException if unable to write to the stream
+     */
+    public void write(NZB nzb, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        writer.write(XML_DECLARATION);
+        writer.write(XML_DOCTYPE);
+        writer.write(START_ROOT);
+        if(!nzb.getMetadata().isEmpty()) {
+            writeMetadata(writer, nzb.getMetadata());
         }
+        writeFiles(writer, nzb.getFiles());
+        writer.write(END_ROOT);
+        writer.flush();
     }
     
     /**
@@ -86,7 +150,13 @@ public class NZBWriter {
      */
     private static void writeFiles(Writer writer, List<FileElement> files) throws IOException {
         for(FileElement file : files) {
-            writer.write(String.format("  <file poster=\"%s\" date=\"%d\" subject=\"%s\">\n", escape(file.getPoster()), file.getDate(), escape(file.getSubject())));
+            writer.write("  <file poster=\"");
+            writeEscaped(writer, file.getPoster());
+            writer.write("\" date=\"");
+            writer.write(Integer.toString(file.getDate()));
+            writer.write("\" subject=\"");
+            writeEscaped(writer, file.getSubject());
+            writer.write("\">\n");
             writeGroups(writer, file.getUsenetGroups());
             writeSegments(writer, file.getSegments());
             writer.write("  </file>\n");
@@ -102,7 +172,13 @@ public class NZBWriter {
     private static void writeSegments(Writer writer, List<SegmentElement> segments) throws IOException {
         writer.write("    <segments>\n");
         for(SegmentElement segment : segments) {
-            writer.write(String.format("      <segment number=\"%d\" bytes=\"%d\">%s</segment>\n", segment.getSegmentNumber(), segment.getBytes(), segment.getMessageId()));
+            writer.write("      <segment number=\"");
+            writer.write(Integer.toString(segment.getSegmentNumber()));
+            writer.write("\" bytes=\"");
+            writer.write(Long.toString(segment.getBytes()));
+            writer.write("\">");
+            writeEscaped(writer, segment.getMessageId());
+            writer.write("</segment>\n");
         }
         writer.write("    </segments>\n");
     }
@@ -116,7 +192,9 @@ public class NZBWriter {
     private static void writeGroups(Writer writer, List<String> groups) throws IOException {
         writer.write("    <groups>\n");
         for(String group : groups) {
-            writer.write(String.format("      <group>%s</group>\n", group));
+            writer.write("      <group>");
+            writeEscaped(writer, group);
+            writer.write("</group>\n");
         }
         writer.write("    </groups>\n");
     }
@@ -130,22 +208,49 @@ public class NZBWriter {
     private static void writeMetadata(Writer writer, List<Metadata> metadata) throws IOException {
         writer.write("  <head>\n");
         for(Metadata meta : metadata) {
-            writer.write(String.format("    <meta type=\"%s\">%s</meta>\n", meta.getType(), meta.getValue()));
+            writer.write("    <meta type=\"");
+            writeEscaped(writer, String.valueOf(meta.getType()));
+            writer.write("\">");
+            writeEscaped(writer, meta.getValue());
+            writer.write("</meta>\n");
         }
         writer.write("  </head>\n");
     }
     
     /**
-     * Escape the given string of basic XML entity references
+     * Write the given string with the basic XML entity references escaped
+     * @param writer NZB file writer
      * @param s String to escape
-     * @return escaped string
+     * @throws IOException if unable to write
      */
-    private static String escape(String s) {
-        return s.replaceAll("&", "&amp;")
-                .replaceAll(">", "&gt;")
-                .replaceAll("<", "&lt;")
-                .replaceAll("\"", "&quot;")
-                .replaceAll("'", "&apos;");
+    private static void writeEscaped(Writer writer, String s) throws IOException {
+        int start = 0;
+        for(int i = 0; i < s.length(); i++) {
+            String reference;
+            switch(s.charAt(i)) {
+                case '&':
+                    reference = "&amp;";
+                    break;
+                case '>':
+                    reference = "&gt;";
+                    break;
+                case '<':
+                    reference = "&lt;";
+                    break;
+                case '"':
+                    reference = "&quot;";
+                    break;
+                case '\'':
+                    reference = "&apos;";
+                    break;
+                default:
+                    continue;
+            }
+            writer.write(s, start, i - start);
+            writer.write(reference);
+            start = i + 1;
+        }
+        writer.write(s, start, s.length() - start);
     }
     
 }
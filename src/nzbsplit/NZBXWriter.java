@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.Metadata;
+import nzbsplit.nzb.NZB;
+import nzbsplit.nzb.SegmentElement;
+import nzbsplit.parser.NZBXParser;
+
+/**
+ * Writes an NZB in the compact binary NZB format (.nzbx) that is read by
+ * {@link NZBXParser}. Loading an NZBX file is much faster than parsing the
+ * XML, so an NZB that is split repeatedly with different settings only has to
+ * be parsed once. Sizes and segment numbers are stored as varints, repeated
+ * strings such as groups and posters are stored once in a string table and
+ * the message ids are stored together in a single blob.
+ * @author Sam Malone
+ */
+public class NZBXWriter {
+    
+    private final static int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Write the given NZB object to the destination File given
+     * @param nzb NZB to write
+     * @param dest NZBX destination path
+     * @throws IOException if unable to write to the file
+     */
+    public void write(NZB nzb, File dest) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dest), BUFFER_SIZE)) {
+            write(nzb, out);
+        }
+    }
+    
+    /**
+     * Write the given NZB object to the given stream. The stream is flushed
+     * but not closed.
+     * @param nzb NZB to write
+     * @param out NZBX destination stream
+     * @throws IOException if unable to write to the stream
+     */
+    public void write(NZB nzb, OutputStream out) throws IOException {
+        Map<String, Integer> strings = createStringTable(nzb);
+        out.write(NZBXParser.MAGIC);
+        out.write(NZBXParser.VERSION);
+        writeVarint(out, strings.size());
+        for(String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+        writeVarint(out, nzb.getMetadata().size());
+        for(Metadata meta : nzb.getMetadata()) {
+            writeString(out, strings, meta.getType());
+            writeString(out, strings, meta.getValue());
+        }
+        ByteArrayOutputStream block = new ByteArrayOutputStream(BUFFER_SIZE);
+        ByteArrayOutputStream blob = new ByteArrayOutputStream(BUFFER_SIZE);
+        writeVarint(out, nzb.getFiles().size());
+        for(FileElement file : nzb.getFiles()) {
+            writeString(out, strings, file.getPoster());
+            writeVarint(out, file.getDate() & 0xFFFFFFFFL);
+            writeString(out, strings, file.getSubject());
+            writeVarint(out, file.getUsenetGroups().size());
+            for(String group : file.getUsenetGroups()) {
+                writeString(out, strings, group);
+            }
+            List<SegmentElement> segments = file.getSegments();
+            writeVarint(out, segments.size());
+            writeVarint(out, file.getFileSize());
+            int blobOffset = blob.size();
+            block.reset();
+            boolean isSorted = writeSegments(block, blob, segments);
+            int duplicates = file.getDuplicateSegments();
+            out.write((isSorted ? NZBXParser.FLAG_SORTED : 0) | (duplicates > 0 ? NZBXParser.FLAG_DUPLICATES : 0));
+            if(duplicates > 0) {
+                writeVarint(out, duplicates);
+            }
+            writeVarint(out, blobOffset);
+            writeVarint(out, block.size());
+            block.writeTo(out);
+        }
+        writeVarint(out, blob.size());
+        blob.writeTo(out);
+        out.flush();
+    }
+    
+    /**
+     * Write the segments to the segment block and their message ids to the
+     * message-id blob. Segment numbers are stored as the difference from the
+     * previous segment number.
+     * @param block segment block
+     * @param blob message-id blob
+     * @param segments list of segments to write
+     * @return true if the segments are in segment number order
+     * @throws IOException if unable to write
+     */
+    private static boolean writeSegments(OutputStream block, OutputStream blob, List<SegmentElement> segments) throws IOException {
+        boolean isSorted = true;
+        int previous = 0;
+        for(SegmentElement segment : segments) {
+            int delta = segment.getSegmentNumber() - previous;
+            isSorted &= delta >= 0;
+            writeVarint(block, ((long) delta << 1) ^ ((long) delta >> 63));
+            writeVarint(block, segment.getBytes());
+            byte[] messageId = segment.getMessageId().getBytes(StandardCharsets.UTF_8);
+            writeVarint(block, messageId.length);
+            blob.write(messageId);
+            previous = segment.getSegmentNumber();
+        }
+        return isSorted;
+    }
+    
+    /**
+     * Create the table of distinct strings of the NZB, mapped to their index
+     * @param nzb NZB
+     * @return map of string to string table index
+     */
+    private static Map<String, Integer> createStringTable(NZB nzb) {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for(Metadata meta : nzb.getMetadata()) {
+            addString(strings, meta.getType());
+            addString(strings, meta.getValue());
+        }
+        for(FileElement file : nzb.getFiles()) {
+            addString(strings, file.getPoster());
+            addString(strings, file.getSubject());
+            for(String group : file.getUsenetGroups()) {
+                addString(strings, group);
+            }
+        }
+        return strings;
+    }
+    
+    /**
+     * Add the given string to the string table if it is not null or already added
+     * @param strings string table
+     * @param s string
+     */
+    private static void addString(Map<String, Integer> strings, String s) {
+        if(s != null && !strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+    }
+    
+    /**
+     * Write the string table index of the given string plus one, or 0 if null
+     * @param out NZBX destination stream
+     * @param strings string table
+     * @param s string or null
+     * @throws IOException if unable to write
+     */
+    private static void writeString(OutputStream out, Map<String, Integer> strings, String s) throws IOException {
+        writeVarint(out, s == null ? 0 : strings.get(s) + 1);
+    }
+    
+    /**
+     * Write the given value as an unsigned LEB128 varint
+     * @param out destination stream
+     * @param value value
+     * @throws IOException if unable to write
+     */
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stage of a pipeline that runs tasks on a fixed number of threads. Tasks
+ * waiting to run are held in a bounded queue. Once the queue is full, the
+ * thread submitting a task blocks until there is space, so a slow stage
+ * applies backpressure to the stage before it. The time spent running tasks
+ * and the time spent blocked submitting tasks is recorded so that the
+ * bottleneck of the pipeline can be found.
+ * @author Sam Malone
+ */
+public class PipelineStage {
+    
+    private final String name;
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong busyNanos;
+    private final AtomicLong blockedNanos;
+    private final AtomicLong tasks;
+    private final long startNanos;
+    private long endNanos = -1;
+    
+    /**
+     * Creates a new instance of PipelineStage
+     * @param name name of the stage e.g. "parse"
+     * @param threads number of threads that run tasks
+     * @param queueSize maximum number of tasks waiting to run
+     */
+    public PipelineStage(String name, int threads, int queueSize) {
+        this.name = name;
+        this.threads = threads;
+        this.busyNanos = new AtomicLong();
+        this.blockedNanos = new AtomicLong();
+        this.tasks = new AtomicLong();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    if(executor.isShutdown()) {
+                        throw new RejectedExecutionException("The " + PipelineStage.this.name + " stage has been shut down");
+                    }
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(ex);
+                    }
+                }
+            });
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Submit a task to the stage, blocking whilst the queue of the stage is full
+     * @param task task to run
+     */
+    public void submit(final Runnable task) {
+        long start = System.nanoTime();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long taskStart = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - taskStart);
+                    tasks.incrementAndGet();
+                }
+            }
+        });
+        blockedNanos.addAndGet(System.nanoTime() - start);
+    }
+    
+    /**
+     * Stop accepting tasks and wait for the queued tasks to complete
+     * @throws InterruptedException if interrupted whilst waiting
+     */
+    public void shutdownAndAwait() throws InterruptedException {
+        executor.shutdown();
+        while(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            // keep waiting for the queued tasks
+        }
+        endNanos = System.nanoTime();
+    }
+    
+    /**
+     * Stop the stage without waiting for queued tasks
+     */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Get the fraction of the available thread time of the stage that was spent
+     * running tasks. A stage close to 1 is the bottleneck of the pipeline.
+     * @return utilization between 0 and 1
+     */
+    public double getUtilization() {
+        long elapsed = (endNanos < 0 ? System.nanoTime() : endNanos) - startNanos;
+        return elapsed <= 0 ? 0 : (double) busyNanos.get() / ((double) elapsed * threads);
+    }
+    
+    /**
+     * Get a summary of the utilization of the stage
+     * @return summary e.g. "split: 4 threads, 1000 tasks, 93% busy, 0.00s waiting to enqueue"
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d threads, %d tasks, %.0f%% busy, %.2fs waiting to enqueue",
+            name, threads, tasks.get(), getUtilization() * 100, blockedNanos.get() / 1e9);
+    }
+    
+}
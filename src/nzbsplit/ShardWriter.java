@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import nzbsplit.api.SplitResult;
+import nzbsplit.io.ParallelGZIPOutputStream;
+import nzbsplit.nzb.NZB;
+import nzbsplit.plan.SplitPlan;
+import nzbsplit.progress.Progress;
+import nzbsplit.progress.ProgressOutputStream;
+import nzbsplit.shard.ShardManifest;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * A ShardWriter writes NZB parts by copying the byte ranges of their files
+ * from the NZB file, as listed by a {@link ShardManifest}, so the NZB is
+ * never parsed into memory. It writes the parts of a shard of a published
+ * manifest and the parts of NZB files split in stream mode.
+ * @author Sam Malone
+ */
+public class ShardWriter {
+    
+    private final static int BUFFER_SIZE = 64 * 1024;
+    
+    private final NZBWriter nzbWriter;
+    private final File destDir;
+    
+    /**
+     * Creates a new instance of ShardWriter
+     * @param nzbWriter NZBWriter the parts are logged by and whose compression
+     * setting they are written with
+     * @param destDir directory the NZB parts are written to
+     */
+    public ShardWriter(NZBWriter nzbWriter, File destDir) {
+        this.nzbWriter = nzbWriter;
+        this.destDir = destDir;
+    }
+    
+    /**
+     * Write the parts of the given shard of the manifest. Part p belongs to
+     * shard p % shardCount.
+     * @param manifest shard manifest
+     * @param shardIndex index of this shard, from 0 to shardCount - 1
+     * @param shardCount number of shards
+     * @return number of NZB parts written
+     * @throws IOException if unable to read the source NZB file or write the parts
+     */
+    public int writeShard(ShardManifest manifest, int shardIndex, int shardCount) throws IOException {
+        FilePartSink sink = new FilePartSink(nzbWriter, destDir, manifest.getSource().getFileName().toString());
+        int written = 0;
+        for(int i = shardIndex; i < manifest.getPartCount(); i += shardCount) {
+            writePart(manifest, i, sink.getPartFile(null, i), null);
+            written++;
+        }
+        return written;
+    }
+    
+    /**
+     * Write the parts of each successful strategy of an NZB file that was
+     * parsed without its segments. The parts hold the same files in the same
+     * order as in the other modes, but each file element is copied as it is,
+     * so its segments keep the order and formatting of the NZB file.
+     * @param nzbPath path to the uncompressed NZB file
+     * @param fileName file name the parts are named after
+     * @param nzb NZB parsed from the file
+     * @param result result of splitting the NZB
+     * @param progress progress the written parts are recorded on or null
+     * @throws IOException if unable to read the NZB file or write the parts
+     */
+    public void writeParts(Path nzbPath, String fileName, NZB nzb, SplitResult result, Progress progress) throws IOException {
+        FilePartSink sink = new FilePartSink(nzbWriter, destDir, fileName);
+        List<SplitStrategy> strategies = result.getStrategies();
+        for(int i = 0; i < strategies.size(); i++) {
+            if(result.isFailed(i)) {
+                continue;
+            }
+            List<NZB> parts = result.getParts(i);
+            ShardManifest manifest = ShardManifest.create(nzbPath, new SplitPlan(nzb, parts));
+            String planName = strategies.size() > 1 ? strategies.get(i).getName() : null;
+            for(int j = 0; j < manifest.getPartCount(); j++) {
+                File dest = sink.getPartFile(planName, j);
+                nzbWriter.log(parts.get(j), dest);
+                writePart(manifest, j, dest, progress);
+            }
+        }
+    }
+    
+    /**
+     * Copy the given part of a shard manifest to the given file, compressing
+     * it if the parts are compressed
+     * @param manifest shard manifest
+     * @param partNo part number
+     * @param dest part file
+     * @param progress progress the part and the bytes written to it are
+     * recorded on or null
+     * @throws IOException if unable to read the NZB file or write the part
+     */
+    private void writePart(ShardManifest manifest, int partNo, File dest, Progress progress) throws IOException {
+        OutputStream fileOut = new FileOutputStream(dest);
+        if(progress != null) {
+            progress.startWriting();
+            fileOut = new ProgressOutputStream(fileOut, progress);
+        }
+        OutputStream file = new BufferedOutputStream(fileOut, BUFFER_SIZE);
+        try (OutputStream out = nzbWriter.isCompressSet() ? new ParallelGZIPOutputStream(file) : file) {
+            manifest.writePart(partNo, out);
+        }
+        if(progress != null) {
+            progress.addPart();
+        }
+    }
+    
+}
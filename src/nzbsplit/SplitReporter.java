@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import nzbsplit.api.SplitResult;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+import nzbsplit.plan.PlanWriter;
+import nzbsplit.plan.SplitPlan;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * A SplitReporter prints what a {@link SplitRunner} did with each NZB and
+ * writes the split plans if only the plans are written. Messages are printed
+ * to stdout, or to stderr if the parts or plans are written to stdout.
+ * Warnings and errors are always printed to stderr.
+ * @author Sam Malone
+ */
+public class SplitReporter {
+    
+    private final List<SplitStrategy> strategies;
+    private PlanWriter planWriter = null;
+    private Writer planOut = null;
+    private boolean isPlanFileNameSet = false;
+    private boolean isTarOutput = false;
+    private boolean isDeduplicateSet = false;
+    
+    /**
+     * Creates a new instance of SplitReporter
+     * @param strategies split strategies applied to each NZB
+     */
+    public SplitReporter(List<SplitStrategy> strategies) {
+        this.strategies = strategies;
+    }
+    
+    /**
+     * Write the split plans to the given writer. Writes to the writer are
+     * synchronized on the writer.
+     * @param planWriter PlanWriter used to format the plans
+     * @param planOut destination of the plans
+     */
+    public void setPlanOnly(PlanWriter planWriter, Writer planOut) {
+        this.planWriter = planWriter;
+        this.planOut = planOut;
+    }
+    
+    /**
+     * Check if only the split plans are written
+     * @return true if only the split plans are written, false if the NZB parts are written
+     */
+    public boolean isPlanOnly() {
+        return planWriter != null;
+    }
+    
+    /**
+     * Set whether the file name of the NZB is included in the name of each
+     * split plan written. Default is false.
+     * @param isPlanFileNameSet true to include the file name, false otherwise
+     */
+    public void setPlanFileName(boolean isPlanFileNameSet) {
+        this.isPlanFileNameSet = isPlanFileNameSet;
+    }
+    
+    /**
+     * Set whether the parts are written to stdout as a tar archive
+     * @param isTarOutput true if the parts are written to stdout, false otherwise
+     */
+    public void setTarOutput(boolean isTarOutput) {
+        this.isTarOutput = isTarOutput;
+    }
+    
+    /**
+     * Check if the parts or plans are written to a stream rather than to files
+     * @return true if the split plans or a tar archive are written to a stream
+     */
+    public boolean isStreamOutput() {
+        return isPlanOnly() || isTarOutput;
+    }
+    
+    /**
+     * Set whether the duplicate segments removed and the missing segments of
+     * each file are printed
+     * @param isDeduplicateSet true to print the segments, false otherwise
+     */
+    public void setDeduplicate(boolean isDeduplicateSet) {
+        this.isDeduplicateSet = isDeduplicateSet;
+    }
+    
+    /**
+     * Print the given message to stdout, or to stderr if stdout holds the
+     * parts or plans
+     * @param message message
+     */
+    public void info(String message) {
+        if(isStreamOutput()) {
+            System.err.println(message);
+        } else {
+            System.out.println(message);
+        }
+    }
+    
+    /**
+     * Print the number of files dropped by the filter, if any
+     * @param fileName file name of the NZB
+     * @param nzb filtered NZB
+     */
+    public void reportFiltered(String fileName, NZB nzb) {
+        if(nzb.getFilteredFiles() > 0) {
+            System.err.println(String.format("%s: filtered out %d files totalling %s", fileName,
+                nzb.getFilteredFiles(), FileSize.format(nzb.getFilteredBytes())));
+        }
+    }
+    
+    /**
+     * Print the errors of the failed strategies and write the split plans of
+     * the successful strategies if only the split plans are written
+     * @param fileName file name of the NZB
+     * @param result SplitResult
+     * @return number of NZB parts written (or planned)
+     * @throws IOException if unable to write a split plan
+     */
+    public int report(String fileName, SplitResult result) throws IOException {
+        return report(fileName, result, result.getSource(), false);
+    }
+    
+    /**
+     * Print the errors of the failed strategies and write the split plans of
+     * the successful strategies if only the split plans are written
+     * @param fileName file name of the NZB or of the provider class
+     * @param result SplitResult
+     * @param planSource NZB that the file indexes of the split plans refer to
+     * @param isClass true if the result is that of a single provider class
+     * @return number of NZB parts written (or planned)
+     * @throws IOException if unable to write a split plan
+     */
+    public int report(String fileName, SplitResult result, NZB planSource, boolean isClass) throws IOException {
+        if(isDeduplicateSet) {
+            reportSegments(fileName, result.getSource());
+        }
+        if(result.getSource().getSkippedSegments() > 0) {
+            System.err.println(String.format("%s: skipped %d downloaded segments totalling %s", fileName,
+                result.getSource().getSkippedSegments(), FileSize.format(result.getSource().getSkippedBytes())));
+        }
+        reportFiltered(fileName, result.getSource());
+        for(int i = 0; i < strategies.size(); i++) {
+            if(result.isFailed(i)) {
+                System.err.println(String.format("ERROR: %s: %s", getPlanName(fileName, strategies.get(i)), result.getError(i).getMessage()));
+            } else if(isPlanOnly()) {
+                synchronized(planOut) {
+                    planWriter.write(new SplitPlan(planSource, result.getParts(i)), getPlanOutputName(fileName, strategies.get(i), isClass), planOut);
+                }
+            }
+        }
+        return result.getPartCount();
+    }
+    
+    /**
+     * Print the duplicate segments removed and the missing segments of each
+     * file of the NZB
+     * @param fileName file name of the NZB
+     * @param nzb parsed NZB
+     */
+    private static void reportSegments(String fileName, NZB nzb) {
+        for(FileElement file : nzb.getFiles()) {
+            int[] missing = file.getMissingSegments();
+            if(file.getDuplicateSegments() > 0 || missing.length > 0) {
+                String duplicates = file.getDuplicateSegments() > 0 ? String.format("%d duplicate segments removed, ", file.getDuplicateSegments()) : "";
+                System.err.println(String.format("WARNING: %s: \"%s\": %s%d segments missing%s",
+                    fileName, file.getSubject(), duplicates, missing.length, formatRanges(missing)));
+            }
+        }
+    }
+    
+    /**
+     * Format the given sorted numbers as ranges e.g. " (3-5, 9)"
+     * @param numbers sorted numbers
+     * @return formatted ranges in brackets or an empty string if no numbers
+     */
+    private static String formatRanges(int[] numbers) {
+        if(numbers.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(" (");
+        for(int i = 0; i < numbers.length; i++) {
+            int start = numbers[i];
+            while(i + 1 < numbers.length && numbers[i + 1] == numbers[i] + 1) {
+                i++;
+            }
+            sb.append(start);
+            if(numbers[i] != start) {
+                sb.append('-').append(numbers[i]);
+            }
+            sb.append(i + 1 < numbers.length ? ", " : ")");
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Get the name used to report the result of the given strategy
+     * @param fileName file name of the NZB
+     * @param strategy split strategy
+     * @return name of the strategy, prefixed with the file name if set
+     */
+    private String getPlanName(String fileName, SplitStrategy strategy) {
+        return isPlanFileNameSet ? String.format("%s %s", fileName, strategy.getName()) : strategy.getName();
+    }
+    
+    /**
+     * Get the name a split plan is written under. The plans of provider classes
+     * are always named after their class file name so they can be told apart.
+     * @param fileName file name of the NZB or of the provider class
+     * @param strategy split strategy
+     * @param isClass true if the plan is that of a single provider class
+     * @return name of the plan or null if no name is needed
+     * @see #setPlanFileName(boolean) 
+     */
+    private String getPlanOutputName(String fileName, SplitStrategy strategy, boolean isClass) {
+        if(isClass) {
+            return strategies.size() > 1 ? String.format("%s %s", fileName, strategy.getName()) : fileName;
+        }
+        if(strategies.size() > 1) {
+            return getPlanName(fileName, strategy);
+        }
+        return isPlanFileNameSet ? fileName : null;
+    }
+    
+}
@@ -0,0 +1,814 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import nzbsplit.api.NZBSplit;
+import nzbsplit.api.PartSink;
+import nzbsplit.api.SplitResult;
+import nzbsplit.cache.ParseCache;
+import nzbsplit.exception.NZBParseException;
+import nzbsplit.exception.SplitException;
+import nzbsplit.filter.FileClassifier;
+import nzbsplit.filter.FileFilter;
+import nzbsplit.history.MessageIdHistory;
+import nzbsplit.memory.MemoryEstimate;
+import nzbsplit.io.TarOutputStream;
+import nzbsplit.nzb.NZB;
+import nzbsplit.parser.NZBXParser;
+import nzbsplit.plan.PlanWriter;
+import nzbsplit.plan.SplitPlan;
+import nzbsplit.progress.Progress;
+import nzbsplit.progress.ProgressReporter;
+import nzbsplit.shard.ShardManifest;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * A SplitRunner splits NZB files using {@link NZBSplit} and writes the parts
+ * (or the split plans) of each strategy to the file system. A SplitRunner
+ * holds no state about the NZB being split so a single instance can be used
+ * to split many NZB files concurrently. What was split is printed by a
+ * {@link SplitReporter}, and the parts of NZB files split in stream mode or
+ * sharded are written by a {@link ShardWriter}.
+ * @author Sam Malone
+ */
+public class SplitRunner {
+    
+    private final static String NZB_EXTENSION = ".nzb";
+    
+    public final static String CONVERT_NZB = "nzb";
+    public final static String CONVERT_NZBX = "nzbx";
+    
+    private final NZBSplit nzbSplit;
+    private final NZBWriter nzbWriter;
+    private final SplitReporter reporter;
+    private File destDir = new File(".");
+    private TarOutputStream tar = null;
+    private boolean isDeduplicateSet = false;
+    private boolean isIncrementalSet = false;
+    private FileClassifier classifier = null;
+    private CompletenessCheck completenessCheck = null;
+    private boolean isHistorySet = false;
+    private long memoryBudget = 0;
+    private boolean log = false;
+    private ProgressReporter progressReporter = null;
+    
+    /**
+     * Creates a new instance of SplitRunner
+     * @param strategies split strategies to apply to each NZB
+     * @param nzbWriter NZBWriter used to write the NZB parts
+     */
+    public SplitRunner(List<SplitStrategy> strategies, NZBWriter nzbWriter) {
+        this.nzbSplit = new NZBSplit(strategies);
+        this.nzbWriter = nzbWriter;
+        this.reporter = new SplitReporter(nzbSplit.getStrategies());
+    }
+    
+    /**
+     * Set the directory the NZB parts are written to. Default is the current
+     * working directory
+     * @param destDir destination directory
+     */
+    public void setDestDir(File destDir) {
+        this.destDir = destDir;
+    }
+    
+    /**
+     * Write the NZB parts as files of a tar archive to the given stream instead
+     * of to the destination directory. {@link #finish()} must be called once
+     * every NZB has been split to end the archive.
+     * @param out stream to write the tar archive to
+     */
+    public void setTarOutput(OutputStream out) {
+        this.tar = new TarOutputStream(out);
+        reporter.setTarOutput(true);
+    }
+    
+    /**
+     * Set the reporter the progress of parsing each NZB and writing its parts
+     * is reported to
+     * @param progressReporter ProgressReporter or null to not report progress
+     */
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+    
+    /**
+     * Print the given message to stdout, or to stderr if the parts or plans
+     * are written to stdout
+     * @param message message
+     */
+    public void info(String message) {
+        reporter.info(message);
+    }
+    
+    /**
+     * End the tar archive, if set, once every NZB has been split
+     * @throws IOException if unable to write the end of the archive
+     */
+    public void finish() throws IOException {
+        if(tar != null) {
+            tar.finish();
+        }
+    }
+    
+    /**
+     * Write the split plans to the given writer instead of writing the NZB parts.
+     * Writes to the writer are synchronized on the writer.
+     * Segments are not retained unless completeness is checked.
+     * @param planWriter PlanWriter used to format the plans
+     * @param planOut destination of the plans
+     */
+    public void setPlanOnly(PlanWriter planWriter, Writer planOut) {
+        reporter.setPlanOnly(planWriter, planOut);
+        nzbSplit.setRetainSegments(completenessCheck != null);
+    }
+    
+    /**
+     * Set whether the file name of the NZB is included in the name of each
+     * split plan written. This should be set when splitting many NZB files
+     * so that the plans can be told apart. Default is false.
+     * @param isPlanFileNameSet true to include the file name, false otherwise
+     */
+    public void setPlanFileName(boolean isPlanFileNameSet) {
+        reporter.setPlanFileName(isPlanFileNameSet);
+    }
+    
+    /**
+     * Check if only the split plans are written
+     * @return true if only the split plans are written, false if the NZB parts are written
+     */
+    public boolean isPlanOnly() {
+        return reporter.isPlanOnly();
+    }
+    
+    /**
+     * Set whether NZB files are split incrementally. The plan of each NZB file
+     * is stored alongside its parts, so when the NZB file is updated and split
+     * again, the files split before stay in their parts and only the parts
+     * whose files have changed are written. Default is false.
+     * @param isIncrementalSet true to split incrementally, false otherwise
+     */
+    public void setIncremental(boolean isIncrementalSet) {
+        this.isIncrementalSet = isIncrementalSet;
+    }
+    
+    /**
+     * Set whether duplicate segments should be removed whilst parsing. If set,
+     * the duplicate segments removed and the missing segments of each file are
+     * printed.
+     * @param isDeduplicateSet true to remove duplicate segments, false otherwise
+     */
+    public void setDeduplicate(boolean isDeduplicateSet) {
+        this.isDeduplicateSet = isDeduplicateSet;
+        nzbSplit.setDeduplicate(isDeduplicateSet);
+        reporter.setDeduplicate(isDeduplicateSet);
+    }
+    
+    /**
+     * Set the history of message ids that have already been downloaded, so
+     * only the remaining segments of each NZB are split. The segments skipped
+     * are printed.
+     * @param history MessageIdHistory or null to keep every segment
+     */
+    public void setHistory(MessageIdHistory history) {
+        nzbSplit.setHistory(history);
+        isHistorySet = history != null;
+    }
+    
+    /**
+     * Set the memory available to split an NZB file. Before an NZB file is
+     * parsed, the memory it needs is estimated from its size and a sample of
+     * its start and it is split in memory, with compact segments or in stream
+     * mode, whichever is the first to fit (see {@link MemoryEstimate}). The
+     * mode is printed unless it is memory. NZBs read from a stream are always
+     * split in memory.
+     * @param memoryBudget memory budget in bytes or 0 to always split in memory
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    
+    /**
+     * Set whether to print the mode and memory estimate of every NZB file,
+     * including those split in memory
+     * @param log true to print the mode of every NZB file, false otherwise
+     */
+    public void setLog(boolean log) {
+        this.log = log;
+    }
+    
+    /**
+     * Set the priority the files of each part are ordered by
+     * @param priority FilePriority or null to keep the order of the splitter
+     */
+    public void setPriority(FilePriority priority) {
+        nzbSplit.setPriority(priority);
+    }
+    
+    /**
+     * Set how the completeness of each NZB is checked before it is split. The
+     * completeness is printed, and if an NZB is incomplete it is either split
+     * anyway ({@link CompletenessCheck#CHECK_REPORT}), not split
+     * ({@link CompletenessCheck#CHECK_REFUSE}) or split without its incomplete
+     * sets ({@link CompletenessCheck#CHECK_DROP}).
+     * @param checkMode check mode or null to not check completeness
+     */
+    public void setCheckMode(String checkMode) {
+        this.completenessCheck = checkMode == null ? null : new CompletenessCheck(checkMode);
+        if(checkMode != null) {
+            nzbSplit.setRetainSegments(true);
+        }
+    }
+    
+    /**
+     * Set the classifier that partitions the files of each NZB by provider
+     * before it is split. The files of each class are split on their own.
+     * @param classifier FileClassifier or null to split every file together
+     */
+    public void setClassifier(FileClassifier classifier) {
+        this.classifier = classifier == null || classifier.isEmpty() ? null : classifier;
+    }
+    
+    /**
+     * Set the filter that drops unwanted files from each NZB before it is
+     * split. The files dropped are printed.
+     * @param filter FileFilter or null to keep every file
+     */
+    public void setFilter(FileFilter filter) {
+        nzbSplit.setFilter(filter);
+    }
+    
+    /**
+     * Set the cache used to look up NZBs by the hash of their content before
+     * parsing them
+     * @param cache ParseCache or null for no cache
+     */
+    public void setParseCache(ParseCache cache) {
+        nzbSplit.setParseCache(cache);
+    }
+    
+    /**
+     * Get the parse cache
+     * @return ParseCache or null if not set
+     */
+    public ParseCache getParseCache() {
+        return nzbSplit.getParseCache();
+    }
+    
+    /**
+     * Set the executor used to run the split strategies of an NZB concurrently.
+     * If no executor is set, the strategies are run one after another in the
+     * calling thread.
+     * @param executor ExecutorService or null
+     */
+    public void setExecutor(ExecutorService executor) {
+        nzbSplit.setExecutor(executor);
+    }
+    
+    /**
+     * Parse and split the NZB file at the given path using each split strategy.
+     * If one of many strategies fails, its error is printed.
+     * @param nzbPath path to the NZB file
+     * @return number of NZB parts written (or planned)
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if the only strategy was unable to write its parts
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    public int run(Path nzbPath) throws NZBParseException, IOException, SplitException {
+        final String fileName = nzbPath.getFileName().toString();
+        final Progress progress = startProgress(fileName, nzbPath);
+        boolean isDone = false;
+        try {
+            int partCount;
+            String mode;
+            if(isIncrementalSet) {
+                partCount = runIncremental(nzbPath, fileName, progress);
+            } else if(MemoryEstimate.MODE_STREAM.equals(mode = chooseMode(nzbPath, null))) {
+                partCount = runStreaming(nzbPath, fileName, progress);
+            } else {
+                partCount = split(fileName, check(fileName, parse(nzbPath, mode)));
+            }
+            isDone = true;
+            return partCount;
+        } finally {
+            finishProgress(progress, isDone);
+        }
+    }
+    
+    /**
+     * Parse and split the NZB read from the given stream using each split
+     * strategy. If one of many strategies fails, its error is printed.
+     * @param in NZB input stream. The stream is not closed.
+     * @param fileName file name the parts are named after e.g. input.nzb
+     * @return number of NZB parts written (or planned)
+     * @throws NZBParseException if unable to parse the NZB
+     * @throws IOException if the only strategy was unable to write its parts
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    public int run(InputStream in, String fileName) throws NZBParseException, IOException, SplitException {
+        final Progress progress = startProgress(fileName, null);
+        boolean isDone = false;
+        try {
+            int partCount;
+            if(classifier != null || completenessCheck != null) {
+                partCount = split(fileName, check(fileName, nzbSplit.parse(in)));
+            } else {
+                partCount = reporter.report(fileName, nzbSplit.split(in, isPlanOnly() ? null : createSink(fileName)));
+            }
+            isDone = true;
+            return partCount;
+        } finally {
+            finishProgress(progress, isDone);
+        }
+    }
+    
+    /**
+     * Split the parsed NZB using each split strategy and write the parts (or
+     * the split plans). If a provider classifier is set, the files of each
+     * class are split on their own and their parts are named after the class
+     * e.g. input_block_0.nzb. A class that fails to split is printed and the
+     * remaining classes are split.
+     * @param fileName file name of the NZB
+     * @param nzb parsed NZB
+     * @return number of NZB parts written (or planned)
+     * @throws IOException if unable to write the parts
+     * @throws SplitException if every strategy (of every class) failed to
+     * split the NZB
+     */
+    private int split(String fileName, NZB nzb) throws IOException, SplitException {
+        if(classifier == null) {
+            return reporter.report(fileName, nzbSplit.split(nzb, isPlanOnly() ? null : createSink(fileName)));
+        }
+        final Map<String, NZB> partitions = classifier.partition(nzb);
+        final StringBuilder summary = new StringBuilder(fileName).append(':');
+        for(Map.Entry<String, NZB> partition : partitions.entrySet()) {
+            summary.append(String.format(" %s %d files totalling %s,", partition.getKey(),
+                partition.getValue().getFiles().size(), FileSize.format(partition.getValue().getTotalFileSize())));
+        }
+        summary.setLength(summary.length() - 1);
+        info(summary.toString());
+        int partCount = 0;
+        boolean isFailed = false;
+        for(Map.Entry<String, NZB> partition : partitions.entrySet()) {
+            String classFileName = FilePartSink.getBaseName(fileName) + "_" + partition.getKey() + NZB_EXTENSION;
+            try {
+                partCount += reporter.report(classFileName, nzbSplit.split(partition.getValue(), isPlanOnly() ? null : createSink(classFileName)), nzb, true);
+            } catch(SplitException ex) {
+                System.err.println(String.format("ERROR: %s: %s", classFileName, ex.getMessage()));
+                isFailed = true;
+            }
+        }
+        if(partCount == 0 && isFailed) {
+            throw new SplitException(String.format("None of the provider classes of %s could be split", fileName));
+        }
+        return partCount;
+    }
+    
+    /**
+     * Parse the NZB file and split it with an {@link IncrementalRunner}, so
+     * only the parts that have changed since the previous split are written
+     * @param nzbPath path to the NZB file
+     * @param fileName file name of the NZB file
+     * @param progress progress the written parts are recorded on or null
+     * @return number of NZB parts
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to write the parts or the plan
+     * @throws SplitException if a strategy failed to split the NZB
+     */
+    private int runIncremental(Path nzbPath, String fileName, Progress progress) throws NZBParseException, IOException, SplitException {
+        final NZB nzb = nzbSplit.filter(check(fileName, parse(nzbPath, chooseMode(nzbPath, "incrementally"))));
+        return new IncrementalRunner(nzbSplit, nzbWriter, destDir, reporter).split(fileName, nzb, progress);
+    }
+    
+    /**
+     * Parse the NZB files at the given paths on the given executor, merge them
+     * into a single NZB and split it using each split strategy, so the parts
+     * are balanced across every NZB file. If one of many strategies fails, its
+     * error is printed.
+     * @param nzbPaths paths to the NZB files
+     * @param fileName file name the parts are named after e.g. input.nzb
+     * @param executor executor used to parse the NZB files concurrently
+     * @return number of NZB parts written (or planned)
+     * @throws NZBParseException if unable to parse one of the NZB files
+     * @throws IOException if unable to open one of the NZB files or the only
+     * strategy was unable to write its parts
+     * @throws SplitException if every strategy failed to split the merged NZB
+     */
+    public int runMerged(List<Path> nzbPaths, String fileName, ExecutorService executor) throws NZBParseException, IOException, SplitException {
+        final List<Future<NZB>> futures = new ArrayList<>(nzbPaths.size());
+        for(final Path nzbPath : nzbPaths) {
+            futures.add(executor.submit(new Callable<NZB>() {
+                @Override
+                public NZB call() throws NZBParseException, IOException {
+                    return parse(nzbPath);
+                }
+            }));
+        }
+        final List<NZB> nzbs = new ArrayList<>(nzbPaths.size());
+        for(int i = 0; i < futures.size(); i++) {
+            try {
+                nzbs.add(futures.get(i).get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SplitException("Interrupted whilst waiting for the NZB files to be parsed");
+            } catch (ExecutionException ex) {
+                for(Future<NZB> future : futures) {
+                    future.cancel(true);
+                }
+                if(ex.getCause() instanceof IOException) {
+                    throw new IOException(String.format("%s: %s", nzbPaths.get(i), ex.getCause().getMessage()), ex.getCause());
+                }
+                throw new NZBParseException(String.format("%s: %s", nzbPaths.get(i), ex.getCause().getMessage()));
+            }
+        }
+        NZBMerger merger = new NZBMerger();
+        NZB merged = merger.merge(nzbs);
+        info(String.format("Merged %d NZB files into %d files, %d duplicate files removed",
+            nzbs.size(), merged.getFiles().size(), merger.getDuplicateFiles()));
+        final Progress progress = startProgress(fileName, null);
+        boolean isDone = false;
+        try {
+            int partCount = split(fileName, check(fileName, merged));
+            isDone = true;
+            return partCount;
+        } finally {
+            finishProgress(progress, isDone);
+        }
+    }
+    
+    /**
+     * Parse the NZB file at the given path, split it using the only split
+     * strategy and save the split plan as a shard manifest so each node of a
+     * cluster can write its own parts with
+     * {@link #runShard(java.nio.file.Path, int, int)}. No parts are written.
+     * @param nzbPath path to the uncompressed NZB file
+     * @param manifestPath path to save the shard manifest to
+     * @return number of NZB parts in the manifest
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to read the NZB file or save the manifest
+     * @throws SplitException if the strategy failed to split the NZB
+     */
+    public int publishManifest(Path nzbPath, Path manifestPath) throws NZBParseException, IOException, SplitException {
+        NZB nzb = nzbSplit.parse(nzbPath);
+        SplitResult result = nzbSplit.split(nzb, null);
+        ShardManifest manifest = ShardManifest.create(nzbPath, new SplitPlan(nzb, result.getParts(0)));
+        manifest.save(manifestPath);
+        reporter.reportFiltered(nzbPath.getFileName().toString(), result.getSource());
+        System.out.println(String.format("%s: published a manifest of %d parts to %s", nzbPath.getFileName(), manifest.getPartCount(), manifestPath));
+        return manifest.getPartCount();
+    }
+    
+    /**
+     * Write the parts of the given shard from the shard manifest at the given
+     * path. Part p belongs to shard p % shardCount. The parts are copied from
+     * the source NZB file by byte range, so the NZB is not parsed.
+     * @param manifestPath path to the shard manifest
+     * @param shardIndex index of this shard, from 0 to shardCount - 1
+     * @param shardCount number of shards
+     * @return number of NZB parts written
+     * @throws IOException if unable to load the manifest, read the source NZB
+     * file or write the parts
+     */
+    public int runShard(Path manifestPath, int shardIndex, int shardCount) throws IOException {
+        ShardManifest manifest = ShardManifest.load(manifestPath);
+        manifest.verifySource();
+        int written = new ShardWriter(nzbWriter, destDir).writeShard(manifest, shardIndex, shardCount);
+        System.out.println(String.format("%s: shard %d/%d wrote %d of %d parts", manifest.getSource().getFileName(), shardIndex, shardCount, written, manifest.getPartCount()));
+        return written;
+    }
+    
+    /**
+     * Split the NZB file at the given path in stream mode: only the file sizes
+     * are parsed and each part is copied from the NZB file by byte range, as
+     * the parts of a shard manifest are, so the segments are never held in
+     * memory. The parts hold the same files in the same order as in the other
+     * modes, but each file element is copied as it is, so its segments keep
+     * the order and formatting of the NZB file.
+     * @param nzbPath path to the uncompressed NZB file
+     * @param fileName file name of the NZB file
+     * @param progress progress the written parts are recorded on or null
+     * @return number of NZB parts written
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to read the NZB file or write the parts
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    private int runStreaming(Path nzbPath, String fileName, Progress progress) throws NZBParseException, IOException, SplitException {
+        NZB nzb = nzbSplit.parse(nzbPath, NZBSplit.STORE_SIZES);
+        SplitResult result = nzbSplit.split(nzb, null);
+        new ShardWriter(nzbWriter, destDir).writeParts(nzbPath, fileName, nzb, result, progress);
+        return reporter.report(fileName, result);
+    }
+    
+    /**
+     * Choose the mode the NZB file at the given path is split in so that it
+     * fits in the memory budget, and print the mode and the estimate it is
+     * based on. NZBX files, which are decoded lazily, and split plans that do
+     * not need the segments are always split in memory.
+     * @param nzbPath path to the NZB file
+     * @param restriction why the NZB cannot be split in stream mode e.g.
+     * "incrementally", or null if the caller supports stream mode
+     * @return {@link MemoryEstimate#MODE_MEMORY}, {@link MemoryEstimate#MODE_COMPACT}
+     * or {@link MemoryEstimate#MODE_STREAM}
+     * @throws IOException if unable to read the NZB file
+     */
+    private String chooseMode(Path nzbPath, String restriction) throws IOException {
+        if(memoryBudget <= 0 || NZBXParser.isNZBX(nzbPath) || (isPlanOnly() && completenessCheck == null)) {
+            return MemoryEstimate.MODE_MEMORY;
+        }
+        MemoryEstimate estimate = MemoryEstimate.sample(nzbPath);
+        String mode = estimate.choose(memoryBudget);
+        if(MemoryEstimate.MODE_STREAM.equals(mode)) {
+            restriction = restriction != null ? restriction : getStreamRestriction(estimate);
+            mode = restriction != null ? MemoryEstimate.MODE_COMPACT : mode;
+        } else {
+            restriction = null;
+        }
+        if(log || !MemoryEstimate.MODE_MEMORY.equals(mode)) {
+            info(String.format("%s: %s mode for a budget of %s, estimated %s%s", nzbPath.getFileName(), mode,
+                FileSize.format(memoryBudget), estimate, restriction != null ? String.format(" (cannot stream %s)", restriction) : ""));
+        }
+        return mode;
+    }
+    
+    /**
+     * Get why the NZB cannot be split in stream mode with the current options
+     * @param estimate estimate of the NZB
+     * @return reason e.g. "with --dedup" or null if the NZB can be streamed
+     */
+    private String getStreamRestriction(MemoryEstimate estimate) {
+        if(estimate.isCompressed()) {
+            return "a compressed nzb";
+        } else if(tar != null) {
+            return "to stdout";
+        } else if(isDeduplicateSet) {
+            return "with --dedup";
+        } else if(isHistorySet) {
+            return "with --history";
+        } else if(completenessCheck != null) {
+            return "with --check";
+        } else if(classifier != null) {
+            return "with --provider";
+        }
+        return null;
+    }
+    
+    /**
+     * Parse the NZB file at the given path in the given mode
+     * @param nzbPath path to the NZB file
+     * @param mode {@link MemoryEstimate#MODE_MEMORY} or {@link MemoryEstimate#MODE_COMPACT}
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to open the NZB file
+     */
+    private NZB parse(Path nzbPath, String mode) throws NZBParseException, IOException {
+        if(MemoryEstimate.MODE_COMPACT.equals(mode)) {
+            return nzbSplit.parse(nzbPath, NZBSplit.STORE_COMPACT);
+        }
+        return nzbSplit.parse(nzbPath);
+    }
+    
+    /**
+     * Parse the NZB file at the given path. This is the first of the three
+     * steps of {@link #run(java.nio.file.Path)} that can be run separately:
+     * parse, {@link #split(nzbsplit.nzb.NZB)} then
+     * {@link #write(java.nio.file.Path, nzbsplit.api.SplitResult)}. The
+     * segments are stored compactly if the NZB would not fit in the memory
+     * budget otherwise. If progress is reported, the progress of the parse
+     * ends with a parsed event and the write is reported separately.
+     * @param nzbPath path to the NZB file
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to open the NZB file
+     */
+    public NZB parse(Path nzbPath) throws NZBParseException, IOException {
+        final Progress progress = startProgress(nzbPath.getFileName().toString(), nzbPath);
+        boolean isDone = false;
+        try {
+            NZB nzb = parse(nzbPath, chooseMode(nzbPath, "in pipeline mode"));
+            isDone = true;
+            return nzb;
+        } finally {
+            finishProgress(progress, isDone ? ProgressReporter.EVENT_PARSED : ProgressReporter.EVENT_FAILED);
+        }
+    }
+    
+    /**
+     * Split the parsed NZB using each split strategy without writing the parts
+     * @param nzbPath path to the NZB file that was parsed
+     * @param nzb parsed NZB
+     * @return SplitResult
+     * @throws IOException will not be thrown as no parts are written
+     * @throws SplitException if every strategy failed to split the NZB or
+     * the NZB is incomplete and incomplete NZBs are refused
+     */
+    public SplitResult split(Path nzbPath, NZB nzb) throws IOException, SplitException {
+        return nzbSplit.split(check(nzbPath.getFileName().toString(), nzb), null);
+    }
+    
+    /**
+     * Check the completeness of the given NZB as per the check mode, printing
+     * the completeness and the incomplete sets and files
+     * @param fileName file name of the NZB
+     * @param nzb parsed NZB
+     * @return the given NZB, or the NZB without its incomplete sets if they
+     * are dropped
+     * @throws SplitException if the NZB is incomplete and incomplete NZBs are
+     * refused, or if no set is complete when incomplete sets are dropped
+     */
+    private NZB check(String fileName, NZB nzb) throws SplitException {
+        return completenessCheck == null ? nzb : completenessCheck.check(fileName, nzb);
+    }
+    
+    /**
+     * Write the parts (or the split plans) of each successful strategy. If one
+     * of many strategies failed, its error is printed.
+     * @param nzbPath path to the NZB file that was split
+     * @param result SplitResult
+     * @return number of NZB parts written (or planned)
+     * @throws IOException if unable to write the parts
+     */
+    public int write(Path nzbPath, SplitResult result) throws IOException {
+        final String fileName = nzbPath.getFileName().toString();
+        if(!isPlanOnly()) {
+            final Progress progress = startProgress(fileName, null);
+            boolean isDone = false;
+            try {
+                PartSink sink = createSink(fileName);
+                List<SplitStrategy> strategies = result.getStrategies();
+                for(int i = 0; i < strategies.size(); i++) {
+                    List<NZB> parts = result.getParts(i);
+                    for(int j = 0; parts != null && j < parts.size(); j++) {
+                        sink.accept(strategies.size() > 1 ? strategies.get(i).getName() : null, j, parts.get(j));
+                    }
+                }
+                isDone = true;
+            } finally {
+                finishProgress(progress, isDone);
+            }
+        }
+        return reporter.report(fileName, result);
+    }
+    
+    /**
+     * Convert the NZB file at the given path to the given format instead of
+     * splitting it. The converted file is written to the destination directory.
+     * @param nzbPath path to the NZB or NZBX file
+     * @param format {@link #CONVERT_NZB} or {@link #CONVERT_NZBX}
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to write the converted file
+     */
+    public void convert(Path nzbPath, String format) throws NZBParseException, IOException {
+        File dest = getConvertedFile(nzbPath.getFileName().toString(), format);
+        if(dest.exists() && Files.isSameFile(nzbPath, dest.toPath())) {
+            throw new IOException(String.format("Unable to convert %s to itself", dest.getName()));
+        }
+        convert(nzbSplit.parse(nzbPath), dest, format);
+    }
+    
+    /**
+     * Convert the NZB read from the given stream to the given format instead
+     * of splitting it. The converted file is written to the destination directory.
+     * @param in NZB or NZBX input stream. The stream is not closed.
+     * @param fileName file name the converted file is named after e.g. input.nzb
+     * @param format {@link #CONVERT_NZB} or {@link #CONVERT_NZBX}
+     * @throws NZBParseException if unable to parse the NZB
+     * @throws IOException if unable to write the converted file
+     */
+    public void convert(InputStream in, String fileName, String format) throws NZBParseException, IOException {
+        convert(nzbSplit.parse(in), getConvertedFile(fileName, format), format);
+    }
+    
+    /**
+     * Write the given NZB to the given file in the given format
+     * @param nzb parsed NZB
+     * @param dest destination file
+     * @param format {@link #CONVERT_NZB} or {@link #CONVERT_NZBX}
+     * @throws IOException if unable to write the converted file
+     */
+    private void convert(NZB nzb, File dest, String format) throws IOException {
+        if(CONVERT_NZBX.equals(format)) {
+            new NZBXWriter().write(nzb, dest);
+        } else {
+            nzbWriter.write(nzb, dest);
+        }
+    }
+    
+    /**
+     * Get the file in the destination directory that an NZB is converted to
+     * @param fileName file name of the NZB e.g. input.nzb
+     * @param format {@link #CONVERT_NZB} or {@link #CONVERT_NZBX}
+     * @return converted file e.g. input.nzbx
+     */
+    private File getConvertedFile(String fileName, String format) {
+        String extension = NZBXParser.EXTENSION;
+        if(CONVERT_NZB.equals(format)) {
+            extension = nzbWriter.isCompressSet() ? ".nzb.gz" : ".nzb";
+        }
+        return new File(destDir, FilePartSink.getBaseName(fileName) + extension);
+    }
+    
+    /**
+     * Check if the given format is a format NZB files can be converted to
+     * @param format format e.g. nzbx
+     * @return true if supported, false otherwise
+     */
+    public static boolean isSupportedConvertFormat(String format) {
+        return CONVERT_NZB.equals(format) || CONVERT_NZBX.equals(format);
+    }
+    
+    /**
+     * Start reporting the progress of the NZB split by the calling thread, if
+     * a progress reporter is set
+     * @param fileName file name of the NZB
+     * @param nzbPath path to the NZB file or null if its size is unknown
+     * @return progress of the NZB or null if no progress reporter is set
+     * @throws IOException if unable to get the size of the NZB file
+     */
+    private Progress startProgress(String fileName, Path nzbPath) throws IOException {
+        if(progressReporter == null) {
+            return null;
+        }
+        long size = nzbPath != null && Files.isRegularFile(nzbPath) ? Files.size(nzbPath) : -1;
+        Progress progress = progressReporter.start(fileName, size);
+        nzbSplit.setProgress(progress);
+        return progress;
+    }
+    
+    /**
+     * Stop reporting the progress of the NZB split by the calling thread
+     * @param progress progress of the NZB or null
+     * @param isDone true if the NZB was split, false if it failed
+     */
+    private void finishProgress(Progress progress, boolean isDone) {
+        finishProgress(progress, isDone ? ProgressReporter.EVENT_DONE : ProgressReporter.EVENT_FAILED);
+    }
+    
+    /**
+     * Stop reporting the progress of the NZB split by the calling thread
+     * @param progress progress of the NZB or null
+     * @param event final event of the NZB e.g. {@link ProgressReporter#EVENT_DONE}
+     */
+    private void finishProgress(Progress progress, String event) {
+        if(progress != null) {
+            nzbSplit.setProgress(null);
+            progressReporter.finish(progress, event);
+        }
+    }
+    
+    /**
+     * Create the sink that writes the parts of the given NZB file, either to
+     * the destination directory or to the tar archive if set. The sink records
+     * the parts on the progress of the calling thread, if any.
+     * @param fileName file name the parts are named after
+     * @return PartSink
+     */
+    private PartSink createSink(String fileName) {
+        if(tar != null) {
+            TarPartSink sink = new TarPartSink(nzbWriter, tar, fileName);
+            sink.setProgress(nzbSplit.getProgress());
+            return sink;
+        }
+        FilePartSink sink = new FilePartSink(nzbWriter, destDir, fileName);
+        sink.setProgress(nzbSplit.getProgress());
+        return sink;
+    }
+    
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import nzbsplit.api.PartSink;
+import nzbsplit.io.ParallelGZIPOutputStream;
+import nzbsplit.io.TarOutputStream;
+import nzbsplit.nzb.NZB;
+import nzbsplit.progress.Progress;
+import nzbsplit.progress.ProgressOutputStream;
+
+/**
+ * A PartSink that writes each NZB part as a file in a tar archive. The parts
+ * are named in the same way as {@link FilePartSink}. Many TarPartSinks can
+ * share the same archive.
+ * @author Sam Malone
+ */
+public class TarPartSink implements PartSink {
+    
+    private final static String NZB_EXTENSION = ".nzb";
+    private final static String GZIP_EXTENSION = ".gz";
+    
+    private final NZBWriter nzbWriter;
+    private final TarOutputStream tar;
+    private final String baseName;
+    private Progress progress = null;
+    
+    /**
+     * Creates a new instance of TarPartSink
+     * @param nzbWriter NZBWriter used to write each part
+     * @param tar tar archive the parts are written to
+     * @param fileName file name of the NZB the parts are named after e.g. input.nzb
+     */
+    public TarPartSink(NZBWriter nzbWriter, TarOutputStream tar, String fileName) {
+        this.nzbWriter = nzbWriter;
+        this.tar = tar;
+        this.baseName = FilePartSink.getBaseName(fileName);
+    }
+
+    /**
+     * Set the progress each part and the bytes written to it are recorded on.
+     * The write phase of the progress starts when the first part is opened.
+     * @param progress Progress or null to not record the progress
+     */
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    @Override
+    public void accept(String planName, int partNo, NZB part) throws IOException {
+        String extension = nzbWriter.isCompressSet() ? NZB_EXTENSION + GZIP_EXTENSION : NZB_EXTENSION;
+        FileNamer namer = new FileNamer(baseName + extension, extension);
+        namer.setPlanName(planName);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        OutputStream counted = buffer;
+        if(progress != null) {
+            progress.startWriting();
+            counted = new ProgressOutputStream(buffer, progress);
+        }
+        try (OutputStream out = nzbWriter.isCompressSet() ? new ParallelGZIPOutputStream(counted) : counted) {
+            nzbWriter.write(part, out);
+        }
+        tar.putFile(namer.getPartFileName(null, partNo).getName(), buffer.toByteArray(), buffer.size());
+        if(progress != null) {
+            progress.addPart();
+        }
+    }
+    
+}
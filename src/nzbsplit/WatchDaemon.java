@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches an inbox directory and splits each NZB file (.nzb or .nzb.gz) as
+ * soon as it has been completely written. An NZB file is considered complete when it ends with the
+ * closing nzb tag (e.g. it was renamed into the inbox once written), or when its
+ * size has not changed for {@link #SETTLE_MILLIS}. Once split, the NZB file is
+ * moved to the "processed" directory of the inbox, or to the "failed" directory
+ * if it could not be split.
+ * @author Sam Malone
+ */
+public class WatchDaemon {
+    
+    /**
+     * Time in milliseconds the size of an incomplete NZB file must stay the same
+     * before it is considered completely written
+     */
+    public final static long SETTLE_MILLIS = 1000;
+    
+    private final static long POLL_MILLIS = 100;
+    private final static String NZB_EXTENSION = ".nzb";
+    private final static String NZB_GZIP_EXTENSION = ".nzb.gz";
+    private final static String NZB_END_TAG = "</nzb>";
+    private final static int TAIL_LENGTH = 64;
+    
+    private final Path inbox;
+    private final Path processedDir;
+    private final Path failedDir;
+    private final BatchProcessor processor;
+    private final ExecutorService executor;
+    private final Map<Path, long[]> pending;
+    private final Set<Path> active;
+    private boolean log = false;
+    private volatile boolean running = true;
+    
+    /**
+     * Creates a new instance of WatchDaemon
+     * @param inbox directory to watch for NZB files
+     * @param processor BatchProcessor used to split each NZB file
+     * @param threads maximum number of NZB files to split at the same time
+     */
+    public WatchDaemon(Path inbox, BatchProcessor processor, int threads) {
+        this.inbox = inbox;
+        this.processedDir = inbox.resolve("processed");
+        this.failedDir = inbox.resolve("failed");
+        this.processor = processor;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.pending = new HashMap<>();
+        this.active = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    }
+    
+    /**
+     * Set whether to print each NZB file that is split
+     * @param log true to print each NZB file that is split, false otherwise
+     */
+    public void setLog(boolean log) {
+        this.log = log;
+    }
+    
+    /**
+     * Watch the inbox until {@link #stop()} is called. NZB files already in the
+     * inbox are split first.
+     * @throws IOException if unable to watch the inbox
+     */
+    public void run() throws IOException {
+        Files.createDirectories(processedDir);
+        Files.createDirectories(failedDir);
+        try (WatchService watcher = inbox.getFileSystem().newWatchService()) {
+            inbox.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            scan();
+            while(running) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(key != null) {
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        if(event.kind() == OVERFLOW) {
+                            scan();
+                        } else {
+                            offer(inbox.resolve((Path) event.context()));
+                        }
+                    }
+                    if(!key.reset()) {
+                        throw new IOException("Unable to watch the inbox " + inbox);
+                    }
+                }
+                checkPending();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            awaitActive();
+        }
+    }
+    
+    /**
+     * Stop watching the inbox. NZB files that are being split will be completed.
+     */
+    public void stop() {
+        running = false;
+    }
+    
+    /**
+     * Offer each file currently in the inbox
+     * @throws IOException if unable to list the inbox
+     */
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(inbox)) {
+            for(Path path : stream) {
+                offer(path);
+            }
+        }
+    }
+    
+    /**
+     * Offer an NZB file that has been created or modified. The NZB file is split
+     * straight away if it is complete, otherwise it is checked again until its
+     * size settles.
+     * @param path path of the NZB file
+     */
+    private void offer(Path path) {
+        String fileName = path.getFileName().toString();
+        if(!(fileName.endsWith(NZB_EXTENSION) || fileName.endsWith(NZB_GZIP_EXTENSION)) || active.contains(path)) {
+            return;
+        }
+        try {
+            if(!Files.isRegularFile(path)) {
+                pending.remove(path);
+            } else if(endsWithEndTag(path)) {
+                pending.remove(path);
+                dispatch(path);
+            } else {
+                pending.put(path, new long[] { Files.size(path), System.currentTimeMillis() });
+            }
+        } catch (IOException ex) {
+            pending.put(path, new long[] { -1, System.currentTimeMillis() });
+        }
+    }
+    
+    /**
+     * Split each pending NZB file whose size has not changed for {@link #SETTLE_MILLIS}
+     */
+    private void checkPending() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<Path, long[]>> it = pending.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Path, long[]> entry = it.next();
+            long[] sizeAndTime = entry.getValue();
+            try {
+                long size = Files.size(entry.getKey());
+                if(size != sizeAndTime[0]) {
+                    sizeAndTime[0] = size;
+                    sizeAndTime[1] = now;
+                } else if(now - sizeAndTime[1] >= SETTLE_MILLIS) {
+                    it.remove();
+                    dispatch(entry.getKey());
+                }
+            } catch (IOException ex) {
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Check if the NZB file ends with the closing nzb tag, ignoring trailing whitespace
+     * @param path path of the NZB file
+     * @return true if the NZB file ends with the closing nzb tag, false otherwise
+     * @throws IOException if unable to read the NZB file
+     */
+    private static boolean endsWithEndTag(Path path) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, TAIL_LENGTH));
+            channel.position(size - tail.capacity());
+            while(tail.hasRemaining() && channel.read(tail) >= 0) {
+                // read until the tail is full
+            }
+            return new String(tail.array(), 0, tail.position(), StandardCharsets.US_ASCII).trim().endsWith(NZB_END_TAG);
+        }
+    }
+    
+    /**
+     * Split the NZB file on the executor then move it out of the inbox
+     * @param path path of the NZB file
+     */
+    private void dispatch(final Path path) {
+        if(!active.add(path)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    boolean isSplit = processor.process(path);
+                    if(isSplit && log) {
+                        System.out.println(String.format("Split \"%s\" in %d ms", path.getFileName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                    }
+                    Path dest = (isSplit ? processedDir : failedDir).resolve(path.getFileName());
+                    Files.move(path, dest, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    System.err.println(String.format("ERROR: Unable to move %s out of the inbox: %s", path, ex.getMessage()));
+                } finally {
+                    active.remove(path);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Wait for the NZB files that are being split to complete
+     */
+    private void awaitActive() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+}
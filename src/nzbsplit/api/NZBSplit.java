@@ -0,0 +1,596 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.api;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import nzbsplit.FilePriority;
+import nzbsplit.NZBXWriter;
+import nzbsplit.cache.ParseCache;
+import nzbsplit.exception.NZBParseException;
+import nzbsplit.exception.SplitException;
+import nzbsplit.filter.FileFilter;
+import nzbsplit.history.MessageIdHistory;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+import nzbsplit.nzb.SegmentElement;
+import nzbsplit.parser.NZBParser;
+import nzbsplit.parser.NZBXParser;
+import nzbsplit.progress.Progress;
+import nzbsplit.progress.ProgressInputStream;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * Parses an NZB from a stream, splits it using one or more split strategies
+ * and hands each part to a {@link PartSink}. Parts are never written to the
+ * file system by NZBSplit itself. An instance can be used to split many NZBs
+ * concurrently.
+ * Each thread reuses its own {@link NZBParser}, which is shared by every
+ * instance, so creating an instance per NZB is cheap.
+ * <p>
+ * If a single strategy fails, its exception is thrown. If one of many
+ * strategies fails, the error is recorded in the {@link SplitResult} so the
+ * remaining strategies can complete. An exception is only thrown if every
+ * strategy fails.
+ * @author Sam Malone
+ */
+public class NZBSplit {
+    
+    private final static ThreadLocal<NZBParser> PARSERS = new ThreadLocal<NZBParser>() {
+        @Override
+        protected NZBParser initialValue() {
+            return new NZBParser();
+        }
+    };
+    
+    private final static int BUFFER_SIZE = 64 * 1024;
+    
+    private final static NZBXParser NZBX_PARSER = new NZBXParser();
+    
+    /**
+     * Segments are parsed into a SegmentElement each
+     */
+    public final static int STORE_SEGMENTS = 0;
+    
+    /**
+     * The segments of each file are stored encoded in a single byte array and
+     * decoded when accessed, see {@link NZBParser#setCompactSegments(boolean)}
+     */
+    public final static int STORE_COMPACT = 1;
+    
+    /**
+     * Only the size of each file is stored, see {@link #setRetainSegments(boolean)}
+     */
+    public final static int STORE_SIZES = 2;
+    
+    private final List<SplitStrategy> strategies;
+    private boolean retainSegments = true;
+    private ExecutorService executor = null;
+    private ParseCache cache = null;
+    private boolean deduplicate = false;
+    private MessageIdHistory history = null;
+    private FileFilter filter = null;
+    private FilePriority priority = FilePriority.DEFAULT;
+    private final ThreadLocal<Progress> progress = new ThreadLocal<>();
+    
+    /**
+     * Creates a new instance of NZBSplit that uses a single split strategy
+     * @param strategy split strategy
+     */
+    public NZBSplit(SplitStrategy strategy) {
+        this(Collections.singletonList(strategy));
+    }
+    
+    /**
+     * Creates a new instance of NZBSplit that uses each of the given split strategies
+     * @param strategies split strategies
+     */
+    public NZBSplit(List<SplitStrategy> strategies) {
+        this.strategies = strategies;
+    }
+    
+    /**
+     * Set whether the segments of each file should be retained. If segments are
+     * not retained, the parts only contain file sizes and cannot be written as
+     * NZB files, but parsing is faster and uses less memory. This is useful
+     * when only the split plan is needed. Default is true.
+     * @param retainSegments true to retain the segments, false otherwise
+     */
+    public void setRetainSegments(boolean retainSegments) {
+        this.retainSegments = retainSegments;
+    }
+    
+    /**
+     * Set whether duplicate segments should be removed whilst parsing an NZB,
+     * as per {@link NZBParser#setDeduplicate(boolean)}. Default is false.
+     * @param deduplicate true to remove duplicate segments, false otherwise
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+    
+    /**
+     * Set the history of message ids that have already been downloaded, so
+     * only the remaining segments of an NZB are split, as per
+     * {@link NZBParser#setHistory(nzbsplit.history.MessageIdHistory)}
+     * @param history MessageIdHistory or null to keep every segment
+     */
+    public void setHistory(MessageIdHistory history) {
+        this.history = history;
+    }
+    
+    /**
+     * Set the filter that drops unwanted files from an NZB before it is split,
+     * so the parts are balanced using only the files that are kept
+     * @param filter FileFilter or null to keep every file
+     */
+    public void setFilter(FileFilter filter) {
+        this.filter = filter;
+    }
+    
+    /**
+     * Set the priority the files of each part are ordered by, so a downloader
+     * can verify and unpack a release as early as possible. Default is
+     * {@link FilePriority#DEFAULT}.
+     * @param priority FilePriority or null to keep the files in the order the
+     * splitter placed them
+     */
+    public void setPriority(FilePriority priority) {
+        this.priority = priority;
+    }
+    
+    /**
+     * Order the files of each of the given parts by the file priority
+     * @param parts NZB parts
+     */
+    public void order(List<NZB> parts) {
+        if(priority != null) {
+            PartNormalizer.order(parts, priority);
+        }
+    }
+    
+    /**
+     * Get a copy of the given NZB without the files dropped by the filter
+     * @param nzb parsed NZB
+     * @return filtered NZB or the given NZB if no filter is set
+     */
+    public NZB filter(NZB nzb) {
+        if(filter == null || filter.isEmpty()) {
+            return nzb;
+        }
+        return filter.filter(nzb);
+    }
+    
+    /**
+     * Set the cache used to look up NZBs by the hash of their content before
+     * parsing them. NZBX files that are parsed from a path are never cached as
+     * they load without parsing. Default is no cache.
+     * @param cache ParseCache or null
+     */
+    public void setParseCache(ParseCache cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * Get the parse cache
+     * @return ParseCache or null if not set
+     */
+    public ParseCache getParseCache() {
+        return cache;
+    }
+    
+    /**
+     * Set the executor used to run the split strategies of an NZB concurrently.
+     * If no executor is set, the strategies are run one after another in the
+     * calling thread.
+     * @param executor ExecutorService or null
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Set the progress that the NZB parsed and split by the calling thread is
+     * recorded on. The bytes read and the files and segments parsed are
+     * recorded whilst parsing, and the split phase is started when the NZB is
+     * split. The parts are recorded by the sinks that write them.
+     * @param progress Progress or null to not record the progress
+     */
+    public void setProgress(Progress progress) {
+        if(progress == null) {
+            this.progress.remove();
+        } else {
+            this.progress.set(progress);
+        }
+    }
+    
+    /**
+     * Get the progress that the NZB parsed and split by the calling thread is
+     * recorded on
+     * @return Progress or null if not set
+     */
+    public Progress getProgress() {
+        return progress.get();
+    }
+    
+    /**
+     * Get the split strategies
+     * @return list of split strategies
+     */
+    public List<SplitStrategy> getStrategies() {
+        return strategies;
+    }
+    
+    /**
+     * Parse the NZB from the given channel and split it. The channel is not closed.
+     * @param in NZB input channel
+     * @param sink sink that receives each part or null to only compute the parts
+     * @return SplitResult
+     * @throws NZBParseException if unable to parse the NZB
+     * @throws IOException if the sink of a single strategy failed
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    public SplitResult split(ReadableByteChannel in, PartSink sink) throws NZBParseException, IOException, SplitException {
+        return split(Channels.newInputStream(in), sink);
+    }
+    
+    /**
+     * Parse the NZB from the given stream and split it, writing each part as XML
+     * to a stream opened by the given factory. The input stream is not closed.
+     * @param in NZB input stream
+     * @param factory factory that opens the stream of each part
+     * @return SplitResult
+     * @throws NZBParseException if unable to parse the NZB
+     * @throws IOException if unable to write the parts of a single strategy
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    public SplitResult split(InputStream in, OutputStreamFactory factory) throws NZBParseException, IOException, SplitException {
+        return split(in, new StreamPartSink(factory));
+    }
+    
+    /**
+     * Parse the NZB from the given stream and split it. The stream is not closed.
+     * @param in NZB input stream
+     * @param sink sink that receives each part or null to only compute the parts
+     * @return SplitResult
+     * @throws NZBParseException if unable to parse the NZB
+     * @throws IOException if the sink of a single strategy failed
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    public SplitResult split(InputStream in, PartSink sink) throws NZBParseException, IOException, SplitException {
+        return split(parse(in), sink);
+    }
+    
+    /**
+     * Parse the NZB file at the given path. An NZBX file (.nzbx) is memory
+     * mapped and its segments are decoded on first access, otherwise the file
+     * is parsed as per {@link #parse(java.io.InputStream)}.
+     * @param nzbPath path to the NZB or NZBX file
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to open the NZB file
+     */
+    public NZB parse(Path nzbPath) throws NZBParseException, IOException {
+        return parse(nzbPath, getStorage());
+    }
+    
+    /**
+     * Parse the NZB file at the given path, storing its segments as given
+     * rather than as per {@link #setRetainSegments(boolean)}. The storage of
+     * an NZBX file, or of an NZB read through the parse cache, is unaffected.
+     * @param nzbPath path to the NZB or NZBX file
+     * @param storage {@link #STORE_SEGMENTS}, {@link #STORE_COMPACT} or {@link #STORE_SIZES}
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB file
+     * @throws IOException if unable to open the NZB file
+     */
+    public NZB parse(Path nzbPath, int storage) throws NZBParseException, IOException {
+        if(NZBXParser.isNZBX(nzbPath)) {
+            return applyHistory(NZBX_PARSER.parse(nzbPath));
+        }
+        try (InputStream in = Files.newInputStream(nzbPath)) {
+            return parse(in, storage);
+        }
+    }
+    
+    /**
+     * Parse the NZB from the given stream using the parser of the calling thread.
+     * The stream is decompressed if it is gzip compressed. If the stream
+     * contains an NZBX file, it is read into memory and its segments are
+     * decoded on first access.
+     * @param in NZB input stream
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB
+     */
+    public NZB parse(InputStream in) throws NZBParseException {
+        return parse(in, getStorage());
+    }
+    
+    /**
+     * Parse the NZB from the given stream as per {@link #parse(java.io.InputStream)},
+     * storing its segments as given rather than as per
+     * {@link #setRetainSegments(boolean)}
+     * @param in NZB input stream
+     * @param storage {@link #STORE_SEGMENTS}, {@link #STORE_COMPACT} or {@link #STORE_SIZES}
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB
+     */
+    public NZB parse(InputStream in, int storage) throws NZBParseException {
+        if(progress.get() != null) {
+            in = new ProgressInputStream(in, progress.get());
+        }
+        if(cache != null) {
+            return parseCached(in);
+        }
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE);
+        try {
+            if(NZBXParser.isNZBX(buffered)) {
+                return applyHistory(NZBX_PARSER.parse(buffered));
+            }
+        } catch(IOException ex) {
+            throw new NZBParseException(ex.getMessage());
+        }
+        return parseXML(buffered, storage, history);
+    }
+    
+    private int getStorage() {
+        return retainSegments ? STORE_SEGMENTS : STORE_SIZES;
+    }
+    
+    /**
+     * Parse the NZB from the given stream using the parse cache. The stream is
+     * read into memory and the NZB is looked up by the hash of its content. If
+     * the NZB is not cached, it is parsed with its segments, so the cached NZB
+     * can be used whether or not the segments are retained, then cached in
+     * its binary form, which keeps the number of duplicate segments removed
+     * from each file. The history is applied after the lookup so the cached
+     * NZB does not depend on the history.
+     * @param in NZB input stream
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB
+     */
+    private NZB parseCached(InputStream in) throws NZBParseException {
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                data.write(buffer, 0, read);
+            }
+            byte[] content = data.toByteArray();
+            String key = ParseCache.hash(content, content.length) + (deduplicate ? "-dedup" : "");
+            byte[] nzbx = cache.get(key);
+            if(nzbx != null) {
+                NZB nzb = NZBX_PARSER.parse(ByteBuffer.wrap(nzbx));
+                if(deduplicate) {
+                    findMissingSegments(nzb);
+                }
+                return applyHistory(nzb);
+            }
+            InputStream contentStream = new ByteArrayInputStream(content);
+            if(NZBXParser.isNZBX(contentStream)) {
+                return applyHistory(NZBX_PARSER.parse(ByteBuffer.wrap(content)));
+            }
+            NZB nzb = parseXML(contentStream, STORE_SEGMENTS, null);
+            data.reset();
+            new NZBXWriter().write(nzb, data);
+            cache.put(key, data.toByteArray());
+            return applyHistory(nzb);
+        } catch(IOException ex) {
+            throw new NZBParseException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Get a copy of the given NZB without the segments that are in the history,
+     * or without the files that have no segments left. Used for NZBs that are
+     * not parsed from XML, as the XML parser drops the segments itself.
+     * @param nzb parsed NZB
+     * @return NZB of the remaining segments or the given NZB if no history is set
+     */
+    private NZB applyHistory(NZB nzb) {
+        if(history == null) {
+            return nzb;
+        }
+        NZB remaining = new NZB(nzb.getMetadata());
+        for(FileElement file : nzb.getFiles()) {
+            if(file.getSegments().isEmpty()) {
+                remaining.addFile(file);
+                continue;
+            }
+            FileElement remainingFile = new FileElement();
+            remainingFile.setPoster(file.getPoster());
+            remainingFile.setDate(file.getDate());
+            remainingFile.setSubject(file.getSubject());
+            remainingFile.setFirstMessageId(file.getFirstMessageId());
+            remainingFile.setDuplicateSegments(file.getDuplicateSegments());
+            remainingFile.setMissingSegments(file.getMissingSegments());
+            for(String group : file.getUsenetGroups()) {
+                remainingFile.addUsenetGroup(group);
+            }
+            for(SegmentElement segment : file.getSegments()) {
+                if(history.contains(segment.getMessageId())) {
+                    remaining.addSkippedSegments(1, segment.getBytes());
+                } else {
+                    remainingFile.addSegment(segment);
+                }
+            }
+            if(!remainingFile.getSegments().isEmpty()) {
+                remaining.addFile(remainingFile);
+            }
+        }
+        return remaining;
+    }
+    
+    /**
+     * Record the missing segment numbers of each file of an NZB whose duplicate
+     * segments were removed when it was first parsed
+     * @param nzb NZB loaded from the parse cache
+     */
+    private static void findMissingSegments(NZB nzb) {
+        for(FileElement file : nzb.getFiles()) {
+            List<SegmentElement> segments = file.getSegments();
+            int[] numbers = new int[segments.size()];
+            for(int i = 0; i < numbers.length; i++) {
+                numbers[i] = segments.get(i).getSegmentNumber();
+            }
+            file.setMissingSegments(NZBParser.findMissingSegments(numbers, numbers.length));
+        }
+    }
+    
+    /**
+     * Parse the NZB XML from the given stream using the parser of the calling
+     * thread and sort the segments of each file if the segments are stored as
+     * objects. Compact segments are already sorted.
+     * @param in NZB input stream
+     * @param storage {@link #STORE_SEGMENTS}, {@link #STORE_COMPACT} or {@link #STORE_SIZES}
+     * @param history history of downloaded message ids to drop or null
+     * @return parsed NZB
+     * @throws NZBParseException if unable to parse the NZB
+     */
+    private NZB parseXML(InputStream in, int storage, MessageIdHistory history) throws NZBParseException {
+        NZBParser parser = PARSERS.get();
+        parser.setRetainSegments(storage != STORE_SIZES);
+        parser.setCompactSegments(storage == STORE_COMPACT);
+        parser.setDeduplicate(deduplicate);
+        parser.setHistory(history);
+        parser.setProgress(progress.get());
+        NZB nzb = parser.parse(in);
+        if(storage == STORE_SEGMENTS) {
+            PartNormalizer.sortSegments(nzb.getFiles());
+        }
+        return nzb;
+    }
+    
+    /**
+     * Split an NZB that has already been parsed. The files of the NZB should have
+     * their segments sorted, as they are by {@link #parse(java.io.InputStream)}.
+     * Files dropped by the filter are not split and the source of the result
+     * is the filtered NZB.
+     * @param nzb NZB to split
+     * @param sink sink that receives each part or null to only compute the parts
+     * @return SplitResult
+     * @throws IOException if the sink of a single strategy failed
+     * @throws SplitException if every strategy failed to split the NZB
+     */
+    public SplitResult split(NZB nzb, PartSink sink) throws IOException, SplitException {
+        nzb = filter(nzb);
+        if(progress.get() != null) {
+            progress.get().startSplitting();
+        }
+        final List<Future<List<NZB>>> futures = new ArrayList<>(strategies.size());
+        for(SplitStrategy strategy : strategies) {
+            Callable<List<NZB>> task = createTask(nzb, strategy, sink);
+            if(executor == null) {
+                FutureTask<List<NZB>> future = new FutureTask<>(task);
+                future.run();
+                futures.add(future);
+            } else {
+                futures.add(executor.submit(task));
+            }
+        }
+        final List<List<NZB>> parts = new ArrayList<>(strategies.size());
+        final List<Exception> errors = new ArrayList<>(strategies.size());
+        for(Future<List<NZB>> future : futures) {
+            try {
+                parts.add(future.get());
+                errors.add(null);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SplitException("Interrupted whilst waiting for the split to complete");
+            } catch (ExecutionException ex) {
+                parts.add(null);
+                errors.add(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : new SplitException(ex.getCause().toString()));
+            }
+        }
+        if(!errors.isEmpty() && !errors.contains(null)) {
+            throwError(errors.get(0));
+        }
+        return new SplitResult(nzb, strategies, parts, errors);
+    }
+    
+    /**
+     * Create the task that splits the NZB using the given strategy and hands its
+     * parts to the sink
+     * @param nzb NZB to split
+     * @param strategy split strategy
+     * @param sink sink that receives each part or null
+     * @return task that returns the split NZB parts
+     */
+    private Callable<List<NZB>> createTask(final NZB nzb, final SplitStrategy strategy, final PartSink sink) {
+        return new Callable<List<NZB>>() {
+            @Override
+            public List<NZB> call() throws IOException, SplitException {
+                List<NZB> splitNZBs = strategy.createSplitter(nzb).split();
+                order(splitNZBs);
+                if(sink != null) {
+                    String planName = strategies.size() > 1 ? strategy.getName() : null;
+                    for(int i = 0; i < splitNZBs.size(); i++) {
+                        sink.accept(planName, i, splitNZBs.get(i));
+                    }
+                }
+                return splitNZBs;
+            }
+        };
+    }
+    
+    /**
+     * Throw the given error of a failed strategy
+     * @param error error of a failed strategy
+     * @throws IOException if the error is an IOException
+     * @throws SplitException otherwise
+     */
+    private static void throwError(Exception error) throws IOException, SplitException {
+        if(error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if(error instanceof SplitException) {
+            throw (SplitException) error;
+        }
+        if(error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        throw new SplitException(error.getMessage());
+    }
+    
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.api;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import nzbsplit.FilePriority;
+import nzbsplit.filter.FileFilter;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+
+/**
+ * The PartNormalizer sorts the segments of parsed files and orders the files
+ * of split parts by download priority. Large lists are divided between the
+ * threads of a shared fork join pool, which is separate from the executor of
+ * {@link NZBSplit} so a normalization started on one of its threads cannot
+ * wait on itself. Small lists are normalized in the calling thread.
+ * @author Sam Malone
+ */
+class PartNormalizer {
+    
+    /**
+     * Number of files (or parts) below which the work is not divided further
+     */
+    private final static int THRESHOLD = 512;
+    
+    private final static ForkJoinPool POOL = new ForkJoinPool();
+    
+    /**
+     * Sort the segments of each of the given files whose segments are out of
+     * order
+     * @param files files to sort the segments of
+     */
+    public static void sortSegments(List<FileElement> files) {
+        if(files.size() < THRESHOLD) {
+            sortSegments(files, 0, files.size());
+        } else {
+            POOL.invoke(new SortSegmentsAction(files, 0, files.size()));
+        }
+    }
+    
+    /**
+     * Sort the segments of the files in the given range
+     * @param files files
+     * @param from index of the first file
+     * @param to index after the last file
+     */
+    private static void sortSegments(List<FileElement> files, int from, int to) {
+        for(int i = from; i < to; i++) {
+            files.get(i).sortSegments();
+        }
+    }
+    
+    /**
+     * Order the files of each of the given parts by the given priority. Files
+     * with the same priority are ordered by file name, comparing runs of digits
+     * by value, so the volumes of an archive are in order e.g. part9 before
+     * part10.
+     * @param parts NZB parts
+     * @param priority FilePriority
+     */
+    public static void order(List<NZB> parts, FilePriority priority) {
+        int fileCount = 0;
+        for(NZB part : parts) {
+            fileCount += part.getFiles().size();
+        }
+        if(fileCount < THRESHOLD) {
+            order(parts, 0, parts.size(), priority);
+        } else {
+            POOL.invoke(new OrderAction(parts, 0, parts.size(), priority));
+        }
+    }
+    
+    /**
+     * Order the files of the parts in the given range by the given priority
+     * @param parts NZB parts
+     * @param from index of the first part
+     * @param to index after the last part
+     * @param priority FilePriority
+     */
+    private static void order(List<NZB> parts, int from, int to, FilePriority priority) {
+        for(int i = from; i < to; i++) {
+            NZB part = parts.get(i);
+            final Map<FileElement, Integer> ranks = new IdentityHashMap<>(part.getFiles().size() * 2);
+            final Map<FileElement, String> names = new IdentityHashMap<>(part.getFiles().size() * 2);
+            for(FileElement file : part.getFiles()) {
+                ranks.put(file, priority.getRank(file));
+                String name = FileFilter.getFileName(file.getSubject());
+                names.put(file, name == null ? "" : name);
+            }
+            part.sortFiles(new Comparator<FileElement>() {
+                @Override
+                public int compare(FileElement a, FileElement b) {
+                    int cmp = Integer.compare(ranks.get(a), ranks.get(b));
+                    return cmp != 0 ? cmp : compareNames(names.get(a), names.get(b));
+                }
+            });
+        }
+    }
+    
+    /**
+     * Compare file names, comparing runs of digits by their value
+     * @param a file name
+     * @param b file name
+     * @return negative, zero or positive as a is before, equal to or after b
+     */
+    static int compareNames(String a, String b) {
+        int i = 0, j = 0;
+        while(i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if(Character.isDigit(ca) && Character.isDigit(cb)) {
+                int startA = i, startB = j;
+                while(startA < a.length() - 1 && a.charAt(startA) == '0' && Character.isDigit(a.charAt(startA + 1))) {
+                    startA++;
+                }
+                while(startB < b.length() - 1 && b.charAt(startB) == '0' && Character.isDigit(b.charAt(startB + 1))) {
+                    startB++;
+                }
+                i = startA;
+                j = startB;
+                while(i < a.length() && Character.isDigit(a.charAt(i))) {
+                    i++;
+                }
+                while(j < b.length() && Character.isDigit(b.charAt(j))) {
+                    j++;
+                }
+                int cmp = Integer.compare(i - startA, j - startB);
+                if(cmp == 0) {
+                    cmp = a.substring(startA, i).compareTo(b.substring(startB, j));
+                }
+                if(cmp != 0) {
+                    return cmp;
+                }
+            } else {
+                if(ca != cb) {
+                    return Character.compare(ca, cb);
+                }
+                i++;
+                j++;
+            }
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+    
+    /**
+     * Sorts the segments of a range of files, dividing the range in two until
+     * it is below the threshold
+     */
+    private static class SortSegmentsAction extends RecursiveAction {
+        
+        private final static long serialVersionUID = 1L;
+        
+        private final List<FileElement> files;
+        private final int from;
+        private final int to;
+
+        public SortSegmentsAction(List<FileElement> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from < THRESHOLD) {
+                sortSegments(files, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortSegmentsAction(files, from, mid), new SortSegmentsAction(files, mid, to));
+        }
+        
+    }
+    
+    /**
+     * Orders the files of a range of parts, dividing the range in two until it
+     * holds a single part
+     */
+    private static class OrderAction extends RecursiveAction {
+        
+        private final static long serialVersionUID = 1L;
+        
+        private final List<NZB> parts;
+        private final int from;
+        private final int to;
+        private final FilePriority priority;
+
+        public OrderAction(List<NZB> parts, int from, int to, FilePriority priority) {
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+            this.priority = priority;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= 1) {
+                order(parts, from, to, priority);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new OrderAction(parts, from, mid, priority), new OrderAction(parts, mid, to, priority));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.api;
+
+import java.util.List;
+import nzbsplit.nzb.NZB;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * The result of splitting an NZB using one or more split strategies. The
+ * result of each strategy is identified by its index in the list of strategies.
+ * @author Sam Malone
+ */
+public class SplitResult {
+    
+    private final NZB source;
+    private final List<SplitStrategy> strategies;
+    private final List<List<NZB>> parts;
+    private final List<Exception> errors;
+    
+    /**
+     * Creates a new instance of SplitResult
+     * @param source NZB that was split
+     * @param strategies split strategies
+     * @param parts NZB parts of each strategy or null if the strategy failed
+     * @param errors error of each strategy or null if the strategy succeeded
+     */
+    SplitResult(NZB source, List<SplitStrategy> strategies, List<List<NZB>> parts, List<Exception> errors) {
+        this.source = source;
+        this.strategies = strategies;
+        this.parts = parts;
+        this.errors = errors;
+    }
+    
+    /**
+     * Get the NZB that was split
+     * @return NZB
+     */
+    public NZB getSource() {
+        return source;
+    }
+    
+    /**
+     * Get the split strategies
+     * @return list of split strategies
+     */
+    public List<SplitStrategy> getStrategies() {
+        return strategies;
+    }
+    
+    /**
+     * Get the NZB parts of the strategy at the given index
+     * @param index index of the strategy
+     * @return NZB parts or null if the strategy failed
+     */
+    public List<NZB> getParts(int index) {
+        return parts.get(index);
+    }
+    
+    /**
+     * Check if the strategy at the given index failed
+     * @param index index of the strategy
+     * @return true if the strategy failed, false otherwise
+     */
+    public boolean isFailed(int index) {
+        return errors.get(index) != null;
+    }
+    
+    /**
+     * Get the error of the strategy at the given index
+     * @param index index of the strategy
+     * @return error or null if the strategy succeeded
+     */
+    public Exception getError(int index) {
+        return errors.get(index);
+    }
+    
+    /**
+     * Get the total number of parts of every successful strategy
+     * @return number of parts
+     */
+    public int getPartCount() {
+        int count = 0;
+        for(List<NZB> list : parts) {
+            count += list == null ? 0 : list.size();
+        }
+        return count;
+    }
+    
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import nzbsplit.NZBWriter;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A PartSink that writes each NZB part as XML to a stream opened by an
+ * {@link OutputStreamFactory}.
+ * @author Sam Malone
+ */
+public class StreamPartSink implements PartSink {
+    
+    private final OutputStreamFactory factory;
+    private final NZBWriter nzbWriter;
+    
+    /**
+     * Creates a new instance of StreamPartSink
+     * @param factory factory that opens the stream of each part
+     */
+    public StreamPartSink(OutputStreamFactory factory) {
+        this.factory = factory;
+        this.nzbWriter = new NZBWriter(false);
+    }
+
+    @Override
+    public void accept(String planName, int partNo, NZB part) throws IOException {
+        try (OutputStream out = factory.open(planName, partNo)) {
+            nzbWriter.write(part, out);
+        }
+    }
+    
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.cache;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import nzbsplit.FileSize;
+
+/**
+ * Cache of parsed NZBs keyed by a hash of the NZB file content, so an NZB that
+ * is split again (a re-grab, a retry or a different split size) does not have
+ * to be parsed again. Each NZB is cached in its compact binary form (.nzbx),
+ * which is much smaller than the parsed NZB and loads without parsing any XML.
+ * <p>
+ * Entries are held in memory up to a byte budget and the least recently used
+ * entries are evicted first. An optional disk tier stores every entry as an
+ * .nzbx file in a directory with its own byte budget, so entries survive
+ * eviction from memory and restarts. A cache can be shared by many threads.
+ * @author Sam Malone
+ */
+public class ParseCache {
+    
+    private final static String EXTENSION = ".nzbx";
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final static ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+    
+    private final long maxMemoryBytes;
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    
+    private Path diskDir = null;
+    private long maxDiskBytes = 0;
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes = 0;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    
+    /**
+     * Creates a new ParseCache that holds at most the given number of bytes
+     * of cached NZBs in memory
+     * @param maxMemoryBytes memory budget in bytes
+     */
+    public ParseCache(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+    
+    /**
+     * Store the cached NZBs in the given directory as well as in memory. The
+     * existing entries of the directory are loaded, least recently used first
+     * by modification time, and evicted if they exceed the budget.
+     * @param dir directory to store the cached NZBs in
+     * @param maxBytes disk budget in bytes
+     * @throws IOException if unable to list the directory
+     */
+    public void setDiskTier(Path dir, long maxBytes) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for(Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, new Comparator<Path>() {
+            @Override
+            public int compare(Path p1, Path p2) {
+                try {
+                    return Files.getLastModifiedTime(p1).compareTo(Files.getLastModifiedTime(p2));
+                } catch (IOException ex) {
+                    return 0;
+                }
+            }
+        });
+        synchronized(disk) {
+            diskDir = dir;
+            maxDiskBytes = maxBytes;
+            for(Path entry : entries) {
+                String name = entry.getFileName().toString();
+                long size = Files.size(entry);
+                disk.put(name.substring(0, name.length() - EXTENSION.length()), size);
+                diskBytes += size;
+            }
+            evictDisk();
+        }
+    }
+    
+    /**
+     * Get the hash of the given NZB file content that is used as its key
+     * @param content NZB file content
+     * @param length length of the content in bytes
+     * @return hex encoded hash of the content
+     */
+    public static String hash(byte[] content, int length) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(content, 0, length);
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+    
+    /**
+     * Get the cached NZB with the given key. An entry found on disk is moved
+     * into memory.
+     * @param key content hash
+     * @return cached NZB in its binary form (.nzbx) or null if not cached
+     */
+    public byte[] get(String key) {
+        synchronized(memory) {
+            byte[] nzbx = memory.get(key);
+            if(nzbx != null) {
+                hits.incrementAndGet();
+                return nzbx;
+            }
+        }
+        byte[] nzbx = readDisk(key);
+        if(nzbx == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        diskHits.incrementAndGet();
+        putMemory(key, nzbx);
+        return nzbx;
+    }
+    
+    /**
+     * Cache the given NZB under the given key
+     * @param key content hash
+     * @param nzbx NZB in its binary form (.nzbx)
+     */
+    public void put(String key, byte[] nzbx) {
+        putMemory(key, nzbx);
+        writeDisk(key, nzbx);
+    }
+    
+    /**
+     * Put the given entry in memory and evict the least recently used entries
+     * until the memory budget is met. Entries larger than the budget are not held.
+     * @param key content hash
+     * @param nzbx NZB in its binary form (.nzbx)
+     */
+    private void putMemory(String key, byte[] nzbx) {
+        if(nzbx.length > maxMemoryBytes) {
+            return;
+        }
+        synchronized(memory) {
+            byte[] previous = memory.put(key, nzbx);
+            memoryBytes += nzbx.length - (previous == null ? 0 : previous.length);
+            Iterator<byte[]> it = memory.values().iterator();
+            while(memoryBytes > maxMemoryBytes && it.hasNext()) {
+                memoryBytes -= it.next().length;
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Read the entry with the given key from the disk tier
+     * @param key content hash
+     * @return NZB in its binary form or null if the disk tier is not set or
+     * does not contain the entry
+     */
+    private byte[] readDisk(String key) {
+        synchronized(disk) {
+            if(diskDir == null || disk.get(key) == null) {
+                return null;
+            }
+            Path entry = diskDir.resolve(key + EXTENSION);
+            try {
+                byte[] nzbx = Files.readAllBytes(entry);
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                return nzbx;
+            } catch (IOException ex) {
+                diskBytes -= disk.remove(key);
+                return null;
+            }
+        }
+    }
+    
+    /**
+     * Write the entry to the disk tier, if set, and evict the least recently
+     * used entries until the disk budget is met. A failure to write is ignored
+     * as the entry is still held in memory.
+     * @param key content hash
+     * @param nzbx NZB in its binary form (.nzbx)
+     */
+    private void writeDisk(String key, byte[] nzbx) {
+        synchronized(disk) {
+            if(diskDir == null || nzbx.length > maxDiskBytes || disk.containsKey(key)) {
+                return;
+            }
+            try {
+                Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+                Files.write(tmp, nzbx);
+                Files.move(tmp, diskDir.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                return;
+            }
+            disk.put(key, (long) nzbx.length);
+            diskBytes += nzbx.length;
+            evictDisk();
+        }
+    }
+    
+    /**
+     * Delete the least recently used entries of the disk tier until the disk
+     * budget is met. Must be called whilst holding the disk lock.
+     */
+    private void evictDisk() {
+        Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+        while(diskBytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            try {
+                Files.deleteIfExists(diskDir.resolve(entry.getKey() + EXTENSION));
+            } catch (IOException ex) {
+                // the entry is forgotten either way
+            }
+            diskBytes -= entry.getValue();
+            it.remove();
+            diskEvictions.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Get the number of lookups that found the NZB in memory or on disk
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * Get the number of lookups that found the NZB on disk but not in memory
+     * @return number of disk tier hits
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+    
+    /**
+     * Get the number of lookups that did not find the NZB
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    /**
+     * Get the number of entries evicted from memory
+     * @return number of memory evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    /**
+     * Get the number of entries evicted from the disk tier
+     * @return number of disk evictions
+     */
+    public long getDiskEvictions() {
+        return diskEvictions.get();
+    }
+    
+    /**
+     * Get the number of bytes of cached NZBs held in memory
+     * @return bytes held in memory
+     */
+    public long getMemoryBytes() {
+        synchronized(memory) {
+            return memoryBytes;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Parse cache: %d hits (%d from disk), %d misses, %d evictions (%d from disk), %s of %s in memory",
+            getHits(), getDiskHits(), getMisses(), getEvictions(), getDiskEvictions(), FileSize.format(getMemoryBytes()), FileSize.format(maxMemoryBytes));
+    }
+    
+}
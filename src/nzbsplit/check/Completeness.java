@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.check;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+import nzbsplit.nzb.SegmentElement;
+
+/**
+ * Completeness of an NZB measured against the counters posters put in the
+ * subject of each file: the [x/y] file counter gives the position of the file
+ * in its set of y files and the last (a/b) segment counter gives the number of
+ * segments b the file was posted in. The files found for each set and the
+ * distinct segment numbers from 1 to b found for each file are compared with
+ * the counters, so incomplete NZBs can be detected before anything is
+ * downloaded. Files without counters are assumed to be complete.
+ * <p>
+ * The subjects are scanned without regular expressions and the segments are
+ * counted in a single pass as they are already sorted by the parser, so the
+ * analysis takes a fraction of the time taken to parse the NZB. As the
+ * counters come from untrusted subjects, the numbers found are only held in a
+ * bit set when the counter is no larger than the number of files or segments
+ * that could be found, so a counter such as [1/999999999] does not allocate
+ * memory for every number up to it.
+ * @author Sam Malone
+ */
+public class Completeness {
+    
+    private final NZB nzb;
+    private final int[] fileSets;
+    private final int[] expectedSegments;
+    private final int[] presentSegments;
+    private final List<String> setNames = new ArrayList<>();
+    private final List<PositionSet> setFiles = new ArrayList<>();
+    private final List<Integer> setSizes = new ArrayList<>();
+    private final BitSet incompleteSets = new BitSet();
+    private long totalExpectedSegments = 0;
+    private long totalPresentSegments = 0;
+    private int incompleteFiles = 0;
+    
+    /**
+     * Creates a new Completeness
+     * @param nzb NZB that is analysed
+     */
+    private Completeness(NZB nzb) {
+        this.nzb = nzb;
+        int count = nzb.getFiles().size();
+        this.fileSets = new int[count];
+        this.expectedSegments = new int[count];
+        this.presentSegments = new int[count];
+    }
+    
+    /**
+     * Analyse the completeness of the given NZB
+     * @param nzb parsed NZB
+     * @return Completeness
+     */
+    public static Completeness analyze(NZB nzb) {
+        final Completeness completeness = new Completeness(nzb);
+        final Map<String, Integer> sets = new HashMap<>();
+        final List<FileElement> files = nzb.getFiles();
+        for(int i = 0; i < files.size(); i++) {
+            FileElement file = files.get(i);
+            String subject = file.getSubject() == null ? "" : file.getSubject();
+            completeness.fileSets[i] = -1;
+            int fileCounterIndex = findCounterIndex(subject, '[', ']', false);
+            if(fileCounterIndex != -1) {
+                long fileCounter = parseCounter(subject, fileCounterIndex, ']');
+                int position = (int) (fileCounter >>> 32);
+                int size = (int) fileCounter;
+                String prefix = subject.substring(0, fileCounterIndex);
+                String name = prefix.trim() + '/' + size;
+                String key = file.getPoster() + '\n' + removeQuoted(prefix) + '/' + size;
+                Integer set = sets.get(key);
+                if(set == null) {
+                    set = completeness.setNames.size();
+                    sets.put(key, set);
+                    completeness.setNames.add(name);
+                    completeness.setFiles.add(new PositionSet(size, files.size()));
+                    completeness.setSizes.add(size);
+                }
+                if(position >= 1 && position <= size) {
+                    completeness.setFiles.get(set).add(position);
+                }
+                completeness.fileSets[i] = set;
+            }
+            long segmentCounter = findCounter(subject, '(', ')', true);
+            List<SegmentElement> segments = file.getSegments();
+            if(segmentCounter == -1 || (segments.isEmpty() && file.getFileSize() > 0)) {
+                completeness.expectedSegments[i] = segments.size();
+                completeness.presentSegments[i] = segments.size();
+            } else {
+                int expected = (int) segmentCounter;
+                completeness.expectedSegments[i] = expected;
+                completeness.presentSegments[i] = countSegments(segments, expected);
+            }
+            completeness.totalExpectedSegments += completeness.expectedSegments[i];
+            completeness.totalPresentSegments += completeness.presentSegments[i];
+            if(completeness.presentSegments[i] < completeness.expectedSegments[i]) {
+                completeness.incompleteFiles++;
+                if(completeness.fileSets[i] != -1) {
+                    completeness.incompleteSets.set(completeness.fileSets[i]);
+                }
+            }
+        }
+        for(int set = 0; set < completeness.setNames.size(); set++) {
+            if(completeness.setFiles.get(set).size() < completeness.setSizes.get(set)) {
+                completeness.incompleteSets.set(set);
+            }
+        }
+        return completeness;
+    }
+    
+    /**
+     * Find a counter of the form [x/y] in the subject, where [ and ] are the
+     * given open and close characters
+     * @param subject subject
+     * @param open open character
+     * @param close close character
+     * @param isLast true to find the last counter, false to find the first
+     * @return x in the high 32 bits and y in the low 32 bits, or -1 if no
+     * counter was found or y is not positive
+     */
+    static long findCounter(String subject, char open, char close, boolean isLast) {
+        int from = findCounterIndex(subject, open, close, isLast);
+        return from == -1 ? -1 : parseCounter(subject, from, close);
+    }
+    
+    /**
+     * Find the index of a counter of the form [x/y] in the subject, where [
+     * and ] are the given open and close characters
+     * @param subject subject
+     * @param open open character
+     * @param close close character
+     * @param isLast true to find the last counter, false to find the first
+     * @return index of the open character of the counter, or -1 if no counter
+     * was found or y is not positive
+     */
+    static int findCounterIndex(String subject, char open, char close, boolean isLast) {
+        int from = isLast ? subject.lastIndexOf(open) : subject.indexOf(open);
+        while(from != -1) {
+            if(parseCounter(subject, from, close) != -1) {
+                return from;
+            }
+            from = isLast ? (from == 0 ? -1 : subject.lastIndexOf(open, from - 1)) : subject.indexOf(open, from + 1);
+        }
+        return -1;
+    }
+    
+    /**
+     * Parse a counter of the form [x/y] starting at the given open character
+     * @param subject subject
+     * @param from index of the open character
+     * @param close close character
+     * @return x in the high 32 bits and y in the low 32 bits, or -1 if there
+     * is no counter at the index or y is not positive
+     */
+    private static long parseCounter(String subject, int from, char close) {
+        int i = from + 1;
+        long x = 0, y = 0;
+        int digits = 0;
+        while(i < subject.length() && subject.charAt(i) >= '0' && subject.charAt(i) <= '9' && digits < 9) {
+            x = x * 10 + subject.charAt(i++) - '0';
+            digits++;
+        }
+        if(digits > 0 && i < subject.length() && subject.charAt(i) == '/') {
+            i++;
+            digits = 0;
+            while(i < subject.length() && subject.charAt(i) >= '0' && subject.charAt(i) <= '9' && digits < 9) {
+                y = y * 10 + subject.charAt(i++) - '0';
+                digits++;
+            }
+            if(digits > 0 && y > 0 && i < subject.length() && subject.charAt(i) == close) {
+                return x << 32 | y;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Remove the quoted parts of the text before a file counter, as posters
+     * quote the name of each file there, e.g. "x.part01.rar" [01/30], which
+     * would otherwise give every file of a set its own set
+     * @param prefix text before the file counter
+     * @return text with the quoted parts removed and trimmed
+     */
+    private static String removeQuoted(String prefix) {
+        if(prefix.indexOf('"') == -1) {
+            return prefix.trim();
+        }
+        StringBuilder sb = new StringBuilder(prefix.length());
+        boolean quoted = false;
+        for(int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if(c == '"') {
+                quoted = !quoted;
+            } else if(!quoted) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
+    }
+    
+    /**
+     * Count the distinct segment numbers from 1 to the expected number of
+     * segments. Sorted segments are counted in a single pass.
+     * @param segments segments of a file
+     * @param expected expected number of segments
+     * @return number of distinct segment numbers present
+     */
+    private static int countSegments(List<SegmentElement> segments, int expected) {
+        int count = 0;
+        int previous = 0;
+        for(int i = 0; i < segments.size(); i++) {
+            int number = segments.get(i).getSegmentNumber();
+            if(number < previous) {
+                PositionSet present = new PositionSet(expected, segments.size());
+                for(SegmentElement segment : segments) {
+                    if(segment.getSegmentNumber() >= 1 && segment.getSegmentNumber() <= expected) {
+                        present.add(segment.getSegmentNumber());
+                    }
+                }
+                return present.size();
+            }
+            if(number != previous && number >= 1 && number <= expected) {
+                count++;
+            }
+            previous = number;
+        }
+        return count;
+    }
+    
+    /**
+     * Check if every file and segment given by the counters is present
+     * @return true if complete, false otherwise
+     */
+    public boolean isComplete() {
+        return incompleteFiles == 0 && incompleteSets.isEmpty();
+    }
+    
+    /**
+     * Get the number of segments expected by the segment counters
+     * @return number of segments expected
+     */
+    public long getExpectedSegments() {
+        return totalExpectedSegments;
+    }
+    
+    /**
+     * Get the number of expected segments that are present
+     * @return number of segments present
+     */
+    public long getPresentSegments() {
+        return totalPresentSegments;
+    }
+    
+    /**
+     * Get the number of files expected by the file counters, plus the files
+     * without a file counter
+     * @return number of files expected
+     */
+    public int getExpectedFiles() {
+        int expected = 0;
+        for(int set = 0; set < setSizes.size(); set++) {
+            expected += setSizes.get(set);
+        }
+        for(int fileSet : fileSets) {
+            if(fileSet == -1) {
+                expected++;
+            }
+        }
+        return expected;
+    }
+    
+    /**
+     * Get the number of expected files that are present
+     * @return number of files present
+     */
+    public int getPresentFiles() {
+        int present = 0;
+        for(PositionSet files : setFiles) {
+            present += files.size();
+        }
+        for(int fileSet : fileSets) {
+            if(fileSet == -1) {
+                present++;
+            }
+        }
+        return present;
+    }
+    
+    /**
+     * Get the number of files with missing segments
+     * @return number of incomplete files
+     */
+    public int getIncompleteFiles() {
+        return incompleteFiles;
+    }
+    
+    /**
+     * Get the subjects of the incomplete files with the number of segments
+     * present and expected e.g. "12/26 input.part01.rar yEnc (1/26)"
+     * @return list of incomplete files
+     */
+    public List<String> getIncompleteFileDescriptions() {
+        List<String> list = new ArrayList<>(incompleteFiles);
+        List<FileElement> files = nzb.getFiles();
+        for(int i = 0; i < files.size(); i++) {
+            if(presentSegments[i] < expectedSegments[i]) {
+                list.add(String.format("%d/%d segments: %s", presentSegments[i], expectedSegments[i], files.get(i).getSubject()));
+            }
+        }
+        return list;
+    }
+    
+    /**
+     * Get the sets that are missing files with the missing file numbers e.g.
+     * "Show/3000 is missing files 17, 2011"
+     * @return list of incomplete sets
+     */
+    public List<String> getIncompleteSetDescriptions() {
+        List<String> list = new ArrayList<>();
+        for(int set = incompleteSets.nextSetBit(0); set >= 0; set = incompleteSets.nextSetBit(set + 1)) {
+            PositionSet files = setFiles.get(set);
+            int size = setSizes.get(set);
+            if(files.size() == size) {
+                list.add(String.format("%s has incomplete files", setNames.get(set)));
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            int listed = 0;
+            for(int missing = 1; missing <= size; missing++) {
+                if(files.contains(missing)) {
+                    continue;
+                }
+                if(listed++ == 10) {
+                    sb.append(", ...");
+                    break;
+                }
+                sb.append(listed == 1 ? "" : ", ").append(missing);
+            }
+            list.add(String.format("%s is missing %d files: %s", setNames.get(set), size - files.size(), sb));
+        }
+        return list;
+    }
+    
+    /**
+     * Get a copy of the NZB without the files of incomplete sets and the
+     * incomplete files that are not in a set
+     * @return NZB of the complete sets and files
+     */
+    public NZB getCompleteNZB() {
+        NZB complete = new NZB(nzb.getMetadata());
+        complete.addSkippedSegments(nzb.getSkippedSegments(), nzb.getSkippedBytes());
+        complete.addFilteredFiles(nzb.getFilteredFiles(), nzb.getFilteredBytes());
+        List<FileElement> files = nzb.getFiles();
+        for(int i = 0; i < files.size(); i++) {
+            boolean isIncomplete = fileSets[i] == -1 ? presentSegments[i] < expectedSegments[i] : incompleteSets.get(fileSets[i]);
+            if(!isIncomplete) {
+                complete.addFile(files.get(i));
+            }
+        }
+        return complete;
+    }
+    
+    /**
+     * A set of the numbers from 1 to a counter that have been found. The
+     * numbers are held in a bit set unless the counter is larger than the
+     * number of values that could be found, in which case only the numbers
+     * found are held.
+     */
+    private static class PositionSet {
+        
+        private final BitSet bits;
+        private final Set<Integer> sparse;
+        
+        /**
+         * Creates a new PositionSet
+         * @param counter largest number of the set
+         * @param limit most numbers that can be added
+         */
+        private PositionSet(int counter, int limit) {
+            this.bits = counter <= limit ? new BitSet(counter + 1) : null;
+            this.sparse = bits == null ? new HashSet<Integer>() : null;
+        }
+        
+        private void add(int number) {
+            if(bits == null) {
+                sparse.add(number);
+            } else {
+                bits.set(number);
+            }
+        }
+        
+        private boolean contains(int number) {
+            return bits == null ? sparse.contains(number) : bits.get(number);
+        }
+        
+        private int size() {
+            return bits == null ? sparse.size() : bits.cardinality();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A CharTrie holds a set of strings and finds whether one of them is a prefix
+ * (or, if built reversed, a suffix) of a given string in a single pass over
+ * the given string, however many strings the trie holds.
+ * @author Sam Malone
+ */
+class CharTrie {
+    
+    private final Node root = new Node();
+    private final boolean reverse;
+    private boolean isEmpty = true;
+    
+    /**
+     * Creates a new CharTrie
+     * @param reverse true to match suffixes, false to match prefixes
+     */
+    public CharTrie(boolean reverse) {
+        this.reverse = reverse;
+    }
+    
+    /**
+     * Add the given string to the trie
+     * @param s string to add
+     */
+    public void add(String s) {
+        Node node = root;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(reverse ? s.length() - 1 - i : i);
+            Node child = node.children.get(c);
+            if(child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.isEnd = true;
+        isEmpty = false;
+    }
+    
+    /**
+     * Check if one of the strings in the trie is a prefix (or suffix if
+     * reversed) of the given string
+     * @param s string to check
+     * @return true if a string in the trie matches, false otherwise
+     */
+    public boolean matches(String s) {
+        if(isEmpty) {
+            return false;
+        }
+        Node node = root;
+        for(int i = 0; i < s.length(); i++) {
+            if(node.isEnd) {
+                return true;
+            }
+            node = node.children.get(s.charAt(reverse ? s.length() - 1 - i : i));
+            if(node == null) {
+                return false;
+            }
+        }
+        return node.isEnd;
+    }
+    
+    /**
+     * A node of the trie
+     */
+    private static class Node {
+        
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private boolean isEnd = false;
+        
+    }
+    
+}
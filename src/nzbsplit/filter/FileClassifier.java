@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import nzbsplit.exception.ParseException;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A FileClassifier partitions the files of an NZB into named classes by the
+ * age of their post and their groups, so each class can be split on its own
+ * and its parts routed to the provider that serves it best e.g. old posts to
+ * a block account and new posts to an unlimited account.
+ * <p>
+ * A class is defined as NAME:RULE,RULE... and a file belongs to the first
+ * class whose rules all match it. Files that match no class belong to
+ * {@link #DEFAULT_CLASS}. A rule is one of:
+ * <pre>
+ * age&gt;AGE       posted more than AGE ago e.g. age&gt;1000d
+ * age&lt;AGE       posted less than AGE ago e.g. age&lt;12h
+ * group:GLOB     any of the groups of the file matches GLOB
+ * *              every file
+ * </pre>
+ * AGE is a number of hours (h), days (d) or weeks (w). A classifier is read
+ * only once its classes are added so it can be shared by many threads.
+ * @author Sam Malone
+ */
+public class FileClassifier {
+    
+    /**
+     * Class of the files that match no other class
+     */
+    public final static String DEFAULT_CLASS = "other";
+    
+    private final static String AGE_RULE = "age";
+    private final static String GROUP_RULE = "group:";
+    private final static String ANY_RULE = "*";
+    
+    private final List<String> names = new ArrayList<>();
+    private final List<List<Rule>> classes = new ArrayList<>();
+    
+    /**
+     * Parse and add a class definition e.g. block:age&gt;1000d
+     * @param definition class definition NAME:RULE,RULE...
+     * @throws ParseException if unable to parse the definition
+     */
+    public void addClass(String definition) throws ParseException {
+        int colon = definition.indexOf(':');
+        if(colon < 1 || colon == definition.length() - 1) {
+            throw new ParseException("Unable to determine the provider class from " + definition + ". Use <NAME>:<RULE>[,<RULE>...]");
+        }
+        String name = definition.substring(0, colon);
+        if(name.indexOf('/') != -1 || name.indexOf('\\') != -1) {
+            throw new ParseException("The provider class " + name + " contains a path separator. Class names are used in the names of the parts");
+        }
+        if(names.contains(name) || name.equals(DEFAULT_CLASS)) {
+            throw new ParseException("The provider class " + name + " was given more than once");
+        }
+        List<Rule> rules = new ArrayList<>();
+        for(String rule : definition.substring(colon + 1).split(",")) {
+            rules.add(parseRule(rule));
+        }
+        names.add(name);
+        classes.add(rules);
+    }
+    
+    /**
+     * Parse a single rule
+     * @param rule rule
+     * @return Rule
+     * @throws ParseException if unable to parse the rule
+     */
+    private static Rule parseRule(String rule) throws ParseException {
+        if(rule.equals(ANY_RULE)) {
+            return new Rule(Long.MIN_VALUE, Long.MAX_VALUE, null);
+        }
+        if(rule.startsWith(GROUP_RULE)) {
+            NameMatcher groups = new NameMatcher();
+            groups.addGlob(rule.substring(GROUP_RULE.length()));
+            return new Rule(Long.MIN_VALUE, Long.MAX_VALUE, groups);
+        }
+        if(rule.startsWith(AGE_RULE) && rule.length() > AGE_RULE.length() + 1) {
+            char op = rule.charAt(AGE_RULE.length());
+            long seconds = parseAge(rule.substring(AGE_RULE.length() + 1));
+            if(op == '>') {
+                return new Rule(seconds, Long.MAX_VALUE, null);
+            }
+            if(op == '<') {
+                return new Rule(Long.MIN_VALUE, seconds, null);
+            }
+        }
+        throw new ParseException("Unknown provider rule " + rule + ". Use age>AGE, age<AGE, group:GLOB or *");
+    }
+    
+    /**
+     * Parse an age e.g. 30d
+     * @param age number of hours (h), days (d) or weeks (w)
+     * @return age in seconds
+     * @throws ParseException if unable to parse the age or the age is negative
+     * or too large to be held in seconds
+     */
+    private static long parseAge(String age) throws ParseException {
+        long unit;
+        switch(age.isEmpty() ? ' ' : Character.toLowerCase(age.charAt(age.length() - 1))) {
+            case 'h':
+                unit = 3600;
+                break;
+            case 'd':
+                unit = 86400;
+                break;
+            case 'w':
+                unit = 7 * 86400;
+                break;
+            default:
+                throw new ParseException("Unable to determine the age from " + age + ". Use e.g. 12h, 30d or 4w");
+        }
+        try {
+            long value = Long.parseLong(age.substring(0, age.length() - 1));
+            if(value < 0 || value > Long.MAX_VALUE / unit) {
+                throw new ParseException("The age " + age + " is out of range");
+            }
+            return value * unit;
+        } catch(NumberFormatException ex) {
+            throw new ParseException("Unable to determine the age from " + age + ". Use e.g. 12h, 30d or 4w");
+        }
+    }
+    
+    /**
+     * Check if no classes have been added
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return classes.isEmpty();
+    }
+    
+    /**
+     * Get the class of the given file
+     * @param file FileElement
+     * @param now current time in seconds since the epoch, which the age of
+     * the post is measured from
+     * @return class name or {@link #DEFAULT_CLASS} if no class matches
+     */
+    public String classify(FileElement file, long now) {
+        for(int i = 0; i < classes.size(); i++) {
+            boolean isMatch = true;
+            for(Rule rule : classes.get(i)) {
+                if(!rule.matches(file, now)) {
+                    isMatch = false;
+                    break;
+                }
+            }
+            if(isMatch) {
+                return names.get(i);
+            }
+        }
+        return DEFAULT_CLASS;
+    }
+    
+    /**
+     * Partition the files of the given NZB into an NZB per class. Classes
+     * without files are left out. The classes are in the order they were
+     * added, followed by {@link #DEFAULT_CLASS}.
+     * @param nzb NZB to partition
+     * @return map of class name to NZB
+     */
+    public Map<String, NZB> partition(NZB nzb) {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, NZB> byClass = new LinkedHashMap<>();
+        for(String name : names) {
+            byClass.put(name, null);
+        }
+        byClass.put(DEFAULT_CLASS, null);
+        for(FileElement file : nzb.getFiles()) {
+            String name = classify(file, now);
+            NZB part = byClass.get(name);
+            if(part == null) {
+                part = new NZB(nzb.getMetadata());
+                byClass.put(name, part);
+            }
+            part.addFile(file);
+        }
+        Map<String, NZB> partitions = new LinkedHashMap<>();
+        for(Map.Entry<String, NZB> entry : byClass.entrySet()) {
+            if(entry.getValue() != null) {
+                partitions.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return partitions;
+    }
+    
+    /**
+     * A rule that matches files posted within an age range and, optionally,
+     * to a group that matches a glob
+     */
+    private static class Rule {
+        
+        private final long minAge;
+        private final long maxAge;
+        private final NameMatcher groups;
+
+        /**
+         * Creates a new Rule
+         * @param minAge files must be older than this many seconds
+         * @param maxAge files must be newer than this many seconds
+         * @param groups group matcher or null to match any group
+         */
+        public Rule(long minAge, long maxAge, NameMatcher groups) {
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            this.groups = groups;
+        }
+        
+        /**
+         * Check if the given file matches the rule
+         * @param file FileElement
+         * @param now current time in seconds since the epoch
+         * @return true if the file matches, false otherwise
+         */
+        public boolean matches(FileElement file, long now) {
+            long age = now - file.getDate();
+            if(age <= minAge || age >= maxAge) {
+                return false;
+            }
+            if(groups == null) {
+                return true;
+            }
+            for(String group : file.getUsenetGroups()) {
+                if(groups.matches(group)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+    }
+    
+}
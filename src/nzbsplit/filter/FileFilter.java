@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import nzbsplit.FileSize;
+import nzbsplit.exception.ParseException;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A FileFilter drops the files of an NZB that should not be downloaded e.g.
+ * samples, .nfo files or excess par2 recovery volumes, before the NZB is
+ * split so the parts are balanced using only the files that are kept.
+ * <p>
+ * A file is dropped if it matches any exclude rule, or if there are include
+ * rules and it matches none of them. Rules are compiled when added. A rule is
+ * one of:
+ * <pre>
+ * GLOB              file name glob e.g. *.nfo or *sample*
+ * re:REGEX          regular expression found in the file name
+ * size:MIN-MAX      file size range e.g. size:-10MB or size:1GB-
+ * poster:GLOB       poster glob
+ * group:GLOB        glob of any of the groups of the file
+ * </pre>
+ * The file name is taken from the quoted part of the subject if there is
+ * one, otherwise the whole subject is used. A filter is read only once its
+ * rules are added so it can be shared by many threads.
+ * @author Sam Malone
+ */
+public class FileFilter {
+    
+    private final static String REGEX_RULE = "re:";
+    private final static String SIZE_RULE = "size:";
+    private final static String POSTER_RULE = "poster:";
+    private final static String GROUP_RULE = "group:";
+    
+    private final Rules includes = new Rules();
+    private final Rules excludes = new Rules();
+    
+    /**
+     * Add a rule that files must match to be kept
+     * @param rule rule e.g. *.rar
+     * @throws ParseException if unable to parse the rule
+     */
+    public void include(String rule) throws ParseException {
+        includes.add(rule);
+    }
+    
+    /**
+     * Add a rule that drops the files that match it
+     * @param rule rule e.g. *.nfo
+     * @throws ParseException if unable to parse the rule
+     */
+    public void exclude(String rule) throws ParseException {
+        excludes.add(rule);
+    }
+    
+    /**
+     * Check if any rules have been added
+     * @return true if there are no rules, false otherwise
+     */
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+    
+    /**
+     * Check if the given file should be kept
+     * @param file FileElement
+     * @return true if the file is kept, false if it is dropped
+     */
+    public boolean accept(FileElement file) {
+        if(excludes.matches(file)) {
+            return false;
+        }
+        return includes.isEmpty() || includes.matches(file);
+    }
+    
+    /**
+     * Get a copy of the given NZB without the files that are dropped. The
+     * number of dropped files and their size are added to the copy.
+     * @param nzb NZB to filter
+     * @return filtered NZB
+     */
+    public NZB filter(NZB nzb) {
+        NZB filtered = new NZB(nzb.getMetadata());
+        filtered.addSkippedSegments(nzb.getSkippedSegments(), nzb.getSkippedBytes());
+        filtered.addFilteredFiles(nzb.getFilteredFiles(), nzb.getFilteredBytes());
+        for(FileElement file : nzb.getFiles()) {
+            if(accept(file)) {
+                filtered.addFile(file);
+            } else {
+                filtered.addFilteredFiles(1, file.getFileSize());
+            }
+        }
+        return filtered;
+    }
+    
+    /**
+     * Get the file name from the subject of a file. This is the text between
+     * the first pair of quotes e.g. "input.rar" or the whole subject if it
+     * does not contain quotes.
+     * @param subject subject or null
+     * @return file name or null if the subject is null
+     */
+    public static String getFileName(String subject) {
+        if(subject == null) {
+            return null;
+        }
+        int start = subject.indexOf('"');
+        int end = start == -1 ? -1 : subject.indexOf('"', start + 1);
+        return end == -1 ? subject : subject.substring(start + 1, end);
+    }
+    
+    /**
+     * A compiled set of include or exclude rules
+     */
+    private static class Rules {
+        
+        private final NameMatcher names = new NameMatcher();
+        private final NameMatcher posters = new NameMatcher();
+        private final NameMatcher groups = new NameMatcher();
+        private final List<long[]> sizes = new ArrayList<>();
+        
+        /**
+         * Parse and add the given rule
+         * @param rule rule
+         * @throws ParseException if unable to parse the rule
+         */
+        public void add(String rule) throws ParseException {
+            if(rule.startsWith(REGEX_RULE)) {
+                names.addRegex(rule.substring(REGEX_RULE.length()));
+            } else if(rule.startsWith(SIZE_RULE)) {
+                sizes.add(parseSizeRange(rule.substring(SIZE_RULE.length())));
+            } else if(rule.startsWith(POSTER_RULE)) {
+                posters.addGlob(rule.substring(POSTER_RULE.length()));
+            } else if(rule.startsWith(GROUP_RULE)) {
+                groups.addGlob(rule.substring(GROUP_RULE.length()));
+            } else if(rule.isEmpty()) {
+                throw new ParseException("A filter rule cannot be empty");
+            } else {
+                names.addGlob(rule);
+            }
+        }
+        
+        /**
+         * Parse a size range e.g. 10MB-1GB, -10MB or 1GB-
+         * @param range size range
+         * @return minimum and maximum size in bytes
+         * @throws ParseException if unable to parse the range
+         */
+        private static long[] parseSizeRange(String range) throws ParseException {
+            int dash = range.indexOf('-');
+            if(dash == -1 || range.length() == 1) {
+                throw new ParseException("Unable to determine the size range from " + range + ". Use MIN-MAX, -MAX or MIN-");
+            }
+            long min = dash == 0 ? 0 : FileSize.parseBytes(range.substring(0, dash));
+            long max = dash == range.length() - 1 ? Long.MAX_VALUE : FileSize.parseBytes(range.substring(dash + 1));
+            return new long[] { min, max };
+        }
+        
+        /**
+         * Check if no rules have been added
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return names.isEmpty() && posters.isEmpty() && groups.isEmpty() && sizes.isEmpty();
+        }
+        
+        /**
+         * Check if the given file matches any of the rules
+         * @param file FileElement
+         * @return true if the file matches, false otherwise
+         */
+        public boolean matches(FileElement file) {
+            for(long[] size : sizes) {
+                if(file.getFileSize() >= size[0] && file.getFileSize() <= size[1]) {
+                    return true;
+                }
+            }
+            if(names.matches(getFileName(file.getSubject())) || posters.matches(file.getPoster())) {
+                return true;
+            }
+            if(!groups.isEmpty()) {
+                for(String group : file.getUsenetGroups()) {
+                    if(groups.matches(group)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+    }
+    
+}
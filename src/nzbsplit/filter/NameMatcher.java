@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.filter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import nzbsplit.exception.ParseException;
+
+/**
+ * A NameMatcher matches a name e.g. a file name, poster or group against a
+ * set of case insensitive glob patterns and regular expressions. Globs are
+ * compiled by shape so the common cases avoid regular expressions: exact
+ * names are looked up in a hash set, *.ext and prefix* globs are matched by
+ * a suffix or prefix trie and *text* globs by a substring search. Only globs
+ * with a * or ? in the middle and explicit regular expressions fall back to
+ * {@link Pattern}.
+ * @author Sam Malone
+ */
+class NameMatcher {
+    
+    private final Set<String> exact = new HashSet<>();
+    private final CharTrie suffixes = new CharTrie(true);
+    private final CharTrie prefixes = new CharTrie(false);
+    private final List<String> substrings = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private boolean isEmpty = true;
+    
+    /**
+     * Add a glob pattern where * matches any characters and ? matches any
+     * single character e.g. *.nfo or *sample*
+     * @param glob glob pattern
+     */
+    public void addGlob(String glob) {
+        isEmpty = false;
+        String lower = glob.toLowerCase(Locale.ENGLISH);
+        boolean isLeading = lower.startsWith("*");
+        boolean isTrailing = lower.length() > 1 && lower.endsWith("*");
+        String literal = lower.substring(isLeading ? 1 : 0, lower.length() - (isTrailing ? 1 : 0));
+        if(literal.indexOf('*') != -1 || literal.indexOf('?') != -1) {
+            patterns.add(Pattern.compile(toRegex(lower)));
+        } else if(isLeading && isTrailing) {
+            substrings.add(literal);
+        } else if(isLeading) {
+            suffixes.add(literal);
+        } else if(isTrailing) {
+            prefixes.add(literal);
+        } else {
+            exact.add(literal);
+        }
+    }
+    
+    /**
+     * Add a case insensitive regular expression that matches if it is found
+     * anywhere in the name
+     * @param regex regular expression
+     * @throws ParseException if the regular expression is invalid
+     */
+    public void addRegex(String regex) throws ParseException {
+        try {
+            patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+        } catch(PatternSyntaxException ex) {
+            throw new ParseException(String.format("Invalid regular expression %s: %s", regex, ex.getDescription()));
+        }
+        isEmpty = false;
+    }
+    
+    /**
+     * Convert a glob pattern to an anchored regular expression
+     * @param glob lower case glob pattern
+     * @return regular expression
+     */
+    private static String toRegex(String glob) {
+        StringBuilder sb = new StringBuilder();
+        int literalStart = 0;
+        for(int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if(c == '*' || c == '?') {
+                if(i > literalStart) {
+                    sb.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                sb.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if(literalStart < glob.length()) {
+            sb.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return "^" + sb + "$";
+    }
+    
+    /**
+     * Check if no patterns have been added
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return isEmpty;
+    }
+    
+    /**
+     * Check if the given name matches any of the patterns
+     * @param name name or null
+     * @return true if the name matches, false otherwise
+     */
+    public boolean matches(String name) {
+        if(isEmpty || name == null) {
+            return false;
+        }
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        if(exact.contains(lower) || suffixes.matches(lower) || prefixes.matches(lower)) {
+            return true;
+        }
+        for(String substring : substrings) {
+            if(lower.contains(substring)) {
+                return true;
+            }
+        }
+        for(Pattern pattern : patterns) {
+            if(pattern.matcher(lower).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.history;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import nzbsplit.HashUtil;
+
+/**
+ * Set of the message ids of articles that have already been downloaded, so an
+ * interrupted download can be resumed by only splitting the segments that
+ * remain. A history can hold tens of millions of message ids so it is kept off
+ * the heap: a Bloom filter rejects most message ids that are not in the
+ * history without a search, and a sorted index of 64 bit message id hashes
+ * confirms the rest with a binary search. The chance of a message id being
+ * wrongly treated as downloaded is that of a 64 bit hash collision.
+ * A history is read only so it can be shared by many threads.
+ * @author Sam Malone
+ */
+public class MessageIdHistory {
+    
+    private final static int BITS_PER_ID = 10;
+    private final static int HASHES = 7;
+    
+    private final ByteBuffer bloom;
+    private final long bloomBits;
+    private final LongBuffer index;
+    private final int size;
+    
+    /**
+     * Creates a new MessageIdHistory from the given sorted distinct hashes
+     * @param hashes sorted distinct message id hashes
+     * @param size number of hashes in the array
+     */
+    private MessageIdHistory(long[] hashes, int size) {
+        this.size = size;
+        this.bloomBits = Math.max(64, ((long) size * BITS_PER_ID + 63) / 64 * 64);
+        this.bloom = ByteBuffer.allocateDirect((int) (bloomBits / 8));
+        this.index = ByteBuffer.allocateDirect(Math.max(8, size * 8)).order(ByteOrder.nativeOrder()).asLongBuffer();
+        for(int i = 0; i < size; i++) {
+            index.put(i, hashes[i]);
+            for(int k = 0; k < HASHES; k++) {
+                long bit = getBit(hashes[i], k);
+                int b = (int) (bit >>> 3);
+                bloom.put(b, (byte) (bloom.get(b) | (1 << (bit & 7))));
+            }
+        }
+    }
+    
+    /**
+     * Load the history from a file that contains a message id on each line.
+     * Message ids may be enclosed in angle brackets. Blank lines are ignored.
+     * The message ids are counted before they are hashed so the hashes are
+     * sorted in an array of the exact size, which needs 8 bytes of heap per
+     * message id whilst loading.
+     * @param historyFile path to the history file
+     * @return MessageIdHistory
+     * @throws IOException if unable to read the history file
+     */
+    public static MessageIdHistory load(Path historyFile) throws IOException {
+        long[] hashes = new long[countMessageIds(historyFile)];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String messageId = normalize(line);
+                if(messageId.isEmpty()) {
+                    continue;
+                }
+                if(count == hashes.length) {
+                    throw new IOException(String.format("The history file %s changed whilst it was loaded", historyFile));
+                }
+                hashes[count++] = hash(messageId);
+            }
+        }
+        Arrays.sort(hashes, 0, count);
+        int distinct = 0;
+        for(int i = 0; i < count; i++) {
+            if(distinct == 0 || hashes[i] != hashes[distinct - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return new MessageIdHistory(hashes, distinct);
+    }
+    
+    /**
+     * Count the message ids in the history file
+     * @param historyFile path to the history file
+     * @return number of lines that are not blank
+     * @throws IOException if unable to read the history file
+     */
+    private static int countMessageIds(Path historyFile) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(!line.trim().isEmpty()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Check if the given message id is in the history
+     * @param messageId message id with or without angle brackets
+     * @return true if the article has already been downloaded, false otherwise
+     */
+    public boolean contains(String messageId) {
+        long hash = hash(normalize(messageId));
+        for(int k = 0; k < HASHES; k++) {
+            long bit = getBit(hash, k);
+            if((bloom.get((int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        int low = 0;
+        int high = size - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = index.get(mid);
+            if(value < hash) {
+                low = mid + 1;
+            } else if(value > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Get the number of distinct message ids in the history
+     * @return number of message ids
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Get the Bloom filter bit of the given hash for the given hash function
+     * using double hashing
+     * @param hash message id hash
+     * @param k hash function number
+     * @return bit index
+     */
+    private long getBit(long hash, int k) {
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = hash >>> 32;
+        return ((h1 + k * h2) & Long.MAX_VALUE) % bloomBits;
+    }
+    
+    /**
+     * Remove whitespace and the enclosing angle brackets from the message id
+     * @param messageId message id
+     * @return message id without angle brackets
+     */
+    private static String normalize(String messageId) {
+        String id = messageId.trim();
+        if(id.length() >= 2 && id.charAt(0) == '<' && id.charAt(id.length() - 1) == '>') {
+            id = id.substring(1, id.length() - 1);
+        }
+        return id;
+    }
+    
+    /**
+     * Get the 64 bit hash of the message id. The FNV-1a hash is mixed with the
+     * MurmurHash3 finalizer so both halves are suitable for the Bloom filter.
+     * @param messageId message id
+     * @return hash of the message id
+     */
+    private static long hash(String messageId) {
+        return HashUtil.mix(HashUtil.fnv1a(HashUtil.FNV_OFFSET_BASIS, messageId));
+    }
+    
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An OutputStream that writes data in the gzip format, compressing blocks of
+ * the data in parallel in the same way as pigz. The data is split into blocks
+ * of {@link #BLOCK_SIZE} bytes which are deflated independently and ended with
+ * a sync flush so that the compressed blocks can be concatenated into a single
+ * deflate stream. The result is a standard single member gzip file.
+ * @author Sam Malone
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+    
+    /**
+     * Number of bytes of data compressed by each task
+     */
+    public final static int BLOCK_SIZE = 128 * 1024;
+    
+    private final static int THREADS = Runtime.getRuntime().availableProcessors();
+    private final static ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "gzip");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final static ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+    private final static byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    
+    private final OutputStream out;
+    private final Deque<Future<byte[]>> pending;
+    private final CRC32 crc;
+    private byte[] block;
+    private int blockLength = 0;
+    private long size = 0;
+    private boolean closed = false;
+    
+    /**
+     * Creates a new instance of ParallelGZIPOutputStream
+     * @param out stream to write the compressed data to
+     * @throws IOException if unable to write the gzip header
+     */
+    public ParallelGZIPOutputStream(OutputStream out) throws IOException {
+        this.out = out;
+        this.pending = new ArrayDeque<>();
+        this.crc = new CRC32();
+        this.block = new byte[BLOCK_SIZE];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            int count = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if(blockLength == BLOCK_SIZE) {
+                submit(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            while(!pending.isEmpty()) {
+                writeOldest();
+            }
+            writeInt((int) crc.getValue());
+            writeInt((int) size);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Submit the current block to be compressed. At most two blocks per thread
+     * are compressed or waiting to be written at once.
+     * @param last true if this is the last block of the stream
+     * @throws IOException if unable to write a compressed block
+     */
+    private void submit(boolean last) throws IOException {
+        crc.update(block, 0, blockLength);
+        size += blockLength;
+        pending.add(EXECUTOR.submit(new CompressTask(block, blockLength, last)));
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+        while(pending.size() > THREADS * 2) {
+            writeOldest();
+        }
+    }
+    
+    /**
+     * Wait for the oldest block to be compressed then write it
+     * @throws IOException if unable to compress or write the block
+     */
+    private void writeOldest() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst compressing");
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+    
+    /**
+     * Write an integer in little endian order as used by the gzip trailer
+     * @param value integer to write
+     * @throws IOException if unable to write
+     */
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+    
+    /**
+     * Deflates a single block of data
+     */
+    private static class CompressTask implements Callable<byte[]> {
+        
+        private final byte[] data;
+        private final int length;
+        private final boolean last;
+        
+        public CompressTask(byte[] data, int length, boolean last) {
+            this.data = data;
+            this.length = length;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            final Deflater deflater = DEFLATERS.get();
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            final byte[] buffer = new byte[16 * 1024];
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            if(last) {
+                deflater.finish();
+                while(!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while(count == buffer.length);
+            }
+            return compressed.toByteArray();
+        }
+        
+    }
+    
+}
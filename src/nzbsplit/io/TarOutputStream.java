@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes files to a stream in the POSIX ustar format. Each file must be
+ * written in a single call as the size of a file is written before its data.
+ * The stream is written to in blocks of 512 bytes.
+ * @author Sam Malone
+ */
+public class TarOutputStream {
+    
+    private final static int BLOCK_SIZE = 512;
+    private final static int MAX_NAME_LENGTH = 100;
+    
+    private final OutputStream out;
+    private boolean finished = false;
+    
+    /**
+     * Creates a new instance of TarOutputStream
+     * @param out stream to write the tar archive to
+     */
+    public TarOutputStream(OutputStream out) {
+        this.out = out;
+    }
+    
+    /**
+     * Write a file to the archive
+     * @param name file name of at most 100 bytes
+     * @param data file contents
+     * @param length number of bytes of data to write
+     * @throws IOException if unable to write or the name is too long
+     */
+    public synchronized void putFile(String name, byte[] data, int length) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if(nameBytes.length > MAX_NAME_LENGTH) {
+            throw new IOException("The file name is too long for a tar archive: " + name);
+        }
+        final byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, length);
+        putOctal(header, 136, 12, System.currentTimeMillis() / 1000);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        long checksum = 0;
+        for(byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        out.write(header);
+        out.write(data, 0, length);
+        int padding = (BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE;
+        out.write(new byte[padding]);
+    }
+    
+    /**
+     * Write the end of archive marker and flush the stream. The stream is not closed.
+     * @throws IOException if unable to write
+     */
+    public synchronized void finish() throws IOException {
+        if(!finished) {
+            out.write(new byte[BLOCK_SIZE * 2]);
+            out.flush();
+            finished = true;
+        }
+    }
+    
+    /**
+     * Write a zero padded octal number followed by a NUL to the header field
+     * @param header header block
+     * @param offset offset of the field
+     * @param length length of the field including the NUL terminator
+     * @param value value to write
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        for(int i = 0; i < length - 1; i++) {
+            int index = octal.length() - (length - 1) + i;
+            header[offset + i] = (byte) (index < 0 ? '0' : octal.charAt(index));
+        }
+        header[offset + length - 1] = 0;
+    }
+    
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.memory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import nzbsplit.FileSize;
+
+/**
+ * Estimates the memory needed to split an NZB file from its size and a
+ * sampling pass over its start, and chooses how the NZB is split so that it
+ * fits in a memory budget. The first 1MB of the (decompressed) NZB is scanned
+ * for files, segments and the length of their message ids and the counts are
+ * extrapolated to the whole NZB. The size of a gzip compressed NZB is
+ * extrapolated from the compression ratio of the sample.
+ * <p>
+ * An NZB is split in one of three modes, the first that fits in the usable
+ * part of the budget:
+ * <ul>
+ * <li>{@link #MODE_MEMORY} - every segment is parsed into an object</li>
+ * <li>{@link #MODE_COMPACT} - the segments of each file are stored encoded
+ * in a byte array and decoded when the part is written</li>
+ * <li>{@link #MODE_STREAM} - only the file sizes are parsed and each part is
+ * copied from the NZB file by byte range, as sharded parts are</li>
+ * </ul>
+ * The costs are calibrated for a 64 bit JVM with compressed references.
+ * @author Sam Malone
+ */
+public class MemoryEstimate {
+    
+    public final static String MODE_MEMORY = "memory";
+    public final static String MODE_COMPACT = "compact";
+    public final static String MODE_STREAM = "stream";
+    
+    private final static int SAMPLE_SIZE = 1024 * 1024;
+    private final static int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Bytes used by a file without its segments: the file, its subject,
+     * poster and groups and its place in the NZB and in a part
+     */
+    private final static long FILE_BYTES = 400;
+    
+    /**
+     * Bytes used by a segment object, its message id string and its reference,
+     * not including the characters of the message id
+     */
+    private final static long SEGMENT_BYTES = 100;
+    
+    /**
+     * Bytes used by a compact segment: its varints and offset, not including
+     * the bytes of the message id
+     */
+    private final static long COMPACT_SEGMENT_BYTES = 8;
+    
+    /**
+     * Fraction of the budget that the parsed NZB may use. The rest is left for
+     * splitting, writing the parts and the garbage collector.
+     */
+    private final static double USABLE_FRACTION = 0.6;
+    
+    private final long size;
+    private final boolean isCompressed;
+    private final boolean isSampled;
+    private final long files;
+    private final long segments;
+    private final long messageIdBytes;
+    
+    private MemoryEstimate(long size, boolean isCompressed, boolean isSampled, long files, long segments, long messageIdBytes) {
+        this.size = size;
+        this.isCompressed = isCompressed;
+        this.isSampled = isSampled;
+        this.files = files;
+        this.segments = segments;
+        this.messageIdBytes = messageIdBytes;
+    }
+    
+    /**
+     * Estimate the memory needed to split the NZB file at the given path by
+     * scanning the start of the file
+     * @param nzbPath path to the NZB file, which may be gzip compressed
+     * @return MemoryEstimate
+     * @throws IOException if unable to read the NZB file
+     */
+    public static MemoryEstimate sample(Path nzbPath) throws IOException {
+        long fileSize = Files.size(nzbPath);
+        try (CountingStream counter = new CountingStream(Files.newInputStream(nzbPath))) {
+            InputStream in = counter;
+            counter.mark(2);
+            boolean isCompressed = (counter.read() | (counter.read() << 8)) == GZIPInputStream.GZIP_MAGIC;
+            counter.reset();
+            if(isCompressed) {
+                in = new GZIPInputStream(counter);
+            }
+            byte[] sample = new byte[SAMPLE_SIZE];
+            int length = 0;
+            int read;
+            while(length < sample.length && (read = in.read(sample, length, sample.length - length)) != -1) {
+                length += read;
+            }
+            boolean isSampled = in.read() != -1;
+            long size = length;
+            if(isSampled) {
+                size = isCompressed ? (long) (fileSize * ((double) length / counter.getCount())) : fileSize;
+            }
+            return scan(sample, length, size, isCompressed, isSampled);
+        }
+    }
+    
+    /**
+     * Count the files, segments and message id bytes in the sample and scale
+     * them up to the size of the NZB
+     * @param sample start of the NZB
+     * @param length number of bytes in the sample
+     * @param size size of the whole (decompressed) NZB
+     * @param isCompressed true if the NZB file is gzip compressed
+     * @param isSampled true if the sample is only the start of the NZB
+     * @return MemoryEstimate
+     */
+    private static MemoryEstimate scan(byte[] sample, int length, long size, boolean isCompressed, boolean isSampled) {
+        long files = 0;
+        long segments = 0;
+        long messageIdBytes = 0;
+        for(int i = 0; i < length; i++) {
+            if(sample[i] != '<') {
+                continue;
+            }
+            if(isTag(sample, length, i, "<file")) {
+                files++;
+            } else if(isTag(sample, length, i, "<segment")) {
+                int start = i;
+                while(start < length && sample[start] != '>') {
+                    start++;
+                }
+                int end = start + 1;
+                while(end < length && sample[end] != '<') {
+                    end++;
+                }
+                if(end < length) {
+                    segments++;
+                    messageIdBytes += end - start - 1;
+                }
+                i = end - 1;
+            }
+        }
+        double scale = length == 0 ? 0 : (double) size / length;
+        return new MemoryEstimate(size, isCompressed, isSampled, (long) (files * scale), (long) (segments * scale), (long) (messageIdBytes * scale));
+    }
+    
+    private static boolean isTag(byte[] sample, int length, int index, String tag) {
+        int end = index + tag.length();
+        if(end >= length) {
+            return false;
+        }
+        for(int i = 1; i < tag.length(); i++) {
+            if(sample[index + i] != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return sample[end] == ' ' || sample[end] == '>' || sample[end] == '\t' || sample[end] == '\r' || sample[end] == '\n';
+    }
+    
+    /**
+     * Get the estimated size of the decompressed NZB
+     * @return size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Check if the NZB file is gzip compressed
+     * @return true if gzip compressed, false otherwise
+     */
+    public boolean isCompressed() {
+        return isCompressed;
+    }
+    
+    /**
+     * Get the estimated number of segments in the NZB
+     * @return number of segments
+     */
+    public long getSegments() {
+        return segments;
+    }
+    
+    /**
+     * Get the estimated number of files in the NZB
+     * @return number of files
+     */
+    public long getFiles() {
+        return files;
+    }
+    
+    /**
+     * Get the estimated memory used by the NZB parsed with a segment object per segment
+     * @return memory in bytes
+     */
+    public long getMemoryBytes() {
+        return files * FILE_BYTES + segments * SEGMENT_BYTES + messageIdBytes;
+    }
+    
+    /**
+     * Get the estimated memory used by the NZB parsed with compact segments
+     * @return memory in bytes
+     */
+    public long getCompactBytes() {
+        return files * FILE_BYTES + segments * COMPACT_SEGMENT_BYTES + messageIdBytes;
+    }
+    
+    /**
+     * Get the estimated memory used by the NZB parsed without its segments
+     * @return memory in bytes
+     */
+    public long getStreamBytes() {
+        return files * FILE_BYTES;
+    }
+    
+    /**
+     * Choose the mode the NZB is split in: the first of memory, compact and
+     * stream whose estimate fits in the usable part of the budget. If none
+     * fit, stream is chosen as it uses the least memory.
+     * @param budget memory available to split the NZB in bytes
+     * @return {@link #MODE_MEMORY}, {@link #MODE_COMPACT} or {@link #MODE_STREAM}
+     */
+    public String choose(long budget) {
+        long usable = (long) (budget * USABLE_FRACTION);
+        if(getMemoryBytes() <= usable) {
+            return MODE_MEMORY;
+        }
+        return getCompactBytes() <= usable ? MODE_COMPACT : MODE_STREAM;
+    }
+    
+    /**
+     * Get the estimated counts and the estimated memory of each mode
+     * @return e.g. "~61,131 segments in ~3,000 files (sampled 1 MB of 5.62 MB): memory 7.80 MB, compact 1.97 MB, stream 1.14 MB"
+     */
+    @Override
+    public String toString() {
+        return String.format("~%,d segments in ~%,d files (%s): memory %s, compact %s, stream %s", segments, files,
+            isSampled ? String.format("sampled %s of ~%s", FileSize.format(SAMPLE_SIZE), FileSize.format(size)) : "scanned " + FileSize.format(size),
+            FileSize.format(getMemoryBytes()), FileSize.format(getCompactBytes()), FileSize.format(getStreamBytes()));
+    }
+    
+    /**
+     * Stream that counts the bytes read from it, to find the compression
+     * ratio of a sample of a compressed NZB. The gzip stream reading from it
+     * has a small buffer, so few bytes are read ahead of the sample.
+     */
+    private static class CountingStream extends FilterInputStream {
+        
+        private long count;
+        private long mark;
+        
+        CountingStream(InputStream in) {
+            super(new BufferedInputStream(in, BUFFER_SIZE));
+        }
+        
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            super.mark(readlimit);
+            mark = count;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            count = mark;
+        }
+        
+    }
+    
+}
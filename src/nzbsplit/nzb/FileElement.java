@@ -43,12 +43,28 @@ public class FileElement {
     private int date;
     private String poster;
     private String subject;
+    private String firstMessageId;
+    private int duplicateSegments = 0;
+    private int[] missingSegments = new int[0];
     
     public FileElement() {
         groups = new ArrayList<>();
         segments = new ArrayList<>();
     }
     
+    /**
+     * Creates a file whose segments are provided by the given list e.g. a list
+     * that decodes the segments on first access. Segments cannot be added to
+     * the file unless the given list supports add.
+     * @param segments segments that make up this file
+     * @param size file size in bytes
+     */
+    public FileElement(List<SegmentElement> segments, long size) {
+        this.groups = new ArrayList<>();
+        this.segments = segments;
+        this.size = size;
+    }
+    
     /**
      * Add a segment that makes up this file
      * @param segment SegmentElement
@@ -58,6 +74,15 @@ public class FileElement {
         size += segment.getBytes();
     }
     
+    /**
+     * Add the size of a segment that makes up this file without retaining
+     * the segment itself
+     * @param bytes segment size in bytes
+     */
+    public void addSegmentBytes(long bytes) {
+        size += bytes;
+    }
+    
     /**
      * Add a usenet group that this file resides in e.g. alt.binaries.newzbin
      * @param group Usenet group
@@ -119,10 +144,71 @@ public class FileElement {
     }
     
     /**
-     * Sort the segments by segment number
+     * Get the message id of the segment with the lowest segment number. The
+     * parser records it whether or not the segments are retained and before
+     * any segment is dropped, so it identifies the file in every split mode.
+     * @return message id recorded by the parser, the message id of the first
+     * segment if none was recorded, or null if the file has no segments
+     */
+    public String getFirstMessageId() {
+        if(firstMessageId == null && !segments.isEmpty()) {
+            return segments.get(0).getMessageId();
+        }
+        return firstMessageId;
+    }
+    
+    /**
+     * Set the message id of the segment with the lowest segment number
+     * @param firstMessageId message id
+     */
+    public void setFirstMessageId(String firstMessageId) {
+        this.firstMessageId = firstMessageId;
+    }
+    
+    /**
+     * Get the number of duplicate segments that were removed from this file
+     * @return number of duplicate segments removed
+     */
+    public int getDuplicateSegments() {
+        return duplicateSegments;
+    }
+    
+    /**
+     * Set the number of duplicate segments that were removed from this file
+     * @param duplicateSegments number of duplicate segments removed
+     */
+    public void setDuplicateSegments(int duplicateSegments) {
+        this.duplicateSegments = duplicateSegments;
+    }
+    
+    /**
+     * Get the segment numbers missing between 1 and the highest segment number
+     * of this file. Only set if duplicate segments were removed whilst parsing.
+     * @return sorted missing segment numbers or an empty array
+     */
+    public int[] getMissingSegments() {
+        return missingSegments;
+    }
+    
+    /**
+     * Set the segment numbers missing between 1 and the highest segment number
+     * @param missingSegments sorted missing segment numbers
+     */
+    public void setMissingSegments(int[] missingSegments) {
+        this.missingSegments = missingSegments;
+    }
+    
+    /**
+     * Sort the segments by segment number. The segments are only sorted if a
+     * pass over them finds them out of order, as they usually are in order.
      */
     public void sortSegments() {
-        Collections.sort(segments);
+        for(int i = 1; i < segments.size(); i++) {
+            if(segments.get(i - 1).compareTo(segments.get(i)) > 0) {
+                Collections.sort(segments);
+                return;
+            }
+        }
     }
     
 }
@@ -28,6 +28,7 @@ package nzbsplit.nzb;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -39,6 +40,10 @@ public class NZB {
     private final List<Metadata> meta;
     private final List<FileElement> files;
     private long totalSize = 0;
+    private int skippedSegments = 0;
+    private long skippedBytes = 0;
+    private int filteredFiles = 0;
+    private long filteredBytes = 0;
     
     /**
      * Creates an empty NZB instance
@@ -82,6 +87,70 @@ public class NZB {
         totalSize += file.getFileSize();
     }
 
+    /**
+     * Record segments that were left out of the NZB because they have already
+     * been downloaded
+     * @param segments number of segments
+     * @param bytes total size of the segments in bytes
+     */
+    public void addSkippedSegments(int segments, long bytes) {
+        skippedSegments += segments;
+        skippedBytes += bytes;
+    }
+    
+    /**
+     * Get the number of segments left out of the NZB because they have
+     * already been downloaded
+     * @return number of segments skipped
+     */
+    public int getSkippedSegments() {
+        return skippedSegments;
+    }
+    
+    /**
+     * Get the total size (in bytes) of the segments left out of the NZB
+     * because they have already been downloaded
+     * @return size of the segments skipped in bytes
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+    
+    /**
+     * Record files that were left out of the NZB by a filter
+     * @param files number of files
+     * @param bytes total size of the files in bytes
+     */
+    public void addFilteredFiles(int files, long bytes) {
+        filteredFiles += files;
+        filteredBytes += bytes;
+    }
+    
+    /**
+     * Get the number of files left out of the NZB by a filter
+     * @return number of files filtered out
+     */
+    public int getFilteredFiles() {
+        return filteredFiles;
+    }
+    
+    /**
+     * Get the total size (in bytes) of the files left out of the NZB by a
+     * filter
+     * @return size of the files filtered out in bytes
+     */
+    public long getFilteredBytes() {
+        return filteredBytes;
+    }
+    
+    /**
+     * Sort the files of the NZB in the order of the given comparator
+     * @param comparator file comparator
+     */
+    public void sortFiles(Comparator<FileElement> comparator) {
+        Collections.sort(files, comparator);
+    }
+    
     /**
      * Get list of metadata
      * @return list of metadata or empty list
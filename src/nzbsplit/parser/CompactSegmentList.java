@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import nzbsplit.nzb.SegmentElement;
+
+/**
+ * Immutable list of the segments of a file that stores the segments encoded
+ * in a single byte array rather than as objects, so a file costs little more
+ * than the bytes of its message ids. Each segment is stored as its zigzag
+ * encoded segment number and size as varints, followed by its UTF-8 message
+ * id. Segments are decoded on every access and are kept in segment number
+ * order.
+ * @author Sam Malone
+ */
+class CompactSegmentList extends AbstractList<SegmentElement> implements RandomAccess {
+    
+    private final byte[] data;
+    private final int[] offsets;
+    
+    /**
+     * Creates a list of the given segments in segment number order
+     * @param segments segments of a file
+     */
+    CompactSegmentList(List<SegmentElement> segments) {
+        SegmentElement[] sorted = segments.toArray(new SegmentElement[segments.size()]);
+        Arrays.sort(sorted);
+        byte[] encoded = new byte[Math.max(16, sorted.length * 48)];
+        offsets = new int[sorted.length];
+        int length = 0;
+        for(int i = 0; i < sorted.length; i++) {
+            byte[] messageId = sorted[i].getMessageId().getBytes(StandardCharsets.UTF_8);
+            if(encoded.length - length < messageId.length + 15) {
+                encoded = Arrays.copyOf(encoded, Math.max(encoded.length * 2, length + messageId.length + 15));
+            }
+            offsets[i] = length;
+            int number = sorted[i].getSegmentNumber();
+            length = writeVarint(encoded, length, ((number << 1) ^ (number >> 31)) & 0xffffffffL);
+            length = writeVarint(encoded, length, sorted[i].getBytes());
+            System.arraycopy(messageId, 0, encoded, length, messageId.length);
+            length += messageId.length;
+        }
+        data = Arrays.copyOf(encoded, length);
+    }
+
+    @Override
+    public SegmentElement get(int index) {
+        if(index < 0 || index >= offsets.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offsets.length);
+        }
+        int position = offsets[index];
+        int end = index + 1 < offsets.length ? offsets[index + 1] : data.length;
+        long number = 0;
+        long bytes = 0;
+        for(int shift = 0; ; shift += 7) {
+            number |= (long) (data[position] & 0x7f) << shift;
+            if(data[position++] >= 0) {
+                break;
+            }
+        }
+        for(int shift = 0; ; shift += 7) {
+            bytes |= (long) (data[position] & 0x7f) << shift;
+            if(data[position++] >= 0) {
+                break;
+            }
+        }
+        SegmentElement segment = new SegmentElement();
+        segment.setSegmentNumber((int) ((number >>> 1) ^ -(number & 1)));
+        segment.setBytes(bytes);
+        segment.setMessageId(new String(data, position, end - position, StandardCharsets.UTF_8));
+        return segment;
+    }
+
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+    
+    /**
+     * Write the given value as an unsigned LEB128 varint
+     * @param data destination array, which must have room for 10 bytes
+     * @param position position to write the varint at
+     * @param value non-negative value
+     * @return position after the varint
+     */
+    private static int writeVarint(byte[] data, int position, long value) {
+        while((value & ~0x7fL) != 0) {
+            data[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+    
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.parser;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of primitive longs that never boxes its keys.
+ * The set is cleared rather than recreated so that its table is reused.
+ * @author Sam Malone
+ */
+class LongHashSet {
+    
+    private final static int DEFAULT_CAPACITY = 64;
+    private final static long FREE = 0;
+    
+    private long[] keys = new long[DEFAULT_CAPACITY];
+    private int size = 0;
+    private boolean hasFree = false;
+    
+    /**
+     * Add the given key to the set
+     * @param key key to add
+     * @return true if the key was added, false if the set already contained it
+     */
+    boolean add(long key) {
+        if(key == FREE) {
+            if(hasFree) {
+                return false;
+            }
+            hasFree = true;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while(keys[i] != FREE) {
+            if(keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if(++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+    
+    /**
+     * Remove every key from the set. The table shrinks back to its default
+     * capacity if it grew, so one large file does not slow down clearing the
+     * set for every file after it.
+     */
+    void clear() {
+        if(keys.length > DEFAULT_CAPACITY * 16) {
+            keys = new long[DEFAULT_CAPACITY];
+        } else if(size > 0) {
+            Arrays.fill(keys, FREE);
+        }
+        size = 0;
+        hasFree = false;
+    }
+    
+    /**
+     * Move every key to a new table with the given capacity
+     * @param capacity new capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        int mask = capacity - 1;
+        for(long key : old) {
+            if(key != FREE) {
+                int i = mix(key) & mask;
+                while(keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+    
+    /**
+     * Spread the bits of the key so that sequential keys do not cluster
+     * @param key key
+     * @return hash of the key
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+}
@@ -26,15 +26,21 @@
 
 package nzbsplit.parser;
 
-import java.io.FileInputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import nzbsplit.HashUtil;
 import nzbsplit.exception.NZBParseException;
+import nzbsplit.history.MessageIdHistory;
 import nzbsplit.nzb.FileElement;
 import nzbsplit.nzb.Metadata;
 import nzbsplit.nzb.NZB;
 import nzbsplit.nzb.SegmentElement;
+import nzbsplit.progress.Progress;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -48,16 +54,115 @@ import org.xml.sax.helpers.XMLReaderFactory;
  */
 public class NZBParser extends DefaultHandler {
     
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int MAX_MISSING_SEGMENTS = 10000;
+    
+    private final NZBScanner scanner = new NZBScanner(this);
+    private XMLReader reader;
     private StringBuilder builder;
     private NZB nzb;
     private Metadata tmpMeta;
     private FileElement tmpFileElement;
     private SegmentElement tmpSegment;
+    private boolean retainSegments = true;
+    private boolean compactSegments = false;
+    private boolean inSegment = false;
+    private boolean deduplicate = false;
+    private MessageIdHistory history = null;
+    private Progress progress = null;
+    private int remainingSegments;
+    private int fileSegments;
+    private final LongHashSet segmentNumbers = new LongHashSet();
+    private final LongHashSet messageIds = new LongHashSet();
+    private int[] numbers = new int[64];
+    private int numberCount;
+    private int duplicates;
+    private int segmentNumber;
+    private long segmentBytes;
+    private long firstSegmentNumber;
     
     public NZBParser() {
         
     }
     
+    /**
+     * Set whether the segments of each file should be retained. If the segments
+     * are not retained, only the size of each file is stored and the segment
+     * message ids are never buffered. Default is true.
+     * @param retainSegments true to retain the segments, false to only store file sizes
+     */
+    public void setRetainSegments(boolean retainSegments) {
+        this.retainSegments = retainSegments;
+    }
+    
+    /**
+     * Set whether the retained segments of each file should be stored in a
+     * compact encoded form once the file has been parsed, rather than as one
+     * object per segment. The segments are decoded whenever they are accessed,
+     * so this trades time for memory. Default is false.
+     * @param compactSegments true to store the segments compactly, false otherwise
+     */
+    public void setCompactSegments(boolean compactSegments) {
+        this.compactSegments = compactSegments;
+    }
+    
+    /**
+     * Set whether duplicate segments should be removed whilst parsing. A segment
+     * is a duplicate if a previous segment of the same file has the same segment
+     * number or the same message id, so the size of a file only includes the
+     * bytes that need to be downloaded. The number of duplicates removed and
+     * the missing segment numbers of each file are recorded on the file.
+     * Default is false.
+     * @param deduplicate true to remove duplicate segments, false otherwise
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+    
+    /**
+     * Set the history of message ids that have already been downloaded. Segments
+     * in the history are dropped whilst parsing, as are files that have no
+     * segments left, so only the remaining segments are split. The number and
+     * size of the segments dropped are recorded on the NZB.
+     * @param history MessageIdHistory or null to keep every segment
+     */
+    public void setHistory(MessageIdHistory history) {
+        this.history = history;
+    }
+    
+    /**
+     * Set the progress each parsed file and its number of segments are
+     * recorded on
+     * @param progress Progress or null to not record the progress
+     */
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+    
+    /**
+     * Find the segment numbers missing between 1 and the highest of the given
+     * segment numbers. At most 10000 missing segment numbers are returned.
+     * @param numbers distinct segment numbers, which are sorted in place
+     * @param count number of segment numbers in the array
+     * @return sorted missing segment numbers
+     */
+    public static int[] findMissingSegments(int[] numbers, int count) {
+        Arrays.sort(numbers, 0, count);
+        int[] missing = new int[16];
+        int missingCount = 0;
+        int expected = 1;
+        for(int i = 0; i < count && missingCount < MAX_MISSING_SEGMENTS; i++) {
+            for(; expected < numbers[i] && missingCount < MAX_MISSING_SEGMENTS; expected++) {
+                if(missingCount == missing.length) {
+                    missing = Arrays.copyOf(missing, missingCount * 2);
+                }
+                missing[missingCount++] = expected;
+            }
+            expected = Math.max(expected, numbers[i] + 1);
+        }
+        return Arrays.copyOf(missing, missingCount);
+    }
+    
     /**
      * Parses the NZB file at the given path
      * @param nzbPath Path to the NZB file
@@ -65,20 +170,78 @@ public class NZBParser extends DefaultHandler {
      * @throws NZBParseException if unable to parse the NZB file
      */
     public NZB parse(Path nzbPath) throws NZBParseException {
+        try (InputStream in = Files.newInputStream(nzbPath)) {
+            return parse(in);
+        } catch(IOException ex) {
+            throw new NZBParseException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Parses an NZB from the given stream. The character encoding is read from
+     * the XML declaration. The stream is decompressed if it is gzip compressed.
+     * NZBs encoded as UTF-8, US-ASCII or ISO-8859-1 are read by an
+     * {@link NZBScanner}, any other NZB is read by an XMLReader. The stream is
+     * not closed.
+     * @param in NZB input stream
+     * @return NZB
+     * @throws NZBParseException if unable to parse the NZB
+     */
+    public NZB parse(InputStream in) throws NZBParseException {
         try {
-            XMLReader reader = XMLReaderFactory.createXMLReader();
-            reader.setContentHandler(this);
-            reader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            reader.parse(new InputSource(new InputStreamReader(new FileInputStream(nzbPath.toFile()))));
+            InputStream decompressed = decompress(in);
+            if(!scanner.parse(decompressed)) {
+                getReader().parse(new InputSource(decompressed));
+            }
         } catch(IOException | SAXException ex) {
             throw new NZBParseException(ex.getMessage());
         }
-        return nzb;
+        NZB parsed = nzb;
+        nzb = null;
+        return parsed;
+    }
+    
+    /**
+     * Wrap the given stream in a GZIPInputStream if it starts with the gzip magic
+     * number, otherwise return a buffered stream of the data as is
+     * @param in NZB input stream
+     * @return decompressed NZB input stream
+     * @throws IOException if unable to read the start of the stream
+     */
+    private static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+        if(magic == GZIPInputStream.GZIP_MAGIC) {
+            return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return buffered;
+    }
+    
+    /**
+     * Get the XMLReader used to parse NZB files that are not encoded as UTF-8,
+     * US-ASCII or ISO-8859-1. The reader is created on first use and reused
+     * for subsequent parses, so a parser instance that is used to parse many
+     * NZB files only looks up the XMLReader once. A parser
+     * instance must not be used to parse more than one NZB at a time.
+     * @return XMLReader
+     * @throws SAXException if unable to create the XMLReader
+     */
+    private XMLReader getReader() throws SAXException {
+        if(reader == null) {
+            reader = XMLReaderFactory.createXMLReader();
+            reader.setContentHandler(this);
+            reader.setErrorHandler(this);
+            reader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        }
+        return reader;
     }
     
     @Override
     public void startDocument() throws SAXException {
         builder = new StringBuilder();
+        inSegment = false;
         nzb = new NZB();
     }
 
@@ -90,15 +253,34 @@ public class NZBParser extends DefaultHandler {
                 tmpMeta.setType(atts.getValue("type"));
                 break;
             case "file":
+                segmentNumbers.clear();
+                messageIds.clear();
+                numberCount = 0;
+                duplicates = 0;
+                remainingSegments = 0;
+                fileSegments = 0;
+                firstSegmentNumber = Long.MAX_VALUE;
                 tmpFileElement = new FileElement();
                 tmpFileElement.setPoster(atts.getValue("poster"));
-                tmpFileElement.setDate(Integer.valueOf(atts.getValue("date")));
+                tmpFileElement.setDate(Integer.parseInt(atts.getValue("date")));
                 tmpFileElement.setSubject(atts.getValue("subject"));
                 break;
             case "segment":
+                if(deduplicate || history != null) {
+                    segmentNumber = Integer.parseInt(atts.getValue("number"));
+                    segmentBytes = Long.parseLong(atts.getValue("bytes"));
+                    break;
+                }
+                if(!retainSegments) {
+                    tmpFileElement.addSegmentBytes(Long.parseLong(atts.getValue("bytes")));
+                    segmentNumber = Integer.parseInt(atts.getValue("number"));
+                    // only the message id of a segment that may be the first is buffered
+                    inSegment = segmentNumber >= firstSegmentNumber;
+                    break;
+                }
                 tmpSegment = new SegmentElement();
-                tmpSegment.setBytes(Long.valueOf(atts.getValue("bytes")));
-                tmpSegment.setSegmentNumber(Integer.valueOf(atts.getValue("number")));
+                tmpSegment.setBytes(Long.parseLong(atts.getValue("bytes")));
+                tmpSegment.setSegmentNumber(Integer.parseInt(atts.getValue("number")));
                 break;
         }
     }
@@ -111,22 +293,118 @@ public class NZBParser extends DefaultHandler {
                 nzb.addMetadata(tmpMeta);
                 break;
             case "file":
-                nzb.addFile(tmpFileElement);
+                if(deduplicate) {
+                    tmpFileElement.setDuplicateSegments(duplicates);
+                    tmpFileElement.setMissingSegments(findMissingSegments(numbers, numberCount));
+                }
+                if(compactSegments && retainSegments) {
+                    tmpFileElement = compact(tmpFileElement);
+                }
+                if(history == null || remainingSegments > 0) {
+                    nzb.addFile(tmpFileElement);
+                }
+                if(progress != null) {
+                    progress.addFile(fileSegments);
+                }
                 break;
             case "group":
                 tmpFileElement.addUsenetGroup(builder.toString().trim());
                 break;
             case "segment":
+                fileSegments++;
+                if(deduplicate || history != null) {
+                    endFilteredSegment(builder.toString().trim());
+                    break;
+                }
+                if(!retainSegments) {
+                    if(!inSegment) {
+                        recordFirstSegment(segmentNumber, builder.toString().trim());
+                    }
+                    inSegment = false;
+                    break;
+                }
                 tmpSegment.setMessageId(builder.toString().trim());
+                recordFirstSegment(tmpSegment.getSegmentNumber(), tmpSegment.getMessageId());
                 tmpFileElement.addSegment(tmpSegment);
                 break;
         }
-        builder = new StringBuilder();
+        builder.setLength(0);
     }
 
+    /**
+     * Add the segment that has ended to the current file unless it is a
+     * duplicate of a previous segment of the file (if deduplicating) or has
+     * already been downloaded (if a history is set)
+     * @param messageId message id of the segment
+     */
+    private void endFilteredSegment(String messageId) {
+        recordFirstSegment(segmentNumber, messageId);
+        if(deduplicate) {
+            boolean isNewNumber = segmentNumbers.add(segmentNumber);
+            if(!(messageIds.add(HashUtil.fnv1a(HashUtil.FNV_OFFSET_BASIS, messageId)) & isNewNumber)) {
+                duplicates++;
+                return;
+            }
+            if(numberCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, numberCount * 2);
+            }
+            numbers[numberCount++] = segmentNumber;
+        }
+        if(history != null && history.contains(messageId)) {
+            nzb.addSkippedSegments(1, segmentBytes);
+            return;
+        }
+        remainingSegments++;
+        if(!retainSegments) {
+            tmpFileElement.addSegmentBytes(segmentBytes);
+            return;
+        }
+        SegmentElement segment = new SegmentElement();
+        segment.setSegmentNumber(segmentNumber);
+        segment.setBytes(segmentBytes);
+        segment.setMessageId(messageId);
+        tmpFileElement.addSegment(segment);
+    }
+    
+    /**
+     * Record the message id of the segment on the current file if the segment
+     * has the lowest segment number so far. Of the segments with the same
+     * number, the first in the NZB is recorded.
+     * @param number segment number
+     * @param messageId message id of the segment
+     */
+    private void recordFirstSegment(int number, String messageId) {
+        if(number < firstSegmentNumber) {
+            firstSegmentNumber = number;
+            tmpFileElement.setFirstMessageId(messageId);
+        }
+    }
+    
+    /**
+     * Get a copy of the given file whose segments are stored in a
+     * {@link CompactSegmentList}
+     * @param file parsed file
+     * @return copy of the file
+     */
+    private static FileElement compact(FileElement file) {
+        FileElement compacted = new FileElement(new CompactSegmentList(file.getSegments()), file.getFileSize());
+        compacted.setPoster(file.getPoster());
+        compacted.setDate(file.getDate());
+        compacted.setSubject(file.getSubject());
+        compacted.setFirstMessageId(file.getFirstMessageId());
+        compacted.setDuplicateSegments(file.getDuplicateSegments());
+        compacted.setMissingSegments(file.getMissingSegments());
+        for(String group : file.getUsenetGroups()) {
+            compacted.addUsenetGroup(group);
+        }
+        return compacted;
+    }
+    
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
-        builder.append(ch, start, length);
+        if(!inSegment) {
+            builder.append(ch, start, length);
+        }
     }
     
 }
@@ -0,0 +1,761 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * A small non-validating XML scanner that reads an NZB byte by byte and
+ * reports its elements to a SAX ContentHandler. It is used in place of the
+ * XMLReader found by XMLReaderFactory, which is looked up reflectively and
+ * loads a few hundred classes on first use, so a short lived process that
+ * splits a single NZB spends its time splitting rather than starting the XML
+ * parser. The scanner uses no reflection, so it also works unchanged in a
+ * native image.
+ * <p>
+ * Elements, attributes, character and predefined entity references, CDATA
+ * sections, comments and processing instructions are supported. The document
+ * type declaration is skipped, so entities it declares cannot be referenced.
+ * As the external subset is never loaded, references to undeclared entities
+ * are skipped if the document has one, otherwise they are an error.
+ * Namespaces are not processed: the local name of an element or attribute is
+ * its qualified name without the prefix and its namespace URI is empty. Only
+ * documents encoded as UTF-8, US-ASCII or ISO-8859-1 are scanned, documents
+ * in any other encoding are left for an XMLReader.
+ * @author Sam Malone
+ */
+final class NZBScanner {
+    
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int DECLARATION_SIZE = 256;
+    private final static int MAX_ENTITY_LENGTH = 8;
+    private final static String[] NAMES = {
+        "nzb", "head", "meta", "type", "file", "poster", "date", "subject",
+        "groups", "group", "segments", "segment", "bytes", "number", "xmlns"
+    };
+    private final static char[][] NAME_CHARS = new char[NAMES.length][];
+    private final static boolean[] DELIMITERS = new boolean[128];
+    
+    static {
+        for(int i = 0; i < NAMES.length; i++) {
+            NAME_CHARS[i] = NAMES[i].toCharArray();
+        }
+        for(char c : " \n\t\r>/=<\"'".toCharArray()) {
+            DELIMITERS[c] = true;
+        }
+    }
+    
+    private final ContentHandler handler;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ScannedAttributes attributes = new ScannedAttributes();
+    private final StringBuilder entity = new StringBuilder(MAX_ENTITY_LENGTH);
+    private InputStream in;
+    private int position;
+    private int limit;
+    private boolean latin1;
+    private char[] chars = new char[256];
+    private int charCount;
+    private String[] elements = new String[16];
+    private int depth;
+    private boolean hasExternalSubset;
+    
+    /**
+     * Create a scanner that reports to the given handler
+     * @param handler ContentHandler
+     */
+    NZBScanner(ContentHandler handler) {
+        this.handler = handler;
+    }
+    
+    /**
+     * Scan the XML document in the given stream. The encoding is read from the
+     * start of the stream, which must support mark and reset. If the encoding
+     * is not supported, the stream is reset and nothing is reported to the
+     * handler. The stream is not closed.
+     * @param in XML input stream
+     * @return true if the document was scanned, false if its encoding is not supported
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the document is not well formed or the handler fails
+     */
+    boolean parse(InputStream in) throws IOException, SAXException {
+        byte[] start = new byte[DECLARATION_SIZE];
+        int length = 0;
+        int read;
+        in.mark(start.length);
+        while(length < start.length && (read = in.read(start, length, start.length - length)) > 0) {
+            length += read;
+        }
+        in.reset();
+        String encoding = getEncoding(start, length);
+        if(encoding == null) {
+            return false;
+        }
+        this.in = in;
+        latin1 = encoding.equals("ISO-8859-1");
+        position = 0;
+        limit = 0;
+        depth = 0;
+        hasExternalSubset = false;
+        try {
+            if(hasByteOrderMark(start, length)) {
+                in.skip(3);
+            }
+            scan();
+        } finally {
+            this.in = null;
+        }
+        return true;
+    }
+    
+    /**
+     * Get the encoding of an XML document from the byte order mark and XML
+     * declaration at the start of the document
+     * @param start bytes at the start of the document
+     * @param length number of bytes in the array
+     * @return "UTF-8" or "ISO-8859-1", or null if the encoding is not supported
+     */
+    private static String getEncoding(byte[] start, int length) {
+        if(length >= 2 && (start[0] == 0 || start[1] == 0 || (start[0] & 0xff) >= 0xfe)) {
+            return null;
+        }
+        int offset = hasByteOrderMark(start, length) ? 3 : 0;
+        String declaration = new String(start, offset, length - offset, StandardCharsets.ISO_8859_1);
+        int end = declaration.indexOf("?>");
+        int index = declaration.indexOf("encoding");
+        if(!declaration.startsWith("<?xml") || end < 0 || index < 0 || index > end) {
+            return "UTF-8";
+        }
+        index = declaration.indexOf('=', index) + 1;
+        while(index < end && Character.isWhitespace(declaration.charAt(index))) {
+            index++;
+        }
+        char quote = declaration.charAt(index);
+        int close = declaration.indexOf(quote, index + 1);
+        if(index == 0 || (quote != '"' && quote != '\'') || close < 0 || close > end) {
+            return null;
+        }
+        switch(declaration.substring(index + 1, close).toUpperCase(Locale.ENGLISH)) {
+            case "UTF-8":
+            case "UTF8":
+            case "US-ASCII":
+            case "ASCII":
+                return "UTF-8";
+            case "ISO-8859-1":
+            case "ISO8859-1":
+            case "ISO_8859_1":
+            case "LATIN1":
+                return "ISO-8859-1";
+            default:
+                return null;
+        }
+    }
+    
+    private static boolean hasByteOrderMark(byte[] start, int length) {
+        return length >= 3 && (start[0] & 0xff) == 0xef && (start[1] & 0xff) == 0xbb && (start[2] & 0xff) == 0xbf;
+    }
+    
+    /**
+     * Scan the document, reporting character data, elements and the start
+     * and end of the document to the handler
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the document is not well formed or the handler fails
+     */
+    private void scan() throws IOException, SAXException {
+        boolean hasRoot = false;
+        handler.startDocument();
+        while(true) {
+            charCount = 0;
+            int b;
+            while((b = appendRun('<', false)) != '<' && b != -1) {
+                appendText(b, false);
+            }
+            reportCharacters();
+            if(b == -1) {
+                break;
+            }
+            b = nextRequired();
+            if(b == '/') {
+                scanEndTag();
+            } else if(b == '?') {
+                skipPast('?', 1);
+            } else if(b == '!') {
+                scanDeclaration();
+            } else {
+                if(hasRoot && depth == 0) {
+                    throw new SAXException("The markup in the document following the root element must be well-formed.");
+                }
+                scanStartTag(b);
+                hasRoot = true;
+            }
+        }
+        if(depth > 0) {
+            throw new SAXException("XML document structures must start and end within the same entity: <" + elements[depth - 1] + "> is not closed.");
+        }
+        if(!hasRoot) {
+            throw new SAXException("Premature end of file.");
+        }
+        handler.endDocument();
+    }
+    
+    private void scanStartTag(int b) throws IOException, SAXException {
+        String name = scanName(b);
+        attributes.clear();
+        b = skipWhitespace();
+        while(b != '>' && b != '/') {
+            String attributeName = scanName(b);
+            if(skipWhitespace() != '=') {
+                throw new SAXException("Attribute name \"" + attributeName + "\" associated with an element type \"" + name + "\" must be followed by the ' = ' character.");
+            }
+            int quote = skipWhitespace();
+            if(quote != '"' && quote != '\'') {
+                throw new SAXException("Open quote is expected for attribute \"" + attributeName + "\" associated with an element type \"" + name + "\".");
+            }
+            charCount = 0;
+            while((b = appendRun(quote, true)) != quote) {
+                if(b == -1) {
+                    throw new SAXException("XML document structures must start and end within the same entity.");
+                }
+                if(b == '<') {
+                    throw new SAXException("The value of attribute \"" + attributeName + "\" associated with an element type \"" + name + "\" must not contain the '<' character.");
+                }
+                appendText(b, true);
+            }
+            attributes.add(attributeName, new String(chars, 0, charCount));
+            b = nextRequired();
+            if(b != '>' && b != '/' && !isWhitespace(b)) {
+                throw new SAXException("Element type \"" + name + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+            }
+            position--;
+            b = skipWhitespace();
+        }
+        if(b == '/' && nextRequired() != '>') {
+            throw new SAXException("Element type \"" + name + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+        }
+        String localName = getLocalName(name);
+        handler.startElement("", localName, name, attributes);
+        if(b == '/') {
+            handler.endElement("", localName, name);
+            return;
+        }
+        if(depth == elements.length) {
+            elements = Arrays.copyOf(elements, depth * 2);
+        }
+        elements[depth++] = name;
+    }
+    
+    private void scanEndTag() throws IOException, SAXException {
+        String name = scanName(nextRequired());
+        if(skipWhitespace() != '>') {
+            throw new SAXException("The end-tag for element type \"" + name + "\" must end with a '>' delimiter.");
+        }
+        if(depth == 0 || !elements[depth - 1].equals(name)) {
+            throw new SAXException("The element type \"" + (depth == 0 ? name : elements[depth - 1]) + "\" must be terminated by the matching end-tag \"</" + (depth == 0 ? name : elements[depth - 1]) + ">\".");
+        }
+        depth--;
+        handler.endElement("", getLocalName(name), name);
+    }
+    
+    /**
+     * Scan a comment, CDATA section or document type declaration, which start
+     * with &lt;!. Comments and the document type declaration are skipped.
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the markup is not well formed or the handler fails
+     */
+    private void scanDeclaration() throws IOException, SAXException {
+        int b = nextRequired();
+        if(b == '-') {
+            expect("-");
+            skipPast('-', 2);
+        } else if(b == '[') {
+            expect("CDATA[");
+            charCount = 0;
+            int brackets = 0;
+            while((b = nextRequired()) != '>' || brackets < 2) {
+                brackets = b == ']' ? brackets + 1 : 0;
+                if(b == '\r') {
+                    b = '\n';
+                    skipLineFeed();
+                }
+                append(b);
+            }
+            charCount -= 2;
+            if(depth == 0) {
+                throw new SAXException("Content is not allowed outside the root element.");
+            }
+            reportCharacters();
+        } else if(b == 'D') {
+            expect("OCTYPE");
+            int brackets = 0;
+            int quote = 0;
+            while((b = nextRequired()) != '>' || brackets > 0 || quote != 0) {
+                if(quote != 0) {
+                    quote = b == quote ? 0 : quote;
+                } else if(b == '"' || b == '\'') {
+                    quote = b;
+                    hasExternalSubset |= brackets == 0;
+                } else if(b == '<' && brackets > 0) {
+                    skipComment();
+                } else if(b == '[') {
+                    brackets++;
+                } else if(b == ']') {
+                    brackets--;
+                }
+            }
+        } else {
+            throw new SAXException("The markup in the document must be well-formed.");
+        }
+    }
+    
+    /**
+     * Report the characters that have been appended to the handler. Only
+     * whitespace is allowed outside the root element and it is not reported.
+     * @throws SAXException if there are other characters outside the root element or the handler fails
+     */
+    private void reportCharacters() throws SAXException {
+        if(charCount == 0) {
+            return;
+        }
+        if(depth > 0) {
+            handler.characters(chars, 0, charCount);
+            return;
+        }
+        for(int i = 0; i < charCount; i++) {
+            if(!isWhitespace(chars[i])) {
+                throw new SAXException("Content is not allowed outside the root element.");
+            }
+        }
+    }
+    
+    /**
+     * Scan an element or attribute name starting with the given byte. The
+     * byte following the name is not consumed.
+     * @param b first byte of the name
+     * @return name
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if there is no name
+     */
+    private String scanName(int b) throws IOException, SAXException {
+        charCount = 0;
+        while(b >= 0x80 || !DELIMITERS[b]) {
+            append(b);
+            int p = position;
+            while(p < limit && buffer[p] >= 0 && !DELIMITERS[buffer[p]] && charCount < chars.length) {
+                chars[charCount++] = (char) buffer[p++];
+            }
+            position = p;
+            b = nextRequired();
+        }
+        position--;
+        if(charCount == 0) {
+            throw new SAXException("The markup in the document must be well-formed.");
+        }
+        for(int i = 0; i < NAMES.length; i++) {
+            if(isName(NAME_CHARS[i])) {
+                return NAMES[i];
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+    
+    private boolean isName(char[] name) {
+        if(name.length != charCount) {
+            return false;
+        }
+        for(int i = 0; i < charCount; i++) {
+            if(name[i] != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Append the run of plain ASCII bytes at the current position straight from
+     * the buffer, up to the next byte that ends the run or has to be appended
+     * by {@link #appendText(int, boolean)}
+     * @param end byte that ends the run, '&lt;' for character data or the quote of an attribute value
+     * @param attribute true if the run is part of an attribute value
+     * @return byte following the run, which is consumed, or -1 if the end of the stream has been reached
+     * @throws IOException if unable to read the stream
+     */
+    private int appendRun(int end, boolean attribute) throws IOException {
+        if(position == limit && next() != -1) {
+            position--;
+        }
+        if(chars.length - charCount < limit - position) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + limit - position));
+        }
+        byte[] bytes = buffer;
+        char[] text = chars;
+        int count = charCount;
+        int p = position;
+        for(; p < limit; p++) {
+            int b = bytes[p];
+            if(b == end || b == '&' || b == '<' || b == '\r' || b < 0 || (attribute && (b == '\n' || b == '\t'))) {
+                break;
+            }
+            text[count++] = (char) b;
+        }
+        charCount = count;
+        position = p;
+        return next();
+    }
+    
+    /**
+     * Append the given byte of character data or of an attribute value. Entity
+     * references are resolved and line breaks are normalised, as is all
+     * whitespace in attribute values.
+     * @param b byte
+     * @param attribute true if the byte is part of an attribute value
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if an entity reference is invalid
+     */
+    private void appendText(int b, boolean attribute) throws IOException, SAXException {
+        if(b == '&') {
+            appendReference();
+            return;
+        }
+        if(b == '\r') {
+            b = '\n';
+            skipLineFeed();
+        }
+        if(attribute && (b == '\n' || b == '\t')) {
+            b = ' ';
+        }
+        append(b);
+    }
+    
+    /**
+     * Append the character or entity reference following an ampersand
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the reference is invalid
+     */
+    private void appendReference() throws IOException, SAXException {
+        int b = nextRequired();
+        if(b == '#') {
+            int radix = 10;
+            if((b = nextRequired()) == 'x') {
+                radix = 16;
+                b = nextRequired();
+            }
+            int codePoint = 0;
+            int digits = 0;
+            for(; b != ';'; b = nextRequired(), digits++) {
+                int digit = Character.digit(b, radix);
+                if(digit < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw new SAXException("A character reference must end with the ';' delimiter.");
+                }
+                codePoint = codePoint * radix + digit;
+            }
+            if(digits == 0 || codePoint == 0 || !Character.isValidCodePoint(codePoint)) {
+                throw new SAXException("Character reference \"&#" + (radix == 16 ? "x" : "") + Integer.toString(codePoint, radix) + "\" is an invalid XML character.");
+            }
+            appendCodePoint(codePoint);
+            return;
+        }
+        entity.setLength(0);
+        for(; b != ';'; b = nextRequired()) {
+            if(entity.length() == MAX_ENTITY_LENGTH || isWhitespace(b) || b == '<' || b == '&') {
+                throw new SAXException("The entity name must immediately follow the '&' in the entity reference.");
+            }
+            entity.append((char) b);
+        }
+        switch(entity.toString()) {
+            case "lt":
+                append('<');
+                break;
+            case "gt":
+                append('>');
+                break;
+            case "amp":
+                append('&');
+                break;
+            case "quot":
+                append('"');
+                break;
+            case "apos":
+                append('\'');
+                break;
+            default:
+                if(!hasExternalSubset) {
+                    throw new SAXException("The entity \"" + entity + "\" was referenced, but not declared.");
+                }
+        }
+    }
+    
+    /**
+     * Append the character starting with the given byte, decoding the bytes
+     * that follow if it is a multi-byte UTF-8 sequence
+     * @param b byte
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the byte sequence is not valid UTF-8
+     */
+    private void append(int b) throws IOException, SAXException {
+        if(b < 0x80 || latin1) {
+            if(charCount == chars.length) {
+                chars = Arrays.copyOf(chars, charCount * 2);
+            }
+            chars[charCount++] = (char) b;
+            return;
+        }
+        int remaining;
+        int codePoint;
+        if(b >= 0xf8 || b < 0xc0) {
+            throw new SAXException("Invalid byte 1 of UTF-8 sequence.");
+        } else if(b >= 0xf0) {
+            remaining = 3;
+            codePoint = b & 0x07;
+        } else if(b >= 0xe0) {
+            remaining = 2;
+            codePoint = b & 0x0f;
+        } else {
+            remaining = 1;
+            codePoint = b & 0x1f;
+        }
+        for(; remaining > 0; remaining--) {
+            b = nextRequired();
+            if((b & 0xc0) != 0x80) {
+                throw new SAXException("Invalid byte of UTF-8 sequence.");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+        if(!Character.isValidCodePoint(codePoint)) {
+            throw new SAXException("Invalid UTF-8 sequence.");
+        }
+        appendCodePoint(codePoint);
+    }
+    
+    private void appendCodePoint(int codePoint) {
+        if(charCount + 2 > chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        charCount += Character.toChars(codePoint, chars, charCount);
+    }
+    
+    /**
+     * Skip bytes up to and including the first '&gt;' that follows the given
+     * number of repeats of the given byte, e.g. "?&gt;" or "--&gt;"
+     * @param b byte that must precede the '&gt;'
+     * @param repeats number of times the byte must be repeated
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the end of the document is reached first
+     */
+    private void skipPast(int b, int repeats) throws IOException, SAXException {
+        int count = 0;
+        int next;
+        while((next = nextRequired()) != '>' || count < repeats) {
+            count = next == b ? count + 1 : 0;
+        }
+    }
+    
+    /**
+     * Skip a comment in the internal subset of the document type declaration
+     * if the '&lt;' that has been read starts one
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the end of the document is reached first
+     */
+    private void skipComment() throws IOException, SAXException {
+        for(int i = 0; i < 3; i++) {
+            if(nextRequired() != "!--".charAt(i)) {
+                position--;
+                return;
+            }
+        }
+        skipPast('-', 2);
+    }
+    
+    private void expect(String expected) throws IOException, SAXException {
+        for(int i = 0; i < expected.length(); i++) {
+            if(nextRequired() != expected.charAt(i)) {
+                throw new SAXException("The markup in the document must be well-formed.");
+            }
+        }
+    }
+    
+    /**
+     * Skip whitespace
+     * @return first byte that is not whitespace, which is consumed
+     * @throws IOException if unable to read the stream
+     * @throws SAXException if the end of the document is reached
+     */
+    private int skipWhitespace() throws IOException, SAXException {
+        int b;
+        while(isWhitespace(b = nextRequired())) {
+            
+        }
+        return b;
+    }
+    
+    /**
+     * Skip the next byte if it is a line feed, so a carriage return followed
+     * by a line feed is read as a single line break
+     * @throws IOException if unable to read the stream
+     */
+    private void skipLineFeed() throws IOException {
+        int b = next();
+        if(b != '\n' && b != -1) {
+            position--;
+        }
+    }
+    
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+    
+    private int nextRequired() throws IOException, SAXException {
+        int b = next();
+        if(b == -1) {
+            throw new SAXException("XML document structures must start and end within the same entity.");
+        }
+        return b;
+    }
+    
+    /**
+     * Read the next byte. A byte that has been read can always be unread by
+     * decrementing the position, as it is still in the buffer.
+     * @return next byte or -1 if the end of the stream has been reached
+     * @throws IOException if unable to read the stream
+     */
+    private int next() throws IOException {
+        if(position == limit) {
+            int read = in.read(buffer, 0, buffer.length);
+            if(read <= 0) {
+                return -1;
+            }
+            position = 0;
+            limit = read;
+        }
+        return buffer[position++] & 0xff;
+    }
+    
+    private static String getLocalName(String name) {
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+    
+    /**
+     * Attributes of the element being reported, which are reused for every element
+     */
+    private final static class ScannedAttributes implements Attributes {
+        
+        private String[] names = new String[8];
+        private String[] values = new String[8];
+        private int length;
+        
+        void clear() {
+            length = 0;
+        }
+        
+        void add(String name, String value) {
+            if(length == names.length) {
+                names = Arrays.copyOf(names, length * 2);
+                values = Arrays.copyOf(values, length * 2);
+            }
+            names[length] = name;
+            values[length++] = value;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String getURI(int index) {
+            return index >= 0 && index < length ? "" : null;
+        }
+
+        @Override
+        public String getLocalName(int index) {
+            return index >= 0 && index < length ? NZBScanner.getLocalName(names[index]) : null;
+        }
+
+        @Override
+        public String getQName(int index) {
+            return index >= 0 && index < length ? names[index] : null;
+        }
+
+        @Override
+        public String getType(int index) {
+            return index >= 0 && index < length ? "CDATA" : null;
+        }
+
+        @Override
+        public String getValue(int index) {
+            return index >= 0 && index < length ? values[index] : null;
+        }
+
+        @Override
+        public int getIndex(String uri, String localName) {
+            for(int i = 0; i < length && uri.isEmpty(); i++) {
+                if(NZBScanner.getLocalName(names[i]).equals(localName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getIndex(String qName) {
+            for(int i = 0; i < length; i++) {
+                if(names[i].equals(qName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String getType(String uri, String localName) {
+            return getType(getIndex(uri, localName));
+        }
+
+        @Override
+        public String getType(String qName) {
+            return getType(getIndex(qName));
+        }
+
+        @Override
+        public String getValue(String uri, String localName) {
+            return getValue(getIndex(uri, localName));
+        }
+
+        @Override
+        public String getValue(String qName) {
+            return getValue(getIndex(qName));
+        }
+        
+    }
+    
+}
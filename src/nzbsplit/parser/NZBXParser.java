@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import nzbsplit.exception.NZBParseException;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.Metadata;
+import nzbsplit.nzb.NZB;
+
+/**
+ * Parses the compact binary NZB format (.nzbx) written by
+ * {@link nzbsplit.NZBXWriter}. A file is memory mapped and only the file
+ * headers are decoded up front. The segments of each file are decoded on first
+ * access, so splitting an NZBX file, or computing its split plan, never has to
+ * decode segments that are not written. A parser has no state so a single
+ * instance can be shared by many threads.
+ * <p>
+ * The format is little more than a sequence of unsigned LEB128 varints:
+ * <pre>
+ * "NZBX" version
+ * string count, (length, UTF-8 bytes)...   groups, posters, subjects and meta
+ * meta count, (type, value)...             string table indices
+ * file count, file...
+ * message-id blob length, message-id blob  UTF-8 message ids, concatenated
+ *
+ * file: poster, date, subject, group count, group..., segment count,
+ *       file size, flags, [duplicate count], blob offset,
+ *       segment block length, segment block
+ * segment block: (zigzag number delta, bytes, message-id length)...
+ * </pre>
+ * String table indices are stored as index + 1 so that 0 represents null.
+ * @author Sam Malone
+ */
+public class NZBXParser {
+    
+    public final static String EXTENSION = ".nzbx";
+    public final static byte[] MAGIC = { 'N', 'Z', 'B', 'X' };
+    public final static int VERSION = 1;
+    
+    /**
+     * Flag that is set if the segments of a file are stored in segment number order
+     */
+    public final static int FLAG_SORTED = 1;
+    
+    /**
+     * Flag that is set if duplicate segments were removed from a file, in
+     * which case the number removed follows the flags
+     */
+    public final static int FLAG_DUPLICATES = 2;
+    
+    private final static int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Check if the given path has the NZBX file extension
+     * @param nzbPath path to the NZB file
+     * @return true if the file is an NZBX file, false otherwise
+     */
+    public static boolean isNZBX(Path nzbPath) {
+        return nzbPath.getFileName().toString().endsWith(EXTENSION);
+    }
+    
+    /**
+     * Check if the given stream starts with the NZBX magic number. The stream
+     * must support mark and is reset to its current position.
+     * @param in NZB input stream that supports mark
+     * @return true if the stream contains an NZBX file, false otherwise
+     * @throws IOException if unable to read the start of the stream
+     */
+    public static boolean isNZBX(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for(byte b : MAGIC) {
+                if(in.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+    
+    /**
+     * Parses the NZBX file at the given path. The file is memory mapped and
+     * the segments are decoded on first access.
+     * @param nzbPath Path to the NZBX file
+     * @return NZB
+     * @throws NZBParseException if unable to parse the NZBX file
+     */
+    public NZB parse(Path nzbPath) throws NZBParseException {
+        try (FileChannel channel = FileChannel.open(nzbPath, StandardOpenOption.READ)) {
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch(IOException ex) {
+            throw new NZBParseException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Parses an NZBX file from the given stream. The stream is read into memory
+     * and is not closed.
+     * @param in NZBX input stream
+     * @return NZB
+     * @throws NZBParseException if unable to parse the NZBX file
+     */
+    public NZB parse(InputStream in) throws NZBParseException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                data.write(buffer, 0, read);
+            }
+        } catch(IOException ex) {
+            throw new NZBParseException(ex.getMessage());
+        }
+        return parse(ByteBuffer.wrap(data.toByteArray()));
+    }
+    
+    /**
+     * Parses an NZBX file from the given buffer. The buffer is retained by the
+     * files of the NZB until their segments have been decoded.
+     * @param buffer buffer containing an NZBX file from its position to its limit
+     * @return NZB
+     * @throws NZBParseException if unable to parse the NZBX file
+     */
+    public NZB parse(ByteBuffer buffer) throws NZBParseException {
+        ByteBuffer data = buffer.slice();
+        try {
+            readHeader(data);
+            String[] strings = new String[(int) readVarint(data)];
+            for(int i = 0; i < strings.length; i++) {
+                strings[i] = readString(data, (int) readVarint(data));
+            }
+            int metaCount = (int) readVarint(data);
+            List<Metadata> metadata = new ArrayList<>(metaCount);
+            for(int i = 0; i < metaCount; i++) {
+                metadata.add(new Metadata(readString(data, strings), readString(data, strings)));
+            }
+            NZB nzb = new NZB(metadata);
+            int fileCount = (int) readVarint(data);
+            List<SegmentList> segmentLists = new ArrayList<>(fileCount);
+            for(int i = 0; i < fileCount; i++) {
+                String poster = readString(data, strings);
+                int date = (int) readVarint(data);
+                String subject = readString(data, strings);
+                int groupCount = (int) readVarint(data);
+                List<String> groups = new ArrayList<>(groupCount);
+                for(int j = 0; j < groupCount; j++) {
+                    groups.add(readString(data, strings));
+                }
+                int segmentCount = (int) readVarint(data);
+                long size = readVarint(data);
+                int flags = data.get();
+                int duplicates = (flags & FLAG_DUPLICATES) != 0 ? (int) readVarint(data) : 0;
+                long blobOffset = readVarint(data);
+                int blockLength = (int) readVarint(data);
+                SegmentList segments = new SegmentList(data, data.position(), segmentCount, blobOffset, (flags & FLAG_SORTED) != 0);
+                data.position(data.position() + blockLength);
+                segmentLists.add(segments);
+                FileElement file = new FileElement(segments, size);
+                file.setPoster(poster);
+                file.setDate(date);
+                file.setSubject(subject);
+                file.setDuplicateSegments(duplicates);
+                for(String group : groups) {
+                    file.addUsenetGroup(group);
+                }
+                nzb.addFile(file);
+            }
+            long blobLength = readVarint(data);
+            if(blobLength > data.remaining()) {
+                throw new NZBParseException("Truncated NZBX message-id blob");
+            }
+            for(SegmentList segments : segmentLists) {
+                segments.setBlobPosition(data.position());
+            }
+            return nzb;
+        } catch(BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new NZBParseException("Invalid or truncated NZBX file");
+        }
+    }
+    
+    /**
+     * Read and check the magic number and version of the NZBX file
+     * @param data NZBX data
+     * @throws NZBParseException if the data is not a supported NZBX file
+     */
+    private static void readHeader(ByteBuffer data) throws NZBParseException {
+        for(byte b : MAGIC) {
+            if(data.get() != b) {
+                throw new NZBParseException("Not an NZBX file");
+            }
+        }
+        int version = data.get();
+        if(version != VERSION) {
+            throw new NZBParseException(String.format("Unsupported NZBX version %d", version));
+        }
+    }
+    
+    /**
+     * Read a string table index and get its string
+     * @param data NZBX data
+     * @param strings string table
+     * @return string or null
+     */
+    private static String readString(ByteBuffer data, String[] strings) {
+        int index = (int) readVarint(data);
+        return index == 0 ? null : strings[index - 1];
+    }
+    
+    /**
+     * Read a UTF-8 string of the given length in bytes
+     * @param data NZBX data
+     * @param length length of the string in bytes
+     * @return string
+     */
+    static String readString(ByteBuffer data, int length) {
+        if(data.hasArray()) {
+            String s = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+            data.position(data.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Read an unsigned LEB128 varint
+     * @param data NZBX data
+     * @return value
+     */
+    static long readVarint(ByteBuffer data) {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+    
+}
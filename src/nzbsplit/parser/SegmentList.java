@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.parser;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import nzbsplit.nzb.SegmentElement;
+
+/**
+ * List of the segments of a file in an NZBX file that decodes the segments
+ * from the segment block and the message-id blob on first access. The size of
+ * the list is known without decoding the segments. Segments are decoded in
+ * segment number order.
+ * @author Sam Malone
+ */
+class SegmentList extends AbstractList<SegmentElement> implements RandomAccess {
+    
+    private final ByteBuffer data;
+    private final int blockPosition;
+    private final int segmentCount;
+    private final long blobOffset;
+    private final boolean isSorted;
+    private int blobPosition;
+    private SegmentElement[] segments;
+    
+    /**
+     * Creates a new SegmentList
+     * @param data NZBX data
+     * @param blockPosition position of the segment block in the data
+     * @param segmentCount number of segments in the segment block
+     * @param blobOffset offset of the first message id in the message-id blob
+     * @param isSorted true if the segment block is in segment number order
+     */
+    SegmentList(ByteBuffer data, int blockPosition, int segmentCount, long blobOffset, boolean isSorted) {
+        this.data = data;
+        this.blockPosition = blockPosition;
+        this.segmentCount = segmentCount;
+        this.blobOffset = blobOffset;
+        this.isSorted = isSorted;
+    }
+    
+    /**
+     * Set the position of the message-id blob in the data
+     * @param blobPosition position of the message-id blob
+     */
+    void setBlobPosition(int blobPosition) {
+        this.blobPosition = blobPosition;
+    }
+    
+    @Override
+    public SegmentElement get(int index) {
+        return getSegments()[index];
+    }
+    
+    @Override
+    public SegmentElement set(int index, SegmentElement element) {
+        SegmentElement[] decoded = getSegments();
+        SegmentElement previous = decoded[index];
+        decoded[index] = element;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return segmentCount;
+    }
+    
+    /**
+     * Get the segments, decoding them if they have not been decoded yet
+     * @return segments
+     * @throws IllegalStateException if the segment block or message-id blob is invalid
+     */
+    private synchronized SegmentElement[] getSegments() {
+        if(segments == null) {
+            segments = decode();
+        }
+        return segments;
+    }
+    
+    /**
+     * Decode the segments from the segment block and the message-id blob
+     * @return segments
+     * @throws IllegalStateException if the segment block or message-id blob is invalid
+     */
+    private SegmentElement[] decode() {
+        ByteBuffer block = data.duplicate();
+        ByteBuffer blob = data.duplicate();
+        SegmentElement[] decoded = new SegmentElement[segmentCount];
+        try {
+            block.position(blockPosition);
+            blob.position((int) (blobPosition + blobOffset));
+            int number = 0;
+            for(int i = 0; i < segmentCount; i++) {
+                long delta = NZBXParser.readVarint(block);
+                number += (int) ((delta >>> 1) ^ -(delta & 1));
+                SegmentElement segment = new SegmentElement();
+                segment.setSegmentNumber(number);
+                segment.setBytes(NZBXParser.readVarint(block));
+                segment.setMessageId(NZBXParser.readString(blob, (int) NZBXParser.readVarint(block)));
+                decoded[i] = segment;
+            }
+        } catch(RuntimeException ex) {
+            throw new IllegalStateException("Invalid or truncated NZBX segments", ex);
+        }
+        if(!isSorted) {
+            Arrays.sort(decoded);
+        }
+        return decoded;
+    }
+    
+}
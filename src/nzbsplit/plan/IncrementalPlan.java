@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.plan;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import nzbsplit.HashUtil;
+import nzbsplit.SizeComparator;
+import nzbsplit.exception.SplitException;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+import nzbsplit.nzb.SegmentElement;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * An IncrementalPlan records the fingerprint of each file in each part of
+ * every split strategy, so that when an NZB is updated in place it can be
+ * split again with minimal movement. Files that were split before stay in
+ * their previous part, removed files are dropped from their part and only the
+ * new files are placed. A part only needs to be written again if its files
+ * have changed, so downloaders can carry on with the unchanged parts.
+ * <p>
+ * The parts of each split plan are stored under a name given by the caller,
+ * which identifies both the strategy and the names of its part files, so a
+ * plan is only updated by the same strategy. A plan is stored as
+ * tab separated lines, a plan line followed by a line for each file of each
+ * of its parts:
+ * <pre>
+ * S    plan name    part count
+ * F    part         file fingerprint
+ * </pre>
+ * @author Sam Malone
+ */
+public class IncrementalPlan {
+    
+    private final static String HEADER = "# nzbsplit incremental plan";
+    
+    private final Map<String, List<List<String>>> plans = new LinkedHashMap<>();
+    private final Map<FileElement, String> fingerprints = new IdentityHashMap<>();
+    
+    /**
+     * Load the plan stored at the given path
+     * @param planPath path to the stored plan
+     * @return stored plan or an empty plan if there is no stored plan
+     * @throws IOException if unable to read the stored plan
+     */
+    public static IncrementalPlan load(Path planPath) throws IOException {
+        IncrementalPlan plan = new IncrementalPlan();
+        try (BufferedReader reader = Files.newBufferedReader(planPath, StandardCharsets.UTF_8)) {
+            List<List<String>> parts = null;
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if(fields[0].equals("S") && fields.length == 3) {
+                    parts = new ArrayList<>();
+                    for(int i = Integer.parseInt(fields[2]); i > 0; i--) {
+                        parts.add(new ArrayList<String>());
+                    }
+                    plan.plans.put(fields[1], parts);
+                } else if(fields[0].equals("F") && fields.length == 3 && parts != null) {
+                    parts.get(Integer.parseInt(fields[1])).add(fields[2]);
+                }
+            }
+        } catch(NoSuchFileException ex) {
+            return plan;
+        } catch(NumberFormatException | IndexOutOfBoundsException ex) {
+            throw new IOException("Invalid incremental plan at " + planPath);
+        }
+        return plan;
+    }
+    
+    /**
+     * Store the plan at the given path. The plan is written to a temporary
+     * file first so a stored plan is never left half written.
+     * @param planPath path to store the plan at
+     * @throws IOException if unable to write the plan
+     */
+    public void save(Path planPath) throws IOException {
+        Path tmp = planPath.resolveSibling(planPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for(Map.Entry<String, List<List<String>>> entry : plans.entrySet()) {
+                List<List<String>> parts = entry.getValue();
+                writer.write(String.format("S\t%s\t%d", entry.getKey(), parts.size()));
+                writer.newLine();
+                for(int i = 0; i < parts.size(); i++) {
+                    for(String fingerprint : parts.get(i)) {
+                        writer.write(String.format("F\t%d\t%s", i, fingerprint));
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+        Files.move(tmp, planPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Split the given NZB into the parts of the previous plan with the given
+     * name. Each file that is in the previous plan is kept in its previous
+     * part. The new files are placed largest first: in the smallest part when
+     * splitting into a number of parts, or in the first part with enough space
+     * when splitting by size, adding parts if needed.
+     * Hash splits are already stable so they are always split from scratch.
+     * @param planName name of the plan
+     * @param strategy split strategy
+     * @param nzb updated NZB
+     * @return NZB parts or null if there is no previous plan, the number of
+     * parts has changed, a previous part is larger than the maximum split
+     * size or the strategy is a hash split, in which case the NZB should be
+     * split from scratch
+     * @throws SplitException if a new file is larger than the maximum split size
+     */
+    public List<NZB> update(String planName, SplitStrategy strategy, NZB nzb) throws SplitException {
+        List<List<String>> previous = plans.get(planName);
+        if(previous == null || strategy.getType() == SplitStrategy.HASH || (strategy.getType() == SplitStrategy.NUMBER && previous.size() != strategy.getValue())) {
+            return null;
+        }
+        Map<String, List<FileElement>> files = new LinkedHashMap<>();
+        for(FileElement file : nzb.getFiles()) {
+            String fingerprint = getFingerprint(file);
+            if(!files.containsKey(fingerprint)) {
+                files.put(fingerprint, new ArrayList<FileElement>(1));
+            }
+            files.get(fingerprint).add(file);
+        }
+        List<NZB> parts = new ArrayList<>(previous.size());
+        for(List<String> previousPart : previous) {
+            NZB part = new NZB(nzb.getMetadata());
+            for(String fingerprint : previousPart) {
+                List<FileElement> matches = files.get(fingerprint);
+                if(matches != null && !matches.isEmpty()) {
+                    part.addFile(matches.remove(0));
+                }
+            }
+            if(strategy.getType() == SplitStrategy.SIZE && part.getTotalFileSize() > strategy.getValue()) {
+                return null;
+            }
+            parts.add(part);
+        }
+        List<FileElement> newFiles = new ArrayList<>();
+        for(List<FileElement> unplaced : files.values()) {
+            newFiles.addAll(unplaced);
+        }
+        Collections.sort(newFiles, new SizeComparator(SizeComparator.DESCENDING));
+        for(FileElement file : newFiles) {
+            getPart(parts, strategy, nzb, file).addFile(file);
+        }
+        return parts;
+    }
+    
+    /**
+     * Get the part a new file should be placed in
+     * @param parts NZB parts
+     * @param strategy split strategy
+     * @param nzb updated NZB
+     * @param file new file
+     * @return NZB part
+     * @throws SplitException if the file is larger than the maximum split size
+     */
+    private static NZB getPart(List<NZB> parts, SplitStrategy strategy, NZB nzb, FileElement file) throws SplitException {
+        if(strategy.getType() == SplitStrategy.NUMBER) {
+            NZB smallest = parts.get(0);
+            for(NZB part : parts) {
+                if(part.getTotalFileSize() < smallest.getTotalFileSize()) {
+                    smallest = part;
+                }
+            }
+            return smallest;
+        }
+        if(file.getFileSize() > strategy.getValue()) {
+            throw new SplitException(String.format("The file %s is larger than the maximum split size", file.getSubject()));
+        }
+        for(NZB part : parts) {
+            if(part.getTotalFileSize() + file.getFileSize() <= strategy.getValue()) {
+                return part;
+            }
+        }
+        parts.add(new NZB(nzb.getMetadata()));
+        return parts.get(parts.size() - 1);
+    }
+    
+    /**
+     * Check if the files of the given part differ from the files of the same
+     * part in the previous plan with the given name
+     * @param planName name of the plan
+     * @param partNo part number
+     * @param part NZB part
+     * @return true if the part has changed or is new, false otherwise
+     */
+    public boolean isChanged(String planName, int partNo, NZB part) {
+        List<List<String>> previous = plans.get(planName);
+        if(previous == null || partNo >= previous.size()) {
+            return true;
+        }
+        return !previous.get(partNo).equals(getFingerprints(part));
+    }
+    
+    /**
+     * Get the number of parts in the plan with the given name
+     * @param planName name of the plan
+     * @return number of parts or 0 if there is no plan with the name
+     */
+    public int getPartCount(String planName) {
+        List<List<String>> parts = plans.get(planName);
+        return parts == null ? 0 : parts.size();
+    }
+    
+    /**
+     * Get the names of the stored plans
+     * @return copy of the plan names, in the order they were stored
+     */
+    public List<String> getPlanNames() {
+        return new ArrayList<>(plans.keySet());
+    }
+    
+    /**
+     * Remove the plan with the given name, if any
+     * @param planName name of the plan
+     */
+    public void remove(String planName) {
+        plans.remove(planName);
+    }
+    
+    /**
+     * Record the parts the NZB was split into under the given plan name
+     * @param planName name of the plan
+     * @param parts NZB parts
+     */
+    public void put(String planName, List<NZB> parts) {
+        List<List<String>> partFingerprints = new ArrayList<>(parts.size());
+        for(NZB part : parts) {
+            partFingerprints.add(getFingerprints(part));
+        }
+        plans.put(planName, partFingerprints);
+    }
+    
+    /**
+     * Get the fingerprints of the files of the given part, in order
+     * @param part NZB part
+     * @return list of file fingerprints
+     */
+    private List<String> getFingerprints(NZB part) {
+        List<String> list = new ArrayList<>(part.getFiles().size());
+        for(FileElement file : part.getFiles()) {
+            list.add(getFingerprint(file));
+        }
+        return list;
+    }
+    
+    /**
+     * Get the fingerprint of the given file, which changes if anything that
+     * is written for the file changes e.g. a segment is added
+     * @param file FileElement
+     * @return 64 bit FNV-1a hash of the file as hex
+     */
+    private String getFingerprint(FileElement file) {
+        String fingerprint = fingerprints.get(file);
+        if(fingerprint == null) {
+            long h = HashUtil.fnv1aField(HashUtil.FNV_OFFSET_BASIS, file.getSubject());
+            h = HashUtil.fnv1aField(h, file.getPoster());
+            h = HashUtil.fnv1aField(h, Integer.toString(file.getDate()));
+            for(String group : file.getUsenetGroups()) {
+                h = HashUtil.fnv1aField(h, group);
+            }
+            for(SegmentElement segment : file.getSegments()) {
+                h = HashUtil.fnv1aField(h, Integer.toString(segment.getSegmentNumber()));
+                h = HashUtil.fnv1aField(h, Long.toString(segment.getBytes()));
+                h = HashUtil.fnv1aField(h, segment.getMessageId());
+            }
+            fingerprint = String.format("%016x", h);
+            fingerprints.put(file, fingerprint);
+        }
+        return fingerprint;
+    }
+    
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.plan;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a {@link SplitPlan} as either tab separated values or JSON.
+ * @author Sam Malone
+ */
+public class PlanWriter {
+    
+    /**
+     * Tab separated values format
+     */
+    public final static String FORMAT_TSV = "tsv";
+    /**
+     * JSON format
+     */
+    public final static String FORMAT_JSON = "json";
+    
+    private final String format;
+    
+    /**
+     * Creates a new instance of PlanWriter
+     * @param format Output format. Either {@link PlanWriter#FORMAT_TSV} or
+     * {@link PlanWriter#FORMAT_JSON}
+     */
+    public PlanWriter(String format) {
+        this.format = format;
+    }
+    
+    /**
+     * Check if the given format is supported by the PlanWriter
+     * @param format output format
+     * @return true if the format is supported, false otherwise
+     */
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_TSV.equals(format) || FORMAT_JSON.equals(format);
+    }
+    
+    /**
+     * Write the given plan to the given writer
+     * @param plan SplitPlan to write
+     * @param writer destination writer
+     * @throws IOException if unable to write
+     */
+    public void write(SplitPlan plan, Writer writer) throws IOException {
+        write(plan, null, writer);
+    }
+    
+    /**
+     * Write the given named plan to the given writer. The name is written as a
+     * "#" comment line before a tsv plan, or as the "plan" field of a json plan.
+     * @param plan SplitPlan to write
+     * @param name name of the plan or null to omit the name
+     * @param writer destination writer
+     * @throws IOException if unable to write
+     */
+    public void write(SplitPlan plan, String name, Writer writer) throws IOException {
+        if(FORMAT_JSON.equals(format)) {
+            writeJson(plan, name, writer);
+        } else {
+            if(name != null) {
+                writer.write(String.format("# %s\n", name));
+            }
+            writeTsv(plan, writer);
+        }
+        writer.flush();
+    }
+    
+    /**
+     * Write the plan as tab separated values. Each part is written as a line of
+     * "P, part index, file count, bytes" followed by a line for each file of
+     * "F, file index, part index, bytes, subject". Files of the source NZB
+     * that are not in any part, such as those of other provider classes, are
+     * left out.
+     * @param plan SplitPlan to write
+     * @param writer destination writer
+     * @throws IOException if unable to write
+     */
+    private static void writeTsv(SplitPlan plan, Writer writer) throws IOException {
+        for(int i = 0; i < plan.getPartCount(); i++) {
+            writer.write(String.format("P\t%d\t%d\t%d\n", i, plan.getPartFileCount(i), plan.getPartSize(i)));
+        }
+        for(int i = 0; i < plan.getFileCount(); i++) {
+            if(plan.getPart(i) < 0) {
+                continue;
+            }
+            String subject = plan.getFile(i).getSubject().replace('\t', ' ').replace('\n', ' ');
+            writer.write(String.format("F\t%d\t%d\t%d\t%s\n", i, plan.getPart(i), plan.getFile(i).getFileSize(), subject));
+        }
+    }
+    
+    /**
+     * Write the plan as a JSON object containing a "parts" array and a "files"
+     * array. Files that are not in any part are left out, as for tsv.
+     * @param plan SplitPlan to write
+     * @param name name of the plan or null to omit the name
+     * @param writer destination writer
+     * @throws IOException if unable to write
+     */
+    private static void writeJson(SplitPlan plan, String name, Writer writer) throws IOException {
+        writer.write("{");
+        if(name != null) {
+            writer.write(String.format("\"plan\":\"%s\",", escape(name)));
+        }
+        writer.write("\"parts\":[");
+        for(int i = 0; i < plan.getPartCount(); i++) {
+            writer.write(String.format("%s{\"part\":%d,\"files\":%d,\"bytes\":%d}", i == 0 ? "" : ",", i, plan.getPartFileCount(i), plan.getPartSize(i)));
+        }
+        writer.write("],\"files\":[");
+        boolean isFirst = true;
+        for(int i = 0; i < plan.getFileCount(); i++) {
+            if(plan.getPart(i) < 0) {
+                continue;
+            }
+            writer.write(String.format("%s{\"file\":%d,\"part\":%d,\"bytes\":%d,\"subject\":\"%s\"}", isFirst ? "" : ",", i, plan.getPart(i), plan.getFile(i).getFileSize(), escape(plan.getFile(i).getSubject())));
+            isFirst = false;
+        }
+        writer.write("]}\n");
+    }
+    
+    /**
+     * Escape the given string for use in a JSON string value
+     * @param s String to escape
+     * @return escaped string
+     */
+    public static String escape(String s) {
+        final StringBuilder sb = new StringBuilder(s.length() + 8);
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+    
+}
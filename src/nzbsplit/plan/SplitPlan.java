@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.plan;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A SplitPlan describes which part each file of an NZB has been assigned to
+ * along with the totals of each part. Files are identified by their index
+ * in the source NZB.
+ * @author Sam Malone
+ */
+public class SplitPlan {
+    
+    private final List<FileElement> files;
+    private final int[] fileParts;
+    private final long[] partSizes;
+    private final int[] partFileCounts;
+    private final int[][] partFiles;
+    
+    /**
+     * Creates a new SplitPlan from the NZB parts that the source NZB was split into
+     * @param source NZB that was split
+     * @param parts NZB parts returned from the splitter
+     */
+    public SplitPlan(NZB source, List<NZB> parts) {
+        files = source.getFiles();
+        fileParts = new int[files.size()];
+        partSizes = new long[parts.size()];
+        partFileCounts = new int[parts.size()];
+        partFiles = new int[parts.size()][];
+        final Map<FileElement, Integer> indexes = new IdentityHashMap<>(files.size());
+        for(int i = 0; i < files.size(); i++) {
+            indexes.put(files.get(i), i);
+            fileParts[i] = -1;
+        }
+        for(int i = 0; i < parts.size(); i++) {
+            int[] partFileIndexes = new int[parts.get(i).getFiles().size()];
+            int count = 0;
+            for(FileElement file : parts.get(i).getFiles()) {
+                Integer fileIndex = indexes.get(file);
+                if(fileIndex != null) {
+                    fileParts[fileIndex] = i;
+                    partFileIndexes[count++] = fileIndex;
+                }
+            }
+            partFiles[i] = count == partFileIndexes.length ? partFileIndexes : Arrays.copyOf(partFileIndexes, count);
+            partSizes[i] = parts.get(i).getTotalFileSize();
+            partFileCounts[i] = parts.get(i).getFiles().size();
+        }
+    }
+    
+    /**
+     * Get the number of files in the source NZB
+     * @return number of files
+     */
+    public int getFileCount() {
+        return fileParts.length;
+    }
+    
+    /**
+     * Get the number of parts the source NZB was split into
+     * @return number of parts
+     */
+    public int getPartCount() {
+        return partSizes.length;
+    }
+    
+    /**
+     * Get the file at the given index in the source NZB
+     * @param fileIndex index of the file in the source NZB
+     * @return FileElement
+     */
+    public FileElement getFile(int fileIndex) {
+        return files.get(fileIndex);
+    }
+    
+    /**
+     * Get the index of the part that the given file was assigned to
+     * @param fileIndex index of the file in the source NZB
+     * @return part index or -1 if the file was not assigned to any part
+     */
+    public int getPart(int fileIndex) {
+        return fileParts[fileIndex];
+    }
+    
+    /**
+     * Get the indexes in the source NZB of the files of the given part, in
+     * the order of the part
+     * @param partIndex part index
+     * @return file indexes
+     */
+    public int[] getPartFiles(int partIndex) {
+        return partFiles[partIndex];
+    }
+    
+    /**
+     * Get the total size (in bytes) of the given part
+     * @param partIndex part index
+     * @return total size of the part in bytes
+     */
+    public long getPartSize(int partIndex) {
+        return partSizes[partIndex];
+    }
+    
+    /**
+     * Get the number of files that the given part contains
+     * @param partIndex part index
+     * @return number of files in the part
+     */
+    public int getPartFileCount(int partIndex) {
+        return partFileCounts[partIndex];
+    }
+    
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.progress;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of parsing, splitting and writing one NZB, which is read by a
+ * {@link ProgressReporter} at a fixed interval. The parse counters are only
+ * updated by the thread parsing the NZB, at most once per buffer read or file
+ * parsed, so they are plain volatile fields rather than atomics. The write
+ * counters are atomic as the parts of different strategies may be written
+ * concurrently, and are updated once per buffer written.
+ * @author Sam Malone
+ */
+public class Progress {
+    
+    /**
+     * Phase whilst the NZB is read and parsed
+     */
+    public final static String PHASE_PARSE = "parse";
+    /**
+     * Phase whilst the parsed NZB is split, before the first part is written
+     */
+    public final static String PHASE_SPLIT = "split";
+    /**
+     * Phase once the first part has been opened
+     */
+    public final static String PHASE_WRITE = "write";
+    
+    private final String name;
+    private final long totalBytes;
+    private final long startTime = System.nanoTime();
+    private volatile long splitStartTime = 0;
+    private final AtomicLong writeStartTime = new AtomicLong();
+    private volatile long bytesRead = 0;
+    private volatile int files = 0;
+    private volatile long segments = 0;
+    private final AtomicInteger parts = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private boolean isReported = false;
+    
+    /**
+     * Creates a new instance of Progress
+     * @param name name of the NZB e.g. input.nzb
+     * @param totalBytes size of the NZB in bytes or -1 if unknown
+     */
+    Progress(String name, long totalBytes) {
+        this.name = name;
+        this.totalBytes = totalBytes;
+    }
+    
+    /**
+     * Record bytes read from the NZB. Must only be called by the parsing thread.
+     * @param bytes number of bytes read
+     */
+    public void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+    
+    /**
+     * Record a parsed file. Must only be called by the parsing thread.
+     * @param segmentCount number of segments of the file
+     */
+    public void addFile(int segmentCount) {
+        files++;
+        segments += segmentCount;
+    }
+    
+    /**
+     * Start splitting the parsed NZB. This may be called again e.g. for each
+     * provider class, which has no effect once the first part is written.
+     */
+    public void startSplitting() {
+        if(splitStartTime == 0) {
+            splitStartTime = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Start writing the parts. Called when each part is opened, only the
+     * first call starts the write phase. This may be called concurrently.
+     */
+    public void startWriting() {
+        long now = System.nanoTime();
+        if(writeStartTime.compareAndSet(0, now) && splitStartTime == 0) {
+            splitStartTime = now;
+        }
+    }
+    
+    /**
+     * Record bytes written to a part. This may be called concurrently.
+     * @param bytes number of bytes written
+     */
+    public void addBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+    
+    /**
+     * Record a part that has been written. This may be called concurrently.
+     */
+    public void addPart() {
+        parts.incrementAndGet();
+    }
+    
+    /**
+     * Get the name of the NZB
+     * @return name of the NZB
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Get the size of the NZB
+     * @return size of the NZB in bytes or -1 if unknown
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    /**
+     * Get the number of bytes of the NZB read so far
+     * @return number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    /**
+     * Get the number of files parsed so far
+     * @return number of files
+     */
+    public int getFiles() {
+        return files;
+    }
+    
+    /**
+     * Get the number of segments parsed so far
+     * @return number of segments
+     */
+    public long getSegments() {
+        return segments;
+    }
+    
+    /**
+     * Get the current phase
+     * @return {@link Progress#PHASE_PARSE}, {@link Progress#PHASE_SPLIT} or
+     * {@link Progress#PHASE_WRITE}
+     */
+    public String getPhase() {
+        if(writeStartTime.get() != 0) {
+            return PHASE_WRITE;
+        }
+        return splitStartTime != 0 ? PHASE_SPLIT : PHASE_PARSE;
+    }
+    
+    /**
+     * Get the number of parts written so far
+     * @return number of parts
+     */
+    public int getParts() {
+        return parts.get();
+    }
+    
+    /**
+     * Get the number of bytes written to the parts so far, after compression
+     * if the parts are compressed
+     * @return number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+    
+    /**
+     * Get the time since the NZB was started
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+    
+    /**
+     * Get the average rate the NZB was read at whilst parsing
+     * @return bytes per second
+     */
+    public long getReadRate() {
+        long end = splitStartTime != 0 ? splitStartTime : System.nanoTime();
+        return rate(bytesRead, end - startTime);
+    }
+    
+    /**
+     * Get the average rate the parts were written at since the first part was
+     * opened
+     * @return bytes per second or 0 if not writing
+     */
+    public long getWriteRate() {
+        long start = writeStartTime.get();
+        return start == 0 ? 0 : rate(bytesWritten.get(), System.nanoTime() - start);
+    }
+    
+    /**
+     * Estimate the time until the NZB is parsed from the average read rate
+     * @return estimated time in milliseconds or -1 if unknown or not parsing
+     */
+    public long getEtaMillis() {
+        if(totalBytes < 0 || !PHASE_PARSE.equals(getPhase())) {
+            return -1;
+        }
+        long rate = getReadRate();
+        return rate <= 0 ? -1 : Math.max(0, totalBytes - bytesRead) * 1000 / rate;
+    }
+    
+    /**
+     * Check if the progress has been reported before it finished
+     * @return true if reported, false otherwise
+     */
+    boolean isReported() {
+        return isReported;
+    }
+    
+    /**
+     * Mark the progress as reported
+     */
+    void setReported() {
+        isReported = true;
+    }
+    
+    private static long rate(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : (long) (bytes * 1e9 / nanos);
+    }
+    
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.progress;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import nzbsplit.FileSize;
+import nzbsplit.plan.PlanWriter;
+
+/**
+ * Reports the {@link Progress} of the NZBs being split, either as a console
+ * line or as a JSON object per line. The progress of each NZB is printed at a
+ * fixed interval by a daemon thread, so the threads parsing and writing the
+ * NZBs only update counters. An NZB that finishes within the interval is only
+ * reported when it finishes, and only in JSON format.
+ * @author Sam Malone
+ */
+public class ProgressReporter {
+    
+    /**
+     * Console line format
+     */
+    public final static String FORMAT_CONSOLE = "console";
+    /**
+     * JSON lines format
+     */
+    public final static String FORMAT_JSON = "json";
+    /**
+     * Final event of an NZB that was split
+     */
+    public final static String EVENT_DONE = "done";
+    /**
+     * Final event of an NZB that was parsed, but whose parts are written later
+     * as another NZB progress e.g. in pipeline mode
+     */
+    public final static String EVENT_PARSED = "parsed";
+    /**
+     * Final event of an NZB that failed to split
+     */
+    public final static String EVENT_FAILED = "failed";
+    
+    private final static long DEFAULT_INTERVAL = 1000;
+    
+    private final String format;
+    private final PrintStream out;
+    private final List<Progress> active = new ArrayList<>();
+    private long interval = DEFAULT_INTERVAL;
+    private ScheduledExecutorService timer;
+    
+    /**
+     * Creates a new instance of ProgressReporter
+     * @param format Output format. Either {@link ProgressReporter#FORMAT_CONSOLE}
+     * or {@link ProgressReporter#FORMAT_JSON}
+     * @param out destination of the progress lines
+     */
+    public ProgressReporter(String format, PrintStream out) {
+        this.format = format;
+        this.out = out;
+    }
+    
+    /**
+     * Check if the given format is supported by the ProgressReporter
+     * @param format output format
+     * @return true if the format is supported, false otherwise
+     */
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_CONSOLE.equals(format) || FORMAT_JSON.equals(format);
+    }
+    
+    /**
+     * Set the interval the progress is printed at. Must be set before the
+     * first NZB is started. Default is 1000ms.
+     * @param interval interval in milliseconds
+     */
+    public synchronized void setInterval(long interval) {
+        this.interval = interval;
+    }
+    
+    /**
+     * Start reporting the progress of an NZB
+     * @param name name of the NZB e.g. input.nzb
+     * @param totalBytes size of the NZB in bytes or -1 if unknown
+     * @return progress to record the parse and write of the NZB on
+     */
+    public synchronized Progress start(String name, long totalBytes) {
+        if(timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "progress");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        Progress progress = new Progress(name, totalBytes);
+        active.add(progress);
+        return progress;
+    }
+    
+    /**
+     * Stop reporting the progress of an NZB and print its final progress
+     * @param progress progress returned by {@link #start(java.lang.String, long)}
+     * @param event {@link ProgressReporter#EVENT_DONE}, {@link ProgressReporter#EVENT_PARSED}
+     * or {@link ProgressReporter#EVENT_FAILED}
+     */
+    public synchronized void finish(Progress progress, String event) {
+        active.remove(progress);
+        if(FORMAT_JSON.equals(format)) {
+            out.println(toJson(progress, event, true));
+        } else if(progress.isReported()) {
+            out.println(String.format("%s: %s in %.1fs, read %s at %s/s, wrote %d parts totalling %s", progress.getName(), event,
+                progress.getElapsedMillis() / 1000.0, FileSize.format(progress.getBytesRead()),
+                FileSize.format(progress.getReadRate()), progress.getParts(), FileSize.format(progress.getBytesWritten())));
+        }
+    }
+    
+    /**
+     * Print the progress of every NZB being split
+     */
+    private synchronized void report() {
+        for(Progress progress : active) {
+            progress.setReported();
+            if(FORMAT_JSON.equals(format)) {
+                out.println(toJson(progress, progress.getPhase(), false));
+            } else {
+                out.println(toConsole(progress));
+            }
+        }
+    }
+    
+    /**
+     * Format the progress as a console line e.g.
+     * "input.nzb: parsing 23.40 MB of 56.83 MB (41%) at 45.20 MB/s, 12,000 files and 250,000 segments, ETA 1s"
+     * or "input.nzb: writing, 2 parts done, 23.40 MB written at 45.20 MB/s"
+     * @param progress progress of an NZB
+     * @return console line
+     */
+    private static String toConsole(Progress progress) {
+        StringBuilder sb = new StringBuilder(progress.getName());
+        String phase = progress.getPhase();
+        if(Progress.PHASE_WRITE.equals(phase)) {
+            sb.append(String.format(": writing, %d parts done, %s written at %s/s", progress.getParts(),
+                FileSize.format(progress.getBytesWritten()), FileSize.format(progress.getWriteRate())));
+        } else if(Progress.PHASE_SPLIT.equals(phase)) {
+            sb.append(String.format(": splitting %,d files and %,d segments", progress.getFiles(), progress.getSegments()));
+        } else {
+            sb.append(": parsing ").append(FileSize.format(progress.getBytesRead()));
+            if(progress.getTotalBytes() >= 0) {
+                sb.append(" of ").append(FileSize.format(progress.getTotalBytes()));
+                appendPercent(sb, progress.getBytesRead(), progress.getTotalBytes());
+            }
+            sb.append(String.format(" at %s/s, %,d files and %,d segments", FileSize.format(progress.getReadRate()),
+                progress.getFiles(), progress.getSegments()));
+        }
+        long eta = progress.getEtaMillis();
+        if(eta >= 0) {
+            sb.append(String.format(", ETA %ds", (eta + 999) / 1000));
+        }
+        return sb.toString();
+    }
+    
+    private static void appendPercent(StringBuilder sb, long done, long total) {
+        if(total > 0) {
+            sb.append(" (").append(Math.min(100, done * 100 / total)).append("%)");
+        }
+    }
+    
+    /**
+     * Format the progress as a JSON object. Unknown sizes and times are null.
+     * @param progress progress of an NZB
+     * @param event phase of the NZB or a final event
+     * @param isFinal true if the event is the final event of the NZB
+     * @return JSON object
+     */
+    private static String toJson(Progress progress, String event, boolean isFinal) {
+        long totalBytes = progress.getTotalBytes();
+        long eta = progress.getEtaMillis();
+        return String.format(Locale.ROOT, "{\"nzb\":\"%s\",\"event\":\"%s\",\"elapsedMillis\":%d,\"bytesRead\":%d,\"totalBytes\":%s,"
+            + "\"files\":%d,\"segments\":%d,\"readRate\":%d,\"parts\":%d,\"bytesWritten\":%d,\"writeRate\":%d,\"etaMillis\":%s}",
+            PlanWriter.escape(progress.getName()), event, progress.getElapsedMillis(), progress.getBytesRead(),
+            totalBytes < 0 ? "null" : Long.toString(totalBytes), progress.getFiles(), progress.getSegments(),
+            progress.getReadRate(), progress.getParts(), progress.getBytesWritten(),
+            progress.getWriteRate(), eta < 0 || isFinal ? "null" : Long.toString(eta));
+    }
+    
+}
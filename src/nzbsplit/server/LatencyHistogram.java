@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in milliseconds. Latencies are counted in
+ * power of two buckets i.e. bucket i counts latencies less than 2^i ms, so
+ * percentiles are accurate to within a factor of two.
+ * @author Sam Malone
+ */
+public class LatencyHistogram {
+    
+    private final static int BUCKETS = 24;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Record a latency
+     * @param millis latency in milliseconds
+     */
+    public void record(long millis) {
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, millis)));
+        counts.incrementAndGet(bucket);
+        total.incrementAndGet();
+        sum.addAndGet(millis);
+        long curMax = max.get();
+        while(millis > curMax && !max.compareAndSet(curMax, millis)) {
+            curMax = max.get();
+        }
+    }
+    
+    /**
+     * Get the upper bound of the bucket that contains the given percentile
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the latency in milliseconds or 0 if no latencies
+     * have been recorded
+     */
+    public long getPercentile(double percentile) {
+        final long count = total.get();
+        if(count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if(seen >= rank) {
+                return Math.min(1L << i, max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * Write the histogram as a JSON object containing the count, mean, max,
+     * percentiles and the non empty buckets keyed by their upper bound
+     * @return JSON object
+     */
+    public String toJson() {
+        final long count = total.get();
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("{\"count\":%d,\"mean\":%.2f,\"max\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"buckets\":{",
+            count, count == 0 ? 0.0 : (double) sum.get() / count, max.get(), getPercentile(50), getPercentile(90), getPercentile(99)));
+        boolean first = true;
+        for(int i = 0; i < BUCKETS; i++) {
+            long bucketCount = counts.get(i);
+            if(bucketCount > 0) {
+                sb.append(String.format("%s\"<%d\":%d", first ? "" : ",", 1L << i, bucketCount));
+                first = false;
+            }
+        }
+        return sb.append("}}").toString();
+    }
+    
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import nzbsplit.FileNamer;
+import nzbsplit.NZBWriter;
+import nzbsplit.api.NZBSplit;
+import nzbsplit.api.PartSink;
+import nzbsplit.exception.ParseException;
+import nzbsplit.exception.SplitException;
+import nzbsplit.nzb.NZB;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * An HTTP server that splits NZB files uploaded to it. The server listens on
+ * the loopback address and handles the following requests:
+ * <ul>
+ * <li>POST /split?n=4 or /split?s=200MB with the NZB as the request body.
+ * The parts are returned as a zip file. n and s accept comma separated lists
+ * in the same way as the command line. An optional name parameter is used
+ * to name the parts (default is "split").</li>
+ * <li>GET /stats returns the request counts and latency histogram as JSON.</li>
+ * </ul>
+ * Requests are handled by a fixed number of threads using {@link NZBSplit},
+ * so each thread reuses its own warm parser. Once the request queue is full,
+ * the server stops accepting connections until a request completes.
+ * @author Sam Malone
+ */
+public class SplitServer {
+    
+    /**
+     * Default maximum number of requests waiting to be handled
+     */
+    public final static int DEFAULT_QUEUE_SIZE = 64;
+    
+    private final static String NZB_EXTENSION = ".nzb";
+    private final static String DEFAULT_NAME = "split";
+    
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final NZBWriter nzbWriter;
+    private final LatencyHistogram latency;
+    private final AtomicLong requests;
+    private final AtomicLong failures;
+    private final AtomicLong bytesIn;
+    private final AtomicLong partsOut;
+    private final AtomicInteger inFlight;
+    
+    /**
+     * Creates a new instance of SplitServer
+     * @param port port to listen on or 0 for any free port
+     * @param threads maximum number of requests to handle at the same time
+     * @param queueSize maximum number of requests waiting to be handled
+     * @throws IOException if unable to bind to the port
+     */
+    public SplitServer(int port, int threads, int queueSize) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), queueSize);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    waitForCapacity(r, executor);
+                }
+            });
+        nzbWriter = new NZBWriter(false);
+        latency = new LatencyHistogram();
+        requests = new AtomicLong();
+        failures = new AtomicLong();
+        bytesIn = new AtomicLong();
+        partsOut = new AtomicLong();
+        inFlight = new AtomicInteger();
+        server.setExecutor(executor);
+        server.createContext("/split", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleSplit(exchange);
+            }
+        });
+        server.createContext("/stats", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleStats(exchange);
+            }
+        });
+    }
+    
+    /**
+     * Start handling requests in the background
+     */
+    public void start() {
+        server.start();
+    }
+    
+    /**
+     * Stop the server, waiting at most the given delay for requests to complete
+     * @param delaySeconds maximum time to wait in seconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+    
+    /**
+     * Get the port the server is listening on
+     * @return port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Block the HTTP dispatcher thread until the request queue has space. This
+     * stops new connections being accepted whilst the server is at capacity.
+     * @param r request to queue
+     * @param executor request executor
+     */
+    private static void waitForCapacity(Runnable r, ThreadPoolExecutor executor) {
+        if(executor.isShutdown()) {
+            throw new RejectedExecutionException("The server has been stopped");
+        }
+        try {
+            executor.getQueue().put(r);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ex);
+        }
+    }
+    
+    /**
+     * Split the uploaded NZB and respond with the parts as a zip file
+     * @param exchange HTTP exchange
+     * @throws IOException if unable to respond
+     */
+    private void handleSplit(HttpExchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        try {
+            if(!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Expected a POST request containing an NZB");
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            NZBSplit nzbSplit = new NZBSplit(getStrategies(params));
+            String name = params.containsKey("name") ? new File(params.get("name")).getName() : DEFAULT_NAME;
+            ZipPartSink sink = new ZipPartSink(exchange, name);
+            nzbSplit.split(new CountingInputStream(exchange.getRequestBody(), bytesIn), sink);
+            sink.close();
+        } catch (ParseException | SplitException ex) {
+            if(exchange.getResponseCode() < 0) {
+                sendError(exchange, 400, ex.getMessage());
+            } else {
+                failures.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException ex) {
+            failures.incrementAndGet();
+            throw ex;
+        } finally {
+            inFlight.decrementAndGet();
+            latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Get the split strategies from the request parameters
+     * @param params request parameters
+     * @return list of split strategies
+     * @throws ParseException if no split strategy was given or unable to parse a strategy
+     */
+    private static List<SplitStrategy> getStrategies(Map<String, String> params) throws ParseException {
+        final List<SplitStrategy> strategies = new ArrayList<>();
+        if(params.containsKey("n")) {
+            strategies.addAll(SplitStrategy.parseNumbers(params.get("n")));
+        }
+        if(params.containsKey("s")) {
+            strategies.addAll(SplitStrategy.parseSizes(params.get("s")));
+        }
+        if(params.containsKey("k")) {
+            strategies.addAll(SplitStrategy.parseHashes(params.get("k")));
+        }
+        if(strategies.isEmpty()) {
+            throw new ParseException("No split option was defined. Use the n, s or k parameter");
+        }
+        return strategies;
+    }
+    
+    /**
+     * A PartSink that writes each NZB part as an entry of a zip file sent as the
+     * response. The response headers are only sent once the first part is
+     * accepted so that an error can be sent if the NZB fails to split.
+     */
+    private class ZipPartSink implements PartSink {
+        
+        private final HttpExchange exchange;
+        private final String name;
+        private ZipOutputStream zip = null;
+        
+        public ZipPartSink(HttpExchange exchange, String name) {
+            this.exchange = exchange;
+            this.name = name;
+        }
+
+        @Override
+        public void accept(String planName, int partNo, NZB part) throws IOException {
+            FileNamer namer = new FileNamer(name + NZB_EXTENSION, NZB_EXTENSION);
+            namer.setPlanName(planName);
+            getZip().putNextEntry(new ZipEntry(namer.getPartFileName(null, partNo).getName()));
+            nzbWriter.write(part, zip);
+            zip.closeEntry();
+            partsOut.incrementAndGet();
+        }
+        
+        /**
+         * Get the zip file stream, sending the response headers if not yet sent
+         * @return zip file stream
+         * @throws IOException if unable to send the response headers
+         */
+        private ZipOutputStream getZip() throws IOException {
+            if(zip == null) {
+                exchange.getResponseHeaders().set("Content-Type", "application/zip");
+                exchange.getResponseHeaders().set("Content-Disposition", String.format("attachment; filename=\"%s.zip\"", name));
+                exchange.sendResponseHeaders(200, 0);
+                zip = new ZipOutputStream(exchange.getResponseBody());
+            }
+            return zip;
+        }
+        
+        /**
+         * Finish the zip file
+         * @throws IOException if unable to finish the zip file
+         */
+        public void close() throws IOException {
+            getZip().close();
+        }
+        
+    }
+    
+    /**
+     * Respond with the request counts and latency histogram as JSON
+     * @param exchange HTTP exchange
+     * @throws IOException if unable to respond
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        String stats = String.format("{\"requests\":%d,\"failures\":%d,\"inFlight\":%d,\"queued\":%d,\"bytesIn\":%d,\"partsOut\":%d,\"latencyMillis\":%s}\n",
+            requests.get(), failures.get(), inFlight.get(), executor.getQueue().size(), bytesIn.get(), partsOut.get(), latency.toJson());
+        send(exchange, 200, "application/json", stats);
+    }
+    
+    /**
+     * Respond with an error message
+     * @param exchange HTTP exchange
+     * @param status HTTP status code
+     * @param message error message
+     * @throws IOException if unable to respond
+     */
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        failures.incrementAndGet();
+        send(exchange, status, "text/plain; charset=utf-8", "ERROR: " + message + "\n");
+    }
+    
+    /**
+     * Respond with the given body
+     * @param exchange HTTP exchange
+     * @param status HTTP status code
+     * @param contentType content type of the body
+     * @param body response body
+     * @throws IOException if unable to respond
+     */
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    /**
+     * Parse a URL query string into a map of parameters
+     * @param query raw query string or null
+     * @return map of parameter names to values
+     * @throws UnsupportedEncodingException if UTF-8 is not supported
+     */
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<>();
+        if(query == null) {
+            return params;
+        }
+        for(String param : query.split("&")) {
+            int index = param.indexOf('=');
+            if(index > 0) {
+                params.put(URLDecoder.decode(param.substring(0, index), "UTF-8"), URLDecoder.decode(param.substring(index + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+    
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.shard;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import nzbsplit.plan.SplitPlan;
+
+/**
+ * A ShardManifest describes the parts of a split NZB as byte ranges of the
+ * source NZB file, so the nodes of a cluster can each write their own parts
+ * straight from the source file without parsing it. A coordinator parses the
+ * NZB once, computes the split plan and publishes the manifest, e.g. in a
+ * shared directory. Each part is the bytes before the first file element, the
+ * byte ranges of the file elements of the part and the bytes after the last
+ * file element. The ranges are in the order of the files of the part, so a
+ * part keeps the order the files were given by the split, e.g. by
+ * --priority, and ranges of files that are adjacent in both the part and the
+ * source are merged.
+ * <p>
+ * A manifest is stored as tab separated lines. The source path is relative to
+ * the directory of the manifest if possible.
+ * <pre>
+ * N    source path    source size    source modified time (ms)
+ * H    head end       tail start
+ * P    part           start+length start+length...
+ * </pre>
+ * @author Sam Malone
+ */
+public class ShardManifest {
+    
+    private final static String HEADER = "# nzbsplit shard manifest";
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static byte[] FILE_START = "<file".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] FILE_END = "</file>".getBytes(StandardCharsets.US_ASCII);
+    
+    private final Path source;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long headEnd;
+    private final long tailStart;
+    private final List<long[]> parts;
+    
+    /**
+     * Creates a new ShardManifest
+     * @param source path to the source NZB file
+     * @param sourceSize size of the source NZB file in bytes
+     * @param sourceModified last modified time of the source NZB file in ms
+     * @param headEnd offset of the first file element
+     * @param tailStart offset after the last file element
+     * @param parts start and length pairs of the byte ranges of each part
+     */
+    private ShardManifest(Path source, long sourceSize, long sourceModified, long headEnd, long tailStart, List<long[]> parts) {
+        this.source = source;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.headEnd = headEnd;
+        this.tailStart = tailStart;
+        this.parts = parts;
+    }
+    
+    /**
+     * Create the manifest of the given split plan of the source NZB file. The
+     * source must be an uncompressed NZB file that the plan was computed from.
+     * @param source path to the source NZB file
+     * @param plan split plan of the source NZB
+     * @return ShardManifest
+     * @throws IOException if unable to read the source or its file elements
+     * do not match the files of the plan
+     */
+    public static ShardManifest create(Path source, SplitPlan plan) throws IOException {
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long[] ranges = findFileRanges(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), plan.getFileCount());
+            List<long[]> parts = new ArrayList<>(plan.getPartCount());
+            for(int part = 0; part < plan.getPartCount(); part++) {
+                int[] files = plan.getPartFiles(part);
+                long[] partRanges = new long[files.length * 2];
+                int count = 0;
+                for(int file : files) {
+                    long start = ranges[file * 2];
+                    long end = ranges[file * 2 + 1];
+                    if(count > 0 && partRanges[count - 2] + partRanges[count - 1] == start) {
+                        partRanges[count - 1] += end - start;
+                    } else {
+                        partRanges[count++] = start;
+                        partRanges[count++] = end - start;
+                    }
+                }
+                parts.add(Arrays.copyOf(partRanges, count));
+            }
+            long headEnd = plan.getFileCount() == 0 ? channel.size() : ranges[0];
+            long tailStart = plan.getFileCount() == 0 ? channel.size() : ranges[ranges.length - 1];
+            return new ShardManifest(source, channel.size(), modified, headEnd, tailStart, parts);
+        }
+    }
+    
+    /**
+     * Find the start and end offsets of each file element in the NZB
+     * @param data NZB file content
+     * @param fileCount number of files the NZB was parsed into
+     * @return start and end offset pairs in the order of the file elements
+     * @throws IOException if the number of file elements found does not match
+     * the number of files, e.g. if the NZB is compressed
+     */
+    private static long[] findFileRanges(MappedByteBuffer data, int fileCount) throws IOException {
+        long[] ranges = new long[fileCount * 2];
+        int found = 0;
+        int limit = data.limit();
+        for(int i = 0; i < limit; i++) {
+            if(data.get(i) != '<') {
+                continue;
+            }
+            if(found % 2 == 0 && matches(data, i, FILE_START) && i + FILE_START.length < limit && isTagEnd(data.get(i + FILE_START.length))) {
+                if(found == ranges.length) {
+                    throw new IOException("The file elements of the NZB do not match its files");
+                }
+                ranges[found++] = i;
+            } else if(found % 2 == 1 && matches(data, i, FILE_END)) {
+                ranges[found++] = i + FILE_END.length;
+            }
+        }
+        if(found != ranges.length) {
+            throw new IOException("The file elements of the NZB do not match its files. Compressed NZB files cannot be sharded");
+        }
+        return ranges;
+    }
+    
+    /**
+     * Check if the data at the given offset matches the given bytes
+     * @param data NZB file content
+     * @param offset offset in the data
+     * @param bytes bytes to match
+     * @return true if the data matches, false otherwise
+     */
+    private static boolean matches(ByteBuffer data, int offset, byte[] bytes) {
+        if(offset + bytes.length > data.limit()) {
+            return false;
+        }
+        for(int i = 0; i < bytes.length; i++) {
+            if(data.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Check if the given byte ends a tag name
+     * @param b byte after a tag name
+     * @return true if the byte is whitespace, / or >
+     */
+    private static boolean isTagEnd(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>' || b == '/';
+    }
+    
+    /**
+     * Load the manifest stored at the given path
+     * @param manifestPath path to the manifest
+     * @return ShardManifest
+     * @throws IOException if unable to read the manifest or it is invalid
+     */
+    public static ShardManifest load(Path manifestPath) throws IOException {
+        Path source = null;
+        long size = 0, modified = 0, headEnd = 0, tailStart = 0;
+        List<long[]> parts = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                switch(fields[0]) {
+                    case "N":
+                        source = resolve(manifestPath, fields[1]);
+                        size = Long.parseLong(fields[2]);
+                        modified = Long.parseLong(fields[3]);
+                        break;
+                    case "H":
+                        headEnd = Long.parseLong(fields[1]);
+                        tailStart = Long.parseLong(fields[2]);
+                        break;
+                    case "P":
+                        String[] ranges = fields.length > 2 ? fields[2].split(" ") : new String[0];
+                        long[] partRanges = new long[ranges.length * 2];
+                        for(int i = 0; i < ranges.length; i++) {
+                            int plus = ranges[i].indexOf('+');
+                            partRanges[i * 2] = Long.parseLong(ranges[i].substring(0, plus));
+                            partRanges[i * 2 + 1] = Long.parseLong(ranges[i].substring(plus + 1));
+                        }
+                        parts.add(partRanges);
+                        break;
+                }
+            }
+        } catch(NumberFormatException | IndexOutOfBoundsException ex) {
+            throw new IOException("Invalid shard manifest at " + manifestPath);
+        }
+        if(source == null) {
+            throw new IOException("Invalid shard manifest at " + manifestPath);
+        }
+        return new ShardManifest(source, size, modified, headEnd, tailStart, parts);
+    }
+    
+    /**
+     * Resolve the source path stored in the manifest
+     * @param manifestPath path to the manifest
+     * @param sourcePath stored source path
+     * @return path to the source NZB file
+     */
+    private static Path resolve(Path manifestPath, String sourcePath) {
+        Path dir = manifestPath.toAbsolutePath().getParent();
+        return dir == null ? manifestPath.getFileSystem().getPath(sourcePath) : dir.resolve(sourcePath);
+    }
+    
+    /**
+     * Store the manifest at the given path. The manifest is written to a
+     * temporary file first so a node never reads a half written manifest.
+     * @param manifestPath path to store the manifest at
+     * @throws IOException if unable to write the manifest
+     */
+    public void save(Path manifestPath) throws IOException {
+        Path dir = manifestPath.toAbsolutePath().getParent();
+        Path sourcePath = source.toAbsolutePath();
+        if(dir != null && sourcePath.getRoot() != null && sourcePath.getRoot().equals(dir.getRoot())) {
+            sourcePath = dir.relativize(sourcePath);
+        }
+        Path tmp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.write(String.format("N\t%s\t%d\t%d", sourcePath, sourceSize, sourceModified));
+            writer.newLine();
+            writer.write(String.format("H\t%d\t%d", headEnd, tailStart));
+            writer.newLine();
+            for(int part = 0; part < parts.size(); part++) {
+                StringBuilder sb = new StringBuilder();
+                long[] ranges = parts.get(part);
+                for(int i = 0; i < ranges.length; i += 2) {
+                    sb.append(i == 0 ? "" : " ").append(ranges[i]).append('+').append(ranges[i + 1]);
+                }
+                writer.write(String.format("P\t%d\t%s", part, sb));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Get the path to the source NZB file
+     * @return source NZB file
+     */
+    public Path getSource() {
+        return source;
+    }
+    
+    /**
+     * Get the number of parts
+     * @return number of parts
+     */
+    public int getPartCount() {
+        return parts.size();
+    }
+    
+    /**
+     * Check that the source NZB file has not changed since the manifest was
+     * created, as the byte ranges would no longer match its file elements
+     * @throws IOException if the source is missing or has changed
+     */
+    public void verifySource() throws IOException {
+        if(Files.size(source) != sourceSize || Files.getLastModifiedTime(source).toMillis() != sourceModified) {
+            throw new IOException(String.format("%s has changed since the shard manifest was created", source.getFileName()));
+        }
+    }
+    
+    /**
+     * Write the given part by copying its byte ranges from the source NZB file.
+     * The stream is not closed.
+     * @param partNo part number
+     * @param out stream to write the part to
+     * @throws IOException if unable to read the source, the source has changed
+     * since the manifest was created or unable to write the part
+     */
+    public void writePart(int partNo, OutputStream out) throws IOException {
+        verifySource();
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            copy(channel, 0, headEnd, buffer, out);
+            long[] ranges = parts.get(partNo);
+            for(int i = 0; i < ranges.length; i += 2) {
+                copy(channel, ranges[i], ranges[i + 1], buffer, out);
+            }
+            copy(channel, tailStart, sourceSize - tailStart, buffer, out);
+        }
+        out.flush();
+    }
+    
+    /**
+     * Copy a byte range of the channel to the stream
+     * @param channel source channel
+     * @param position start of the range
+     * @param length length of the range
+     * @param buffer buffer to copy through
+     * @param out destination stream
+     * @throws IOException if unable to read or write
+     */
+    private static void copy(FileChannel channel, long position, long length, ByteBuffer buffer, OutputStream out) throws IOException {
+        long end = position + length;
+        while(position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                throw new IOException("Unexpected end of the source NZB file");
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+    
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.splitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import nzbsplit.HashUtil;
+import nzbsplit.exception.SplitException;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A HashSplitter splits an NZB into a number of parts using rendezvous
+ * hashing with bounded loads, so the part a file is placed in depends on the
+ * file itself rather than on every other file in the NZB. Changing the
+ * number of parts from k to k + 1 only moves around 1/(k + 1) of the files and
+ * adding or removing a file rarely moves any others, so downloads of the other
+ * files can carry on. A file that is added can still move others when it
+ * fills a part up to the load bound, as the files placed after it then go to
+ * their next part.
+ * <p>
+ * Each file is identified by its subject and first message id. The file is
+ * placed in the part with the highest hash of the file and part, unless that
+ * would make the part larger than {@link #LOAD_FACTOR} times the average part
+ * size, in which case the part with the next highest hash is tried. Files are
+ * placed largest first, so small files fill the gaps left by large files.
+ * Splitting n files into k parts takes O(n k) time.
+ * @author Sam Malone
+ */
+public class HashSplitter implements NZBSplitter {
+    
+    /**
+     * Maximum part size relative to the average part size. Larger values move
+     * fewer files when the NZB changes but balance the parts less evenly.
+     */
+    public final static double LOAD_FACTOR = 1.25;
+    
+    private final NZB nzb;
+    private int numFiles;
+
+    /**
+     * Creates a new instance of HashSplitter
+     * @param nzb NZB to split
+     * @param numFiles number of files to split the NZB into
+     */
+    public HashSplitter(NZB nzb, int numFiles) {
+        this.nzb = nzb;
+        this.numFiles = numFiles;
+    }
+
+    /**
+     * Set the number of files to split the NZB into
+     * @param numFiles number of files to split the NZB into
+     */
+    public void setNumFiles(int numFiles) {
+        this.numFiles = numFiles;
+    }
+    
+    /**
+     * Split the NZB file into a number of NZB parts given by numFiles
+     * @return List of split NZB parts of size numFiles
+     * @throws SplitException will not be thrown in this implementation
+     */
+    @Override
+    public List<NZB> split() throws SplitException {
+        final List<FileElement> files = nzb.getFiles();
+        final long[] fingerprints = new long[files.size()];
+        final Integer[] order = new Integer[files.size()];
+        for(int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = getFingerprint(files.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int cmp = Long.compare(files.get(b).getFileSize(), files.get(a).getFileSize());
+                return cmp != 0 ? cmp : Long.compare(fingerprints[a], fingerprints[b]);
+            }
+        });
+        final long[] seeds = new long[numFiles];
+        for(int i = 0; i < numFiles; i++) {
+            seeds[i] = HashUtil.mix(i + 0x9e3779b97f4a7c15L);
+        }
+        final long capacity = Math.max((long) Math.ceil(nzb.getTotalFileSize() * LOAD_FACTOR / numFiles), nzb.getLargestFileSize());
+        final long[] loads = new long[numFiles];
+        final NZB[] parts = new NZB[numFiles];
+        for(int i = 0; i < numFiles; i++) {
+            parts[i] = new NZB(nzb.getMetadata());
+        }
+        for(Integer index : order) {
+            FileElement file = files.get(index);
+            int part = getPart(fingerprints[index], file.getFileSize(), seeds, loads, capacity);
+            loads[part] += file.getFileSize();
+            parts[part].addFile(file);
+        }
+        return new ArrayList<>(Arrays.asList(parts));
+    }
+    
+    /**
+     * Get the part with the highest hash of the file and part that has room
+     * for the file. If no part has room, the least loaded part is used.
+     * @param fingerprint file fingerprint
+     * @param size file size in bytes
+     * @param seeds hash seed of each part
+     * @param loads bytes placed in each part so far
+     * @param capacity maximum bytes per part
+     * @return part index
+     */
+    private static int getPart(long fingerprint, long size, long[] seeds, long[] loads, long capacity) {
+        int best = -1;
+        long bestScore = 0;
+        int leastLoaded = 0;
+        for(int i = 0; i < seeds.length; i++) {
+            if(loads[i] < loads[leastLoaded]) {
+                leastLoaded = i;
+            }
+            if(loads[i] + size > capacity) {
+                continue;
+            }
+            long score = HashUtil.mix(fingerprint ^ seeds[i]);
+            if(best == -1 || score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best == -1 ? leastLoaded : best;
+    }
+    
+    /**
+     * Get the fingerprint of the given file from its subject and first
+     * message id, which stay the same if other files are added or removed.
+     * The first message id is recorded by the parser whether or not the
+     * segments are retained, so the fingerprint is the same in every mode.
+     * @param file FileElement
+     * @return 64 bit FNV-1a hash of the subject and first message id
+     */
+    private static long getFingerprint(FileElement file) {
+        long h = HashUtil.fnv1aField(HashUtil.FNV_OFFSET_BASIS, file.getSubject());
+        if(file.getFirstMessageId() != null) {
+            h = HashUtil.fnv1aField(h, file.getFirstMessageId());
+        }
+        return h;
+    }
+    
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.splitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nzbsplit.exception.SplitException;
+import nzbsplit.filter.FileFilter;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A Par2Splitter splits an NZB into a number of parts like
+ * {@link NumberSplitter}, but places the par2 recovery volumes separately so
+ * each part gets a share of the recovery blocks in proportion to its data.
+ * Each part can then repair its own losses without fetching the recovery
+ * volumes of the other parts, as every recovery volume carries the par2
+ * critical packets.
+ * <p>
+ * A recovery volume is recognised by a file name ending .volNN+MM.par2 where
+ * MM is the number of recovery blocks it holds. The remaining files, including
+ * the par2 index, are split by {@link NumberSplitter}. The recovery volumes
+ * are then placed most blocks first in the part that is furthest below its
+ * share of the blocks. An NZB without recovery volumes is split by
+ * {@link NumberSplitter} unchanged.
+ * @author Sam Malone
+ */
+public class Par2Splitter implements NZBSplitter {
+    
+    private final static String PAR2_EXTENSION = ".par2";
+    private final static Pattern RECOVERY_PATTERN = Pattern.compile("\\.vol\\d+\\+(\\d+)\\.par2$");
+    
+    private final NZB nzb;
+    private final int numFiles;
+
+    /**
+     * Creates a new instance of Par2Splitter
+     * @param nzb NZB to split
+     * @param numFiles number of files to split the NZB into
+     */
+    public Par2Splitter(NZB nzb, int numFiles) {
+        this.nzb = nzb;
+        this.numFiles = numFiles;
+    }
+    
+    /**
+     * Split the NZB file into a number of NZB parts given by numFiles
+     * @return List of split NZB parts of size numFiles
+     * @throws SplitException will not be thrown in this implementation
+     */
+    @Override
+    public List<NZB> split() throws SplitException {
+        final NZB data = new NZB(nzb.getMetadata());
+        final List<FileElement> recovery = new ArrayList<>();
+        final List<Integer> blocks = new ArrayList<>();
+        for(FileElement file : nzb.getFiles()) {
+            int fileBlocks = getRecoveryBlocks(file);
+            if(fileBlocks > 0) {
+                recovery.add(file);
+                blocks.add(fileBlocks);
+            } else {
+                data.addFile(file);
+            }
+        }
+        if(recovery.isEmpty() || data.getFiles().isEmpty() || numFiles < 2) {
+            return new NumberSplitter(nzb, numFiles).split();
+        }
+        final List<NZB> parts = new NumberSplitter(data, numFiles).split();
+        final Integer[] order = new Integer[recovery.size()];
+        long totalBlocks = 0;
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+            totalBlocks += blocks.get(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int cmp = Integer.compare(blocks.get(b), blocks.get(a));
+                return cmp != 0 ? cmp : Long.compare(recovery.get(b).getFileSize(), recovery.get(a).getFileSize());
+            }
+        });
+        final double[] shares = new double[parts.size()];
+        for(int i = 0; i < shares.length; i++) {
+            shares[i] = (double) totalBlocks * parts.get(i).getTotalFileSize() / data.getTotalFileSize();
+        }
+        for(Integer index : order) {
+            int part = 0;
+            for(int i = 1; i < shares.length; i++) {
+                if(shares[i] > shares[part]) {
+                    part = i;
+                }
+            }
+            shares[part] -= blocks.get(index);
+            parts.get(part).addFile(recovery.get(index));
+        }
+        return parts;
+    }
+    
+    /**
+     * Get the number of recovery blocks in the given file
+     * @param file FileElement
+     * @return number of recovery blocks or 0 if the file is not a par2
+     * recovery volume
+     */
+    private static int getRecoveryBlocks(FileElement file) {
+        String name = FileFilter.getFileName(file.getSubject());
+        if(name == null || name.length() < PAR2_EXTENSION.length()) {
+            return 0;
+        }
+        if(!name.regionMatches(true, name.length() - PAR2_EXTENSION.length(), PAR2_EXTENSION, 0, PAR2_EXTENSION.length())) {
+            return 0;
+        }
+        Matcher matcher = RECOVERY_PATTERN.matcher(name.toLowerCase(Locale.ENGLISH));
+        if(!matcher.find()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(matcher.group(1));
+        } catch(NumberFormatException ex) {
+            return 0;
+        }
+    }
+    
+}
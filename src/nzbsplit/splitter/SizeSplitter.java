@@ -27,9 +27,8 @@
 package nzbsplit.splitter;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 import nzbsplit.SizeComparator;
 import nzbsplit.exception.SplitException;
 import nzbsplit.nzb.FileElement;
@@ -74,8 +73,8 @@ public class SizeSplitter implements NZBSplitter {
             throw new SplitException("The size of the NZB is smaller than the maximum split size.");
         }
         final List<NZB> list = new ArrayList<>();
-        final Set<FileElement> files = new TreeSet<>(new SizeComparator(SizeComparator.DESCENDING));
-        files.addAll(nzb.getFiles());
+        final List<FileElement> files = new ArrayList<>(nzb.getFiles());
+        Collections.sort(files, new SizeComparator(SizeComparator.DESCENDING));
         list.add(new NZB(nzb.getMetadata()));
         for(FileElement file : files) {
             if(file.getFileSize() > splitMaxBytes) {
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit.splitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import nzbsplit.FileSize;
+import nzbsplit.exception.ParseException;
+import nzbsplit.nzb.NZB;
+
+/**
+ * A SplitStrategy describes how an NZB should be split e.g. into a number of
+ * parts or into parts of a maximum size. A strategy creates the
+ * {@link NZBSplitter} for a given NZB so the same strategy can be applied
+ * to many NZBs.
+ * @author Sam Malone
+ */
+public class SplitStrategy {
+    
+    /**
+     * Split into a number of parts
+     */
+    public final static int NUMBER = 0;
+    /**
+     * Split into parts no larger than a maximum size
+     */
+    public final static int SIZE = 1;
+    /**
+     * Split into a number of parts by consistent hashing of each file
+     */
+    public final static int HASH = 2;
+    
+    private final int type;
+    private final long value;
+    private final String name;
+    private final boolean isPar2Spread;
+    
+    /**
+     * Creates a new instance of SplitStrategy
+     * @param type Strategy type. Either {@link SplitStrategy#NUMBER},
+     * {@link SplitStrategy#SIZE} or {@link SplitStrategy#HASH}
+     * @param value number of parts or maximum size in bytes
+     * @param name name of the strategy used to distinguish its parts from
+     * the parts of other strategies e.g. "n4"
+     */
+    private SplitStrategy(int type, long value, String name) {
+        this(type, value, name, false);
+    }
+    
+    /**
+     * Creates a new instance of SplitStrategy
+     * @param type Strategy type
+     * @param value number of parts or maximum size in bytes
+     * @param name name of the strategy
+     * @param isPar2Spread true to spread the par2 recovery volumes
+     */
+    private SplitStrategy(int type, long value, String name, boolean isPar2Spread) {
+        this.type = type;
+        this.value = value;
+        this.name = name;
+        this.isPar2Spread = isPar2Spread;
+    }
+    
+    /**
+     * Get a copy of this strategy that spreads the par2 recovery volumes
+     * across the parts in proportion to the data in each part, as per
+     * {@link Par2Splitter}. Only strategies of type
+     * {@link SplitStrategy#NUMBER} spread par2 recovery volumes, so other
+     * strategies are returned unchanged.
+     * @return SplitStrategy
+     */
+    public SplitStrategy withPar2Spread() {
+        if(type != NUMBER) {
+            return this;
+        }
+        return new SplitStrategy(type, value, name, true);
+    }
+    
+    /**
+     * Check if the par2 recovery volumes are spread across the parts
+     * @return true if the par2 recovery volumes are spread, false otherwise
+     */
+    public boolean isPar2Spread() {
+        return isPar2Spread;
+    }
+    
+    /**
+     * Creates a strategy that splits an NZB into the given number of parts
+     * @param numFiles number of parts
+     * @return SplitStrategy
+     */
+    public static SplitStrategy byNumber(int numFiles) {
+        return new SplitStrategy(NUMBER, numFiles, "n" + numFiles);
+    }
+    
+    /**
+     * Creates a strategy that splits an NZB into parts no larger than the given size
+     * @param maxBytes maximum part size in bytes
+     * @param sizeName size as given by the user e.g. "200MB"
+     * @return SplitStrategy
+     */
+    public static SplitStrategy bySize(long maxBytes, String sizeName) {
+        return new SplitStrategy(SIZE, maxBytes, "s" + sizeName);
+    }
+    
+    /**
+     * Creates a strategy that splits an NZB into the given number of parts
+     * by consistent hashing, so the parts stay stable when the NZB or the
+     * number of parts changes
+     * @param numFiles number of parts
+     * @return SplitStrategy
+     */
+    public static SplitStrategy byHash(int numFiles) {
+        return new SplitStrategy(HASH, numFiles, "h" + numFiles);
+    }
+    
+    /**
+     * Parse a comma separated list of part numbers e.g. "4,8,16" into a list
+     * of strategies that split an NZB into each number of parts
+     * @param numbers comma separated list of part numbers
+     * @return list of split strategies
+     * @throws ParseException if a number is not a positive integer or is
+     * given more than once
+     */
+    public static List<SplitStrategy> parseNumbers(String numbers) throws ParseException {
+        final List<SplitStrategy> list = new ArrayList<>();
+        for(String number : numbers.split(",")) {
+            addDistinct(list, byNumber(parseNumFiles(number)));
+        }
+        return list;
+    }
+    
+    /**
+     * Parse a comma separated list of part numbers e.g. "4,8,16" into a list
+     * of strategies that split an NZB into each number of parts by
+     * consistent hashing
+     * @param numbers comma separated list of part numbers
+     * @return list of split strategies
+     * @throws ParseException if a number is not a positive integer or is
+     * given more than once
+     */
+    public static List<SplitStrategy> parseHashes(String numbers) throws ParseException {
+        final List<SplitStrategy> list = new ArrayList<>();
+        for(String number : numbers.split(",")) {
+            addDistinct(list, byHash(parseNumFiles(number)));
+        }
+        return list;
+    }
+    
+    /**
+     * Parse a number of parts
+     * @param number number of parts
+     * @return number of parts
+     * @throws ParseException if the number is not a positive integer
+     */
+    private static int parseNumFiles(String number) throws ParseException {
+        int numFiles = 0;
+        try {
+            numFiles = Integer.parseInt(number);
+        } catch(NumberFormatException ex) {
+            // handled by the check below
+        }
+        if(numFiles <= 0) {
+            throw new ParseException("Unable to determine the number of files from " + number);
+        }
+        return numFiles;
+    }
+    
+    /**
+     * Parse a comma separated list of sizes e.g. "100MB,1GB" into a list of
+     * strategies that split an NZB into parts no larger than each size
+     * @param sizes comma separated list of sizes
+     * @return list of split strategies
+     * @throws ParseException if unable to parse a size or a size is given
+     * more than once
+     */
+    public static List<SplitStrategy> parseSizes(String sizes) throws ParseException {
+        final List<SplitStrategy> list = new ArrayList<>();
+        for(String size : sizes.split(",")) {
+            addDistinct(list, bySize(FileSize.parseBytes(size), size.toUpperCase()));
+        }
+        return list;
+    }
+    
+    /**
+     * Add the strategy to the list unless a strategy of the same name has
+     * already been added, as the parts of both would be given the same names
+     * @param strategies list of split strategies
+     * @param strategy split strategy to add
+     * @throws ParseException if a strategy of the same name is in the list
+     */
+    public static void addDistinct(List<SplitStrategy> strategies, SplitStrategy strategy) throws ParseException {
+        for(SplitStrategy existing : strategies) {
+            if(existing.getName().equals(strategy.getName())) {
+                throw new ParseException("The split option " + strategy.getName() + " was given more than once");
+            }
+        }
+        strategies.add(strategy);
+    }
+    
+    /**
+     * Creates the splitter that applies this strategy to the given NZB
+     * @param nzb NZB to split
+     * @return NZBSplitter
+     */
+    public NZBSplitter createSplitter(NZB nzb) {
+        if(type == SIZE) {
+            return new SizeSplitter(nzb, value);
+        }
+        if(type == HASH) {
+            return new HashSplitter(nzb, (int) value);
+        }
+        if(isPar2Spread) {
+            return new Par2Splitter(nzb, (int) value);
+        }
+        return new NumberSplitter(nzb, (int) value);
+    }
+    
+    /**
+     * Get the strategy type
+     * @return Either {@link SplitStrategy#NUMBER}, {@link SplitStrategy#SIZE}
+     * or {@link SplitStrategy#HASH}
+     */
+    public int getType() {
+        return type;
+    }
+    
+    /**
+     * Get the number of parts or maximum size in bytes depending on the type
+     * @return number of parts or maximum size in bytes
+     */
+    public long getValue() {
+        return value;
+    }
+    
+    /**
+     * Get the name of the strategy e.g. "n4", "s200MB" or "h4"
+     * @return name of the strategy
+     */
+    public String getName() {
+        return name;
+    }
+    
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import nzbsplit.api.NZBSplit;
+import nzbsplit.exception.NZBParseException;
+import nzbsplit.nzb.FileElement;
+import nzbsplit.nzb.Metadata;
+import nzbsplit.nzb.NZB;
+import nzbsplit.nzb.SegmentElement;
+import nzbsplit.parser.NZBParser;
+import nzbsplit.parser.NZBXParser;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * Checks that an NZB survives a round trip through the NZBX format: each NZB
+ * is parsed, written as NZBX by {@link NZBXWriter}, read back by
+ * {@link NZBXParser} and written as XML by {@link NZBWriter}, which must give
+ * the same bytes as writing the NZB as parsed by {@link NZBSplit}. As NZBX
+ * segments are decoded in segment number order, the NZB is also written as
+ * NZBX as parsed by {@link NZBParser} alone, which keeps the segments in the
+ * order of the file, and must still give the bytes of the sorted NZB. As
+ * both sides of that comparison are written by {@link NZBWriter}, the XML
+ * written after the round trip is also parsed again and must describe the
+ * same metadata, files and segments as the source NZB, so text that is not
+ * escaped when written fails the check. The number of duplicate segments removed from each file by --dedup must also
+ * survive the round trip. Exits with status 1 if any round trip differs.
+ * <pre>
+ * NZBXRoundTrip
+ * </pre>
+ * @author Sam Malone
+ */
+public class NZBXRoundTrip {
+    
+    private final static String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE nzb PUBLIC \"-//newzBin//DTD NZB 1.1//EN\" \"http://www.newzbin.com/DTD/nzb/nzb-1.1.dtd\">\n"
+            + "<nzb xmlns=\"http://www.newzbin.com/DTD/2003/nzb\">\n";
+    
+    private final static String ENTITIES = HEADER
+            + "  <head>\n    <meta type=\"title\">Tom &amp; Jerry &lt;1080p&gt;</meta>\n    <meta type=\"password\">&quot;p&apos;w&quot;</meta>\n  </head>\n"
+            + "  <file poster=\"Caf\u00e9 &lt;caf&#233;@example.com&gt;\" date=\"1400000000\" subject=\"Tom &amp; Jerry [1/2] - &quot;t&amp;j.rar&quot; \u2603 \ud83d\ude00 yEnc (1/2)\">\n"
+            + "    <groups>\n      <group>alt.binaries.test</group>\n    </groups>\n"
+            + "    <segments>\n      <segment bytes=\"100\" number=\"1\">a&amp;b@example.com</segment>\n"
+            + "      <segment bytes=\"200\" number=\"2\">&lt;c&gt;@example.com</segment>\n    </segments>\n  </file>\n"
+            + "</nzb>\n";
+    
+    private final static String GROUPS = HEADER
+            + "  <file poster=\"poster@example.com\" date=\"1400000010\" subject=\"Groups [1/2] - &quot;g.par2&quot; yEnc (1/1)\">\n"
+            + "    <groups>\n      <group>alt.binaries.one</group>\n      <group>alt.binaries.two</group>\n      <group>alt.binaries.three</group>\n    </groups>\n"
+            + "    <segments>\n      <segment bytes=\"300\" number=\"1\">g-1@example.com</segment>\n    </segments>\n  </file>\n"
+            + "  <file poster=\"poster@example.com\" date=\"1400000020\" subject=\"Groups [2/2] - &quot;g.rar&quot; yEnc (1/1)\">\n"
+            + "    <groups>\n      <group>alt.binaries.two</group>\n      <group>alt.binaries.one</group>\n    </groups>\n"
+            + "    <segments>\n      <segment bytes=\"400\" number=\"1\">g-2@example.com</segment>\n    </segments>\n  </file>\n"
+            + "</nzb>\n";
+    
+    private final static String SEGMENTS = HEADER
+            + "  <file poster=\"poster@example.com\" date=\"1400000030\" subject=\"Segments [1/1] - &quot;s.rar&quot; yEnc (1/6)\">\n"
+            + "    <groups>\n      <group>alt.binaries.test</group>\n    </groups>\n    <segments>\n"
+            + "      <segment bytes=\"500\" number=\"5\">s-5@example.com</segment>\n"
+            + "      <segment bytes=\"501\" number=\"2\">s-2@example.com</segment>\n"
+            + "      <segment bytes=\"502\" number=\"2\">s-2b@example.com</segment>\n"
+            + "      <segment bytes=\"503\" number=\"1000000\">s-1000000@example.com</segment>\n"
+            + "      <segment bytes=\"504\" number=\"1\">s-1@example.com</segment>\n"
+            + "      <segment bytes=\"505\" number=\"5\">s-5@example.com</segment>\n"
+            + "    </segments>\n  </file>\n"
+            + "  <file poster=\"poster@example.com\" date=\"1400000040\" subject=\"Segments [2/2] - &quot;empty.nfo&quot; yEnc (1/1)\">\n"
+            + "    <groups>\n      <group>alt.binaries.test</group>\n    </groups>\n    <segments>\n    </segments>\n  </file>\n"
+            + "</nzb>\n";
+    
+    public static void main(String[] args) throws Exception {
+        int failed = 0;
+        failed += check("entities", bytes(ENTITIES));
+        failed += check("groups", bytes(GROUPS));
+        failed += check("segments", bytes(SEGMENTS));
+        failed += check("gzip", gzip(bytes(SEGMENTS)));
+        failed += checkDuplicates("dedup", bytes(SEGMENTS));
+        if(failed > 0) {
+            System.err.println(String.format("%d NZBX round trips failed", failed));
+            System.exit(1);
+        }
+        System.out.println("All NZBX round trips passed");
+    }
+    
+    /**
+     * Check the round trip of the given NZB as parsed with sorted and with
+     * unsorted segments
+     * @param name name of the NZB
+     * @param nzb NZB file content
+     * @return number of failed round trips
+     * @throws Exception if unable to parse or write the NZB
+     */
+    private static int check(String name, byte[] nzb) throws Exception {
+        NZB sorted = new NZBSplit(Arrays.<SplitStrategy>asList()).parse(input(nzb));
+        int failed = 0;
+        failed += check(name + " (sorted)", sorted, sorted);
+        failed += check(name + " (unsorted)", new NZBParser().parse(input(nzb)), sorted);
+        return failed;
+    }
+    
+    /**
+     * Check that writing the given NZB as XML after a round trip through the
+     * NZBX format gives the bytes of the source NZB and that the XML parses
+     * back into the source NZB
+     * @param name name of the NZB
+     * @param nzb parsed NZB
+     * @param source NZB with sorted segments as parsed from the source file
+     * @return 1 if the round trip differs, 0 otherwise
+     * @throws Exception if unable to parse or write the NZB
+     */
+    private static int check(String name, NZB nzb, NZB source) throws Exception {
+        ByteArrayOutputStream nzbx = new ByteArrayOutputStream();
+        new NZBXWriter().write(nzb, nzbx);
+        byte[] expected = toXML(source);
+        byte[] actual = toXML(new NZBXParser().parse(ByteBuffer.wrap(nzbx.toByteArray())));
+        if(!Arrays.equals(expected, actual)) {
+            System.err.println(String.format("FAIL %s%n--- expected%n%s--- actual%n%s", name,
+                new String(expected, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8)));
+            return 1;
+        }
+        String reparsed;
+        try {
+            reparsed = describe(new NZBSplit(Arrays.<SplitStrategy>asList()).parse(input(actual)));
+        } catch(NZBParseException ex) {
+            System.err.println(String.format("FAIL %s: written XML does not parse: %s%n%s", name,
+                ex.getMessage(), new String(actual, StandardCharsets.UTF_8)));
+            return 1;
+        }
+        if(!describe(source).equals(reparsed)) {
+            System.err.println(String.format("FAIL %s: written XML parses differently%n--- expected%n%s--- actual%n%s", name,
+                describe(source), reparsed));
+            return 1;
+        }
+        System.out.println("PASS " + name);
+        return 0;
+    }
+    
+    /**
+     * Check that the number of duplicate segments removed from each file of
+     * the given NZB survives a round trip through the NZBX format
+     * @param name name of the NZB
+     * @param nzb NZB file content
+     * @return 1 if the round trip differs, 0 otherwise
+     * @throws Exception if unable to parse or write the NZB
+     */
+    private static int checkDuplicates(String name, byte[] nzb) throws Exception {
+        NZBSplit nzbSplit = new NZBSplit(Arrays.<SplitStrategy>asList());
+        nzbSplit.setDeduplicate(true);
+        NZB deduplicated = nzbSplit.parse(input(nzb));
+        ByteArrayOutputStream nzbx = new ByteArrayOutputStream();
+        new NZBXWriter().write(deduplicated, nzbx);
+        NZB actual = new NZBXParser().parse(ByteBuffer.wrap(nzbx.toByteArray()));
+        int[] expectedDuplicates = duplicates(deduplicated);
+        int[] actualDuplicates = duplicates(actual);
+        if(!Arrays.equals(expectedDuplicates, actualDuplicates) || !Arrays.equals(toXML(deduplicated), toXML(actual))) {
+            System.err.println(String.format("FAIL %s: expected duplicates %s, actual %s", name,
+                Arrays.toString(expectedDuplicates), Arrays.toString(actualDuplicates)));
+            return 1;
+        }
+        System.out.println("PASS " + name);
+        return 0;
+    }
+    
+    private static int[] duplicates(NZB nzb) {
+        int[] duplicates = new int[nzb.getFiles().size()];
+        for(int i = 0; i < duplicates.length; i++) {
+            duplicates[i] = nzb.getFiles().get(i).getDuplicateSegments();
+        }
+        return duplicates;
+    }
+    
+    /**
+     * Describe the parsed content of the given NZB without writing it as XML
+     * @param nzb NZB to describe
+     * @return a line for each meta element, file, group and segment
+     */
+    private static String describe(NZB nzb) {
+        StringBuilder sb = new StringBuilder();
+        for(Metadata meta : nzb.getMetadata()) {
+            sb.append(String.format("meta %s=%s%n", meta.getType(), meta.getValue()));
+        }
+        for(FileElement file : nzb.getFiles()) {
+            sb.append(String.format("file %s|%d|%s%n", file.getPoster(), file.getDate(), file.getSubject()));
+            for(String group : file.getUsenetGroups()) {
+                sb.append(String.format("  group %s%n", group));
+            }
+            for(SegmentElement segment : file.getSegments()) {
+                sb.append(String.format("  segment %d|%d|%s%n", segment.getSegmentNumber(), segment.getBytes(), segment.getMessageId()));
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static byte[] toXML(NZB nzb) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NZBWriter(false).write(nzb, out);
+        return out.toByteArray();
+    }
+    
+    private static InputStream input(byte[] nzb) {
+        return new ByteArrayInputStream(nzb);
+    }
+    
+    private static byte[] bytes(String nzb) {
+        return nzb.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static byte[] gzip(byte[] nzb) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(nzb);
+        }
+        return out.toByteArray();
+    }
+    
+}
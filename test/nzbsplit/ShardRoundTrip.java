@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import nzbsplit.api.NZBSplit;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * Checks that the parts written by several processes sharing a directory, each
+ * writing its own shard of a published manifest, are the parts a single
+ * process writes when it splits the NZB in memory, and that the parts written
+ * in stream mode, which copies byte ranges as shards do, are the parts written
+ * in memory for both -n and -k. Every process is a separate
+ * JVM running {@link Main} on the classpath of this check. The parts are
+ * compared by their files, in order, as the shards copy the source bytes of
+ * each file rather than writing them with {@link NZBWriter}. Exits with status
+ * 1 if any part differs.
+ * <pre>
+ * ShardRoundTrip
+ * </pre>
+ * @author Sam Malone
+ */
+public class ShardRoundTrip {
+    
+    private final static int PARTS = 4;
+    private final static int SHARDS = 3;
+    
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("nzbsplit-shard");
+        Path shared = Files.createDirectories(dir.resolve("shared"));
+        Path sharedParts = Files.createDirectories(shared.resolve("parts"));
+        Path memoryParts = Files.createDirectories(dir.resolve("memory"));
+        Path nzb = shared.resolve("release.nzb");
+        Path manifest = shared.resolve("release.manifest");
+        Files.write(nzb, createNZB().getBytes(StandardCharsets.UTF_8));
+        int failed = 0;
+        failed += run(dir, "publish", "-n", Integer.toString(PARTS), "--manifest", manifest.toString(), nzb.toString());
+        List<Process> shards = new ArrayList<>(SHARDS);
+        for(int i = 0; i < SHARDS; i++) {
+            shards.add(start(dir, "shard" + i, "--manifest", manifest.toString(), "--shard", i + "/" + SHARDS, "-o", sharedParts.toString()));
+        }
+        for(int i = 0; i < SHARDS; i++) {
+            failed += check(dir, "shard" + i, shards.get(i));
+        }
+        failed += run(dir, "memory", "-n", Integer.toString(PARTS), "-o", memoryParts.toString(), nzb.toString());
+        failed += compare("shards", memoryParts, sharedParts);
+        for(String option : new String[] { "-n", "-k" }) {
+            Path memory = Files.createDirectories(dir.resolve("memory" + option));
+            Path stream = Files.createDirectories(dir.resolve("stream" + option));
+            failed += run(dir, "memory" + option, option, Integer.toString(PARTS), "-o", memory.toString(), nzb.toString());
+            failed += run(dir, "stream" + option, option, Integer.toString(PARTS), "--memory-budget", "10KB", "-o", stream.toString(), nzb.toString());
+            failed += checkLog(dir, "stream" + option, "stream mode");
+            failed += compare("stream" + option, memory, stream);
+        }
+        if(failed > 0) {
+            System.err.println(String.format("%d shard checks failed, see %s", failed, dir));
+            System.exit(1);
+        }
+        System.out.println("All shard checks passed");
+    }
+    
+    /**
+     * Create an NZB whose parts are reordered by the default file priority and
+     * whose segments are out of order
+     * @return NZB file content
+     */
+    private static String createNZB() {
+        Random random = new Random(1);
+        List<String> names = new ArrayList<>();
+        names.add("release.nfo");
+        for(int i = 1; i <= 20; i++) {
+            names.add(String.format("release.part%02d.rar", i));
+            if(i % 5 == 0) {
+                names.add(String.format("release.vol%02d+%02d.par2", i, i + 1));
+            }
+        }
+        names.add("release.par2");
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<nzb xmlns=\"http://www.newzbin.com/DTD/2003/nzb\">\n");
+        sb.append("  <head>\n    <meta type=\"title\">Release &amp; Co</meta>\n  </head>\n");
+        for(int i = 0; i < names.size(); i++) {
+            sb.append(String.format("  <file poster=\"poster &lt;p@example.com&gt;\" date=\"%d\" subject=\"Release [%d/%d] - &quot;%s&quot; yEnc (1/3)\">\n",
+                1400000000 + i, i + 1, names.size(), names.get(i)));
+            sb.append("    <groups>\n      <group>alt.binaries.test</group>\n    </groups>\n    <segments>\n");
+            for(int number : new int[] { 2, 3, 1 }) {
+                sb.append(String.format("      <segment bytes=\"%d\" number=\"%d\">%d-%d@example.com</segment>\n",
+                    100000 + random.nextInt(900000), number, i, number));
+            }
+            sb.append("    </segments>\n  </file>\n");
+        }
+        sb.append("</nzb>\n");
+        return sb.toString();
+    }
+    
+    /**
+     * Run nzbsplit in a new process and wait for it to exit
+     * @param dir directory the output of the process is logged in
+     * @param name name of the process
+     * @param args program arguments
+     * @return 1 if the process failed, 0 otherwise
+     * @throws Exception if unable to start the process
+     */
+    private static int run(Path dir, String name, String... args) throws Exception {
+        return check(dir, name, start(dir, name, args));
+    }
+    
+    /**
+     * Start nzbsplit in a new process, logging its output to NAME.log
+     * @param dir directory the output of the process is logged in
+     * @param name name of the process
+     * @param args program arguments
+     * @return process
+     * @throws IOException if unable to start the process
+     */
+    private static Process start(Path dir, String name, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(dir.resolve(name + ".log").toFile());
+        return builder.start();
+    }
+    
+    /**
+     * Wait for the given process to exit and check that it did not fail
+     * @param dir directory the output of the process is logged in
+     * @param name name of the process
+     * @param process process
+     * @return 1 if the process exited with an error or logged one, 0 otherwise
+     * @throws Exception if interrupted or unable to read the log
+     */
+    private static int check(Path dir, String name, Process process) throws Exception {
+        int status = process.waitFor();
+        String log = new String(Files.readAllBytes(dir.resolve(name + ".log")), StandardCharsets.UTF_8);
+        if(status != 0 || log.contains("ERROR")) {
+            System.err.println(String.format("FAIL %s exited with %d%n%s", name, status, log));
+            return 1;
+        }
+        System.out.println("PASS " + name);
+        return 0;
+    }
+    
+    /**
+     * Check that the log of the given process contains the given text
+     * @param dir directory the output of the process is logged in
+     * @param name name of the process
+     * @param text text that is expected in the log
+     * @return 1 if the text is missing, 0 otherwise
+     * @throws IOException if unable to read the log
+     */
+    private static int checkLog(Path dir, String name, String text) throws IOException {
+        String log = new String(Files.readAllBytes(dir.resolve(name + ".log")), StandardCharsets.UTF_8);
+        if(!log.contains(text)) {
+            System.err.println(String.format("FAIL %s did not log \"%s\"%n%s", name, text, log));
+            return 1;
+        }
+        return 0;
+    }
+    
+    /**
+     * Check that the parts in the given directory hold the same files, in the
+     * same order, as the expected parts
+     * @param name name of the check
+     * @param expectedDir directory of the expected parts
+     * @param actualDir directory of the parts to check
+     * @return number of parts that differ or are missing
+     * @throws Exception if unable to read or parse a part
+     */
+    private static int compare(String name, Path expectedDir, Path actualDir) throws Exception {
+        File[] expected = expectedDir.toFile().listFiles();
+        Arrays.sort(expected);
+        int failed = 0;
+        if(expected.length != PARTS) {
+            System.err.println(String.format("FAIL %s: expected %d parts, found %d", name, PARTS, expected.length));
+            failed++;
+        }
+        for(File part : expected) {
+            Path actual = actualDir.resolve(part.getName());
+            if(!Files.isRegularFile(actual)) {
+                System.err.println(String.format("FAIL %s: %s is missing", name, part.getName()));
+                failed++;
+            } else if(!Arrays.equals(normalize(part.toPath()), normalize(actual))) {
+                System.err.println(String.format("FAIL %s: %s differs%n--- expected%n%s--- actual%n%s", name, part.getName(),
+                    new String(normalize(part.toPath()), StandardCharsets.UTF_8), new String(normalize(actual), StandardCharsets.UTF_8)));
+                failed++;
+            }
+        }
+        if(failed == 0) {
+            System.out.println("PASS " + name);
+        }
+        return failed;
+    }
+    
+    /**
+     * Parse the given part, sorting its segments, and write it with
+     * {@link NZBWriter} so parts written in different ways can be compared
+     * @param part path to the part
+     * @return normalized part
+     * @throws Exception if unable to parse or write the part
+     */
+    private static byte[] normalize(Path part) throws Exception {
+        NZBSplit nzbSplit = new NZBSplit(Arrays.<SplitStrategy>asList());
+        nzbSplit.setPriority(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = Files.newInputStream(part)) {
+            new NZBWriter(false).write(nzbSplit.parse(in), out);
+        }
+        return out.toByteArray();
+    }
+    
+}
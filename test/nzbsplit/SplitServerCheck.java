@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2013, Sam Malone
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package nzbsplit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import nzbsplit.api.NZBSplit;
+import nzbsplit.api.PartSink;
+import nzbsplit.nzb.NZB;
+import nzbsplit.server.SplitServer;
+import nzbsplit.splitter.SplitStrategy;
+
+/**
+ * Checks the HTTP split server on localhost: a {@link SplitServer} is started
+ * on a free loopback port, an NZB is POSTed to /split for -n, -s and -k by
+ * several clients at once, and each zip returned must hold the parts that
+ * {@link NZBSplit} writes in process. Requests that are not a POST, have no
+ * split option or hold a malformed NZB must be refused with 405 or 400, and
+ * /stats must count every request. Exits with status 1 if any check fails.
+ * <pre>
+ * SplitServerCheck
+ * </pre>
+ * @author Sam Malone
+ */
+public class SplitServerCheck {
+    
+    private final static int THREADS = 2;
+    private final static int CLIENTS = 8;
+    
+    public static void main(String[] args) throws Exception {
+        final byte[] nzb = createNZB().getBytes(StandardCharsets.UTF_8);
+        final SplitServer server = new SplitServer(0, THREADS, SplitServer.DEFAULT_QUEUE_SIZE);
+        server.start();
+        final String base = String.format("http://localhost:%d", server.getPort());
+        int failed = 0;
+        int requests = 0;
+        try {
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            List<Future<Integer>> futures = new ArrayList<>();
+            final String[] queries = { "n=3", "s=2MB", "k=4" };
+            for(int i = 0; i < CLIENTS; i++) {
+                final String query = queries[i % queries.length];
+                futures.add(clients.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return checkSplit(base, query, nzb);
+                    }
+                }));
+            }
+            for(Future<Integer> future : futures) {
+                failed += future.get();
+                requests++;
+            }
+            clients.shutdown();
+            failed += checkStatus("GET", base + "/split?n=2", null, 405);
+            failed += checkStatus("POST", base + "/split", nzb, 400);
+            failed += checkStatus("POST", base + "/split?n=2", "<nzb><file".getBytes(StandardCharsets.UTF_8), 400);
+            requests += 3;
+            failed += checkStats(base, requests);
+        } finally {
+            server.stop(0);
+        }
+        if(failed > 0) {
+            System.err.println(String.format("%d server checks failed", failed));
+            System.exit(1);
+        }
+        System.out.println("All server checks passed");
+    }
+    
+    /**
+     * POST the NZB to /split with the given query and check that the zip
+     * returned holds the parts written by an in process split
+     * @param base base URL of the server
+     * @param query split option e.g. n=3
+     * @param nzb NZB file content
+     * @return 1 if the parts differ, 0 otherwise
+     * @throws Exception if unable to send the request or split the NZB
+     */
+    private static int checkSplit(String base, String query, byte[] nzb) throws Exception {
+        String name = "split " + query;
+        HttpURLConnection connection = post(base + "/split?name=release&" + query, nzb);
+        if(connection.getResponseCode() != 200) {
+            System.err.println(String.format("FAIL %s: status %d", name, connection.getResponseCode()));
+            return 1;
+        }
+        Map<String, byte[]> actual = new TreeMap<>();
+        try (ZipInputStream zip = new ZipInputStream(connection.getInputStream())) {
+            for(ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                actual.put(entry.getName(), readFully(zip));
+            }
+        }
+        Map<String, byte[]> expected = split(query, nzb);
+        if(!expected.keySet().equals(actual.keySet())) {
+            System.err.println(String.format("FAIL %s: expected parts %s, actual %s", name, expected.keySet(), actual.keySet()));
+            return 1;
+        }
+        for(Map.Entry<String, byte[]> part : expected.entrySet()) {
+            if(!Arrays.equals(part.getValue(), actual.get(part.getKey()))) {
+                System.err.println(String.format("FAIL %s: %s differs", name, part.getKey()));
+                return 1;
+            }
+        }
+        System.out.println(String.format("PASS %s (%d parts)", name, actual.size()));
+        return 0;
+    }
+    
+    /**
+     * Split the NZB in process, as the server does, and write each part as
+     * the server names and writes it
+     * @param query split option e.g. n=3
+     * @param nzb NZB file content
+     * @return part file name to part content
+     * @throws Exception if unable to split the NZB
+     */
+    private static Map<String, byte[]> split(String query, byte[] nzb) throws Exception {
+        String option = query.substring(0, query.indexOf('='));
+        String value = query.substring(query.indexOf('=') + 1);
+        List<SplitStrategy> strategies;
+        if("n".equals(option)) {
+            strategies = SplitStrategy.parseNumbers(value);
+        } else if("s".equals(option)) {
+            strategies = SplitStrategy.parseSizes(value);
+        } else {
+            strategies = SplitStrategy.parseHashes(value);
+        }
+        final Map<String, byte[]> parts = new TreeMap<>();
+        final NZBWriter writer = new NZBWriter(false);
+        new NZBSplit(strategies).split(new ByteArrayInputStream(nzb), new PartSink() {
+            @Override
+            public void accept(String planName, int partNo, NZB part) throws IOException {
+                FileNamer namer = new FileNamer("release.nzb", ".nzb");
+                namer.setPlanName(planName);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writer.write(part, out);
+                synchronized(parts) {
+                    parts.put(namer.getPartFileName(null, partNo).getName(), out.toByteArray());
+                }
+            }
+        });
+        return parts;
+    }
+    
+    /**
+     * Check that the server answers the given request with the given status
+     * @param method request method, which is POST if there is a body
+     * @param url request URL
+     * @param body request body or null
+     * @param status expected status
+     * @return 1 if the status differs, 0 otherwise
+     * @throws IOException if unable to send the request
+     */
+    private static int checkStatus(String method, String url, byte[] body, int status) throws IOException {
+        HttpURLConnection connection;
+        if(body == null) {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+        } else {
+            connection = post(url, body);
+        }
+        int actual = connection.getResponseCode();
+        connection.disconnect();
+        String name = String.format("%s %s", method, url.substring(url.indexOf("/split")));
+        if(actual != status) {
+            System.err.println(String.format("FAIL %s: expected status %d, actual %d", name, status, actual));
+            return 1;
+        }
+        System.out.println(String.format("PASS %s (%d)", name, actual));
+        return 0;
+    }
+    
+    /**
+     * Check that /stats counts the given number of split requests
+     * @param base base URL of the server
+     * @param requests number of requests sent to /split
+     * @return 1 if the count differs, 0 otherwise
+     * @throws IOException if unable to send the request
+     */
+    private static int checkStats(String base, int requests) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + "/stats").openConnection();
+        String stats;
+        try (InputStream in = connection.getInputStream()) {
+            stats = new String(readFully(in), StandardCharsets.UTF_8);
+        }
+        if(connection.getResponseCode() != 200 || !stats.startsWith(String.format("{\"requests\":%d,", requests))) {
+            System.err.println(String.format("FAIL stats: expected %d requests, actual %s", requests, stats.trim()));
+            return 1;
+        }
+        System.out.println("PASS stats");
+        return 0;
+    }
+    
+    private static HttpURLConnection post(String url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for(int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Create an NZB of a release with a par2 set, so the parts depend on the
+     * file priority as well as the split option
+     * @return NZB file content
+     */
+    private static String createNZB() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<nzb xmlns=\"http://www.newzbin.com/DTD/2003/nzb\">\n");
+        sb.append("  <head>\n    <meta type=\"title\">Release &amp; Co</meta>\n  </head>\n");
+        String[] names = { "release.nfo", "release.part01.rar", "release.part02.rar", "release.part03.rar",
+            "release.part04.rar", "release.part05.rar", "release.vol00+01.par2", "release.par2" };
+        for(int i = 0; i < names.length; i++) {
+            sb.append(String.format("  <file poster=\"poster@example.com\" date=\"%d\" subject=\"Release [%d/%d] - &quot;%s&quot; yEnc (1/2)\">\n",
+                1400000000 + i, i + 1, names.length, names[i]));
+            sb.append("    <groups>\n      <group>alt.binaries.test</group>\n    </groups>\n    <segments>\n");
+            for(int number = 1; number <= 2; number++) {
+                sb.append(String.format("      <segment bytes=\"%d\" number=\"%d\">%d-%d@example.com</segment>\n",
+                    100000 * (i + 1) + number, number, i, number));
+            }
+            sb.append("    </segments>\n  </file>\n");
+        }
+        sb.append("</nzb>\n");
+        return sb.toString();
+    }
+    
+}